@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.benchmark;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.polago.deployconf.DeploymentConfig;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
+import org.polago.deployconf.zip.ZipArchiveReader;
+
+/**
+ * Measures applying a DeploymentConfig to synthetic archives of varying size and entry count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApplyBenchmark {
+
+    @Param({"10", "1000"})
+    private int entryCount;
+
+    @Param({"1024", "65536"})
+    private int entrySize;
+
+    @Param({"10"})
+    private int tokenCount;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private Path repository;
+
+    private Path archive;
+
+    private FileSystemConfigGroupManager groupManager;
+
+    private DeploymentConfig config;
+
+    private ZipArchiveReader reader;
+
+    /**
+     * Create the DeploymentConfig and the input archive.
+     *
+     * @throws Exception indicating setup failure
+     */
+    @Setup
+    public void setup() throws Exception {
+        repository = Files.createTempDirectory("deployconf-benchmark");
+        archive = repository.resolve("input.zip");
+        BenchmarkData.createArchive(archive, tokenCount, entryCount, entrySize);
+        groupManager = new FileSystemConfigGroupManager(repository);
+        config = BenchmarkData.parse(BenchmarkData.createDeploymentConfigXml(tokenCount, 1), groupManager);
+        config.setParallelism(parallelism);
+        reader = new ZipArchiveReader(archive);
+    }
+
+    /**
+     * Close the input archive and remove the temporary repository.
+     *
+     * @throws Exception indicating teardown failure
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        reader.close();
+        groupManager.close();
+        BenchmarkData.deleteDirectory(repository);
+    }
+
+    /**
+     * Apply using an already opened ZipArchiveReader.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long applyArchive() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        config.apply(reader, os, null);
+
+        return os.getCount();
+    }
+
+    /**
+     * Apply using the input archive path, including opening and closing the archive.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long applyPath() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        config.apply(archive, os, null);
+
+        return os.getCount();
+    }
+
+    /**
+     * Apply using stream processing of the input archive.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long applyStream() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        InputStream is = Files.newInputStream(archive);
+        try {
+            config.apply(is, os, null);
+        } finally {
+            is.close();
+        }
+
+        return os.getCount();
+    }
+
+}
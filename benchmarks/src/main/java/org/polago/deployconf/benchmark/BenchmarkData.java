@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.polago.deployconf.DeploymentConfig;
+import org.polago.deployconf.DeploymentReader;
+import org.polago.deployconf.group.ConfigGroupManager;
+
+/**
+ * Creates the synthetic deployment configs, files and archives used by the benchmarks.
+ */
+final class BenchmarkData {
+
+    /**
+     * The path of the entry filtered by the generated FilterTask.
+     */
+    static final String FILTER_PATH = "WEB-INF/web.xml";
+
+    /**
+     * The path of the entry modified by the generated PropertiesTask.
+     */
+    static final String PROPERTIES_PATH = "WEB-INF/classes/deploy.properties";
+
+    private static final String FILLER =
+        "<!-- The quick brown fox jumps over the lazy dog while deployconf filters the deployment descriptor -->\n";
+
+    /**
+     * Private Constructor.
+     */
+    private BenchmarkData() {
+    }
+
+    /**
+     * Create a deployment config XML document with a filter task and a properties task.
+     *
+     * @param tokenCount the number of tokens and properties in each task
+     * @param conditionComplexity the number of comparisons in the condition of each token and property
+     * @return the deployment config XML document
+     */
+    static byte[] createDeploymentConfigXml(int tokenCount, int conditionComplexity) {
+        String condition = createCondition(conditionComplexity);
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<deployconf name=\"benchmark\">\n");
+        xml.append("  <filter path=\"").append(FILTER_PATH).append("\">\n");
+        for (int i = 0; i < tokenCount; i++) {
+            xml.append("    <token>\n");
+            xml.append("      <name>token").append(i).append("</name>\n");
+            xml.append("      <regex>@TOKEN_").append(i).append("@</regex>\n");
+            xml.append("      <description>Token ").append(i).append("</description>\n");
+            xml.append("      <default>default").append(i).append("</default>\n");
+            xml.append("      <condition>").append(condition).append("</condition>\n");
+            xml.append("      <value>value").append(i).append("</value>\n");
+            xml.append("    </token>\n");
+        }
+        xml.append("  </filter>\n");
+        xml.append("  <properties path=\"").append(PROPERTIES_PATH).append("\">\n");
+        for (int i = 0; i < tokenCount; i++) {
+            xml.append("    <property>\n");
+            xml.append("      <name>property.").append(i).append("</name>\n");
+            xml.append("      <description>Property ").append(i).append("</description>\n");
+            xml.append("      <default>default").append(i).append("</default>\n");
+            xml.append("      <condition>").append(condition).append("</condition>\n");
+            xml.append("      <value>value").append(i).append("</value>\n");
+            xml.append("    </property>\n");
+        }
+        xml.append("  </properties>\n");
+        xml.append("</deployconf>\n");
+
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create an XML escaped condition that evaluates to true.
+     *
+     * @param complexity the number of comparisons in the condition
+     * @return the condition or an empty String if complexity is zero
+     */
+    private static String createCondition(int complexity) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < complexity; i++) {
+            if (i > 0) {
+                result.append(" &amp;&amp; ");
+            }
+            result.append("('c").append(i).append("' != 'x' || ").append(i).append(" &lt; 0)");
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Parse a deployment config XML document.
+     *
+     * @param xml the deployment config XML document
+     * @param groupManager the ConfigGroupManager to use
+     * @return the parsed DeploymentConfig
+     * @throws Exception indicating parse error
+     */
+    static DeploymentConfig parse(byte[] xml, ConfigGroupManager groupManager) throws Exception {
+        return new DeploymentReader(new ByteArrayInputStream(xml), groupManager).parse();
+    }
+
+    /**
+     * Create the content of a file filtered by the generated FilterTask.
+     *
+     * @param tokenCount the number of distinct tokens to use
+     * @param size the approximate file size in bytes
+     * @return the file content
+     */
+    static byte[] createFilterInput(int tokenCount, int size) {
+        StringBuilder result = new StringBuilder(size + FILLER.length());
+        int i = 0;
+        while (result.length() < size) {
+            result.append("<param>@TOKEN_").append(i % tokenCount).append("@</param>\n");
+            result.append(FILLER);
+            i++;
+        }
+
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create the content of a properties file modified by the generated PropertiesTask.
+     *
+     * @param tokenCount the number of distinct properties to use
+     * @param size the approximate file size in bytes
+     * @return the file content
+     */
+    static byte[] createPropertiesInput(int tokenCount, int size) {
+        StringBuilder result = new StringBuilder(size + FILLER.length());
+        int i = 0;
+        while (result.length() < size) {
+            if (i < tokenCount) {
+                result.append("property.").append(i).append("=original").append(i).append('\n');
+            } else {
+                result.append("other.property.").append(i).append("=The quick brown fox jumps over the lazy dog\n");
+            }
+            i++;
+        }
+
+        return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Create a Zip archive with the entries of the generated tasks and a number of untouched entries.
+     *
+     * @param file the archive to create
+     * @param tokenCount the number of tokens and properties in the generated tasks
+     * @param entryCount the number of untouched entries
+     * @param entrySize the approximate size in bytes of each entry
+     * @throws IOException indicating IO error
+     */
+    static void createArchive(Path file, int tokenCount, int entryCount, int entrySize) throws IOException {
+        byte[] data = createFilterInput(tokenCount, entrySize);
+        ZipOutputStream os = new ZipOutputStream(Files.newOutputStream(file));
+        try {
+            os.putNextEntry(new ZipEntry(FILTER_PATH));
+            os.write(data);
+            os.putNextEntry(new ZipEntry(PROPERTIES_PATH));
+            os.write(createPropertiesInput(tokenCount, entrySize));
+            for (int i = 0; i < entryCount; i++) {
+                os.putNextEntry(new ZipEntry("WEB-INF/classes/entry" + i + ".xml"));
+                os.write(data);
+            }
+            os.closeEntry();
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Delete a directory and all files in it.
+     *
+     * @param dir the directory to delete
+     * @throws IOException indicating IO error
+     */
+    static void deleteDirectory(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+        try {
+            for (Path p : entries) {
+                if (Files.isDirectory(p)) {
+                    deleteDirectory(p);
+                } else {
+                    Files.delete(p);
+                }
+            }
+        } finally {
+            entries.close();
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * OutputStream that only counts the number of bytes written.
+     */
+    static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        /**
+         * Gets the number of bytes written.
+         *
+         * @return the number of bytes written
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
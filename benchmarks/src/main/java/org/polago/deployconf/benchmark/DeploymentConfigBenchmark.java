@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.polago.deployconf.DeploymentConfig;
+import org.polago.deployconf.DeploymentWriter;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
+
+/**
+ * Measures parsing and persisting deployment configs of varying size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeploymentConfigBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int tokenCount;
+
+    @Param({"0", "4"})
+    private int conditionComplexity;
+
+    private Path repository;
+
+    private FileSystemConfigGroupManager groupManager;
+
+    private byte[] xml;
+
+    private DeploymentConfig config;
+
+    /**
+     * Create the deployment config document.
+     *
+     * @throws Exception indicating setup failure
+     */
+    @Setup
+    public void setup() throws Exception {
+        repository = Files.createTempDirectory("deployconf-benchmark");
+        groupManager = new FileSystemConfigGroupManager(repository);
+        xml = BenchmarkData.createDeploymentConfigXml(tokenCount, conditionComplexity);
+        config = BenchmarkData.parse(xml, groupManager);
+    }
+
+    /**
+     * Remove the temporary repository.
+     *
+     * @throws Exception indicating teardown failure
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        groupManager.close();
+        BenchmarkData.deleteDirectory(repository);
+    }
+
+    /**
+     * Parse a deployment config using DeploymentReader.
+     *
+     * @return the parsed DeploymentConfig
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public DeploymentConfig parse() throws Exception {
+        return BenchmarkData.parse(xml, groupManager);
+    }
+
+    /**
+     * Persist a deployment config using DeploymentWriter.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long persist() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        new DeploymentWriter(os).persist(config);
+
+        return os.getCount();
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.polago.deployconf.DeploymentConfig;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
+import org.polago.deployconf.task.Task;
+import org.polago.deployconf.task.filter.FilterTask;
+import org.polago.deployconf.task.properties.PropertiesTask;
+
+/**
+ * Measures applying a single FilterTask or PropertiesTask to a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int tokenCount;
+
+    @Param({"0", "4"})
+    private int conditionComplexity;
+
+    @Param({"4096", "262144"})
+    private int fileSize;
+
+    private Path repository;
+
+    private FileSystemConfigGroupManager groupManager;
+
+    private FilterTask filterTask;
+
+    private PropertiesTask propertiesTask;
+
+    private byte[] filterInput;
+
+    private byte[] propertiesInput;
+
+    /**
+     * Create the tasks and input files.
+     *
+     * @throws Exception indicating setup failure
+     */
+    @Setup
+    public void setup() throws Exception {
+        repository = Files.createTempDirectory("deployconf-benchmark");
+        groupManager = new FileSystemConfigGroupManager(repository);
+        DeploymentConfig config =
+            BenchmarkData.parse(BenchmarkData.createDeploymentConfigXml(tokenCount, conditionComplexity), groupManager);
+        for (Task task : config.getTasks()) {
+            if (task instanceof FilterTask) {
+                filterTask = (FilterTask) task;
+            } else if (task instanceof PropertiesTask) {
+                propertiesTask = (PropertiesTask) task;
+            }
+        }
+        filterInput = BenchmarkData.createFilterInput(tokenCount, fileSize);
+        propertiesInput = BenchmarkData.createPropertiesInput(tokenCount, fileSize);
+    }
+
+    /**
+     * Remove the temporary repository.
+     *
+     * @throws Exception indicating teardown failure
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        groupManager.close();
+        BenchmarkData.deleteDirectory(repository);
+    }
+
+    /**
+     * Apply a FilterTask.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long filterApply() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        filterTask.apply(new ByteArrayInputStream(filterInput), os);
+
+        return os.getCount();
+    }
+
+    /**
+     * Apply a PropertiesTask.
+     *
+     * @return the number of bytes written
+     * @throws Exception indicating processing error
+     */
+    @Benchmark
+    public long propertiesApply() throws Exception {
+        BenchmarkData.CountingOutputStream os = new BenchmarkData.CountingOutputStream();
+        propertiesTask.apply(new ByteArrayInputStream(propertiesInput), os);
+
+        return os.getCount();
+    }
+
+}
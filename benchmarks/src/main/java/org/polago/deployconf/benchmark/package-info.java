@@ -0,0 +1,7 @@
+/**
+ * <p>
+ * Provides JMH benchmarks for the deployconf apply hot path.
+ * </p>
+ */
+
+package org.polago.deployconf.benchmark;
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.polago.deployconf.group.ConfigGroup;
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed cache of previously produced output files.
+ * <p>
+ * Outputs are keyed by a digest of the input file and a canonical digest of the resolved DeploymentConfig, including
+ * the values of all config groups it refers to. A cached output is restored as a hard link when possible and as a copy
+ * otherwise, so restored outputs must not be modified in place. The least recently used outputs are evicted when the
+ * total size of the cache exceeds its maximum size.
+ */
+public class ApplyCache {
+
+    private static Logger logger = LoggerFactory.getLogger(ApplyCache.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String SUFFIX = ".zip";
+
+    private static final String ATTR_GROUP = "group";
+
+    private static final int BUF_SIZE = 65536;
+
+    private final Path dir;
+
+    private final long maxSize;
+
+    /**
+     * Public Constructor.
+     *
+     * @param dir the directory to store cached outputs in, created if it doesn't exist
+     * @param maxSize the maximum total size in bytes of all cached outputs
+     * @throws IOException indicating IO error
+     */
+    public ApplyCache(Path dir, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + maxSize);
+        }
+        this.dir = dir;
+        this.maxSize = maxSize;
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * Compute the cache key for applying a DeploymentConfig to a source file.
+     *
+     * @param source the input file
+     * @param config the merged DeploymentConfig to apply
+     * @param settings any other settings affecting the output
+     * @return the cache key or null if the output can't be cached since a config group can't list its properties
+     * @throws IOException indicating IO error
+     */
+    public String computeKey(Path source, DeploymentConfig config, String settings) throws IOException {
+        byte[] configDigest = digestConfig(config);
+        if (configDigest == null) {
+            logger.debug("Apply cache disabled, config group properties can't be listed for: {}", source);
+            return null;
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(digestFile(source));
+        digest.update(configDigest);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Restore a cached output.
+     *
+     * @param key the cache key
+     * @param destination the output file to create
+     * @return true if the output was found in the cache and restored
+     * @throws IOException indicating IO error
+     */
+    public boolean restore(String key, Path destination) throws IOException {
+        Path cached = dir.resolve(key + SUFFIX);
+        if (!Files.exists(cached)) {
+            logger.debug("Apply cache miss: {}", key);
+            return false;
+        }
+
+        try {
+            Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+            Files.deleteIfExists(destination);
+            try {
+                Files.createLink(destination, cached);
+                logger.debug("Apply cache hit, linked: {}", cached);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(cached, destination, StandardCopyOption.REPLACE_EXISTING);
+                logger.debug("Apply cache hit, copied: {}", cached);
+            }
+        } catch (NoSuchFileException e) {
+            logger.debug("Apply cache entry evicted: {}", key);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Store an output in the cache and evict the least recently used outputs if needed.
+     *
+     * @param key the cache key
+     * @param output the output file to store
+     * @throws IOException indicating IO error
+     */
+    public void store(String key, Path output) throws IOException {
+        Path cached = dir.resolve(key + SUFFIX);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.copy(output, tmp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        logger.debug("Stored output in apply cache: {}", cached);
+
+        evict(cached);
+    }
+
+    /**
+     * Evict the least recently used outputs until the cache is within its maximum size.
+     *
+     * @param keep an output that should never be evicted
+     */
+    private void evict(Path keep) {
+        File[] files = dir.toFile().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isFile() && f.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            total += files[i].length();
+        }
+        if (total <= maxSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length && total > maxSize; i++) {
+            if (files[i].toPath().equals(keep)) {
+                continue;
+            }
+            long size = files[i].length();
+            try {
+                Files.deleteIfExists(files[i].toPath());
+                total -= size;
+                logger.debug("Evicted from apply cache: {}", files[i]);
+            } catch (IOException e) {
+                logger.debug("Unable to evict from apply cache: " + files[i], e);
+            }
+        }
+    }
+
+    /**
+     * Compute the digest of a file.
+     *
+     * @param file the file to use
+     * @return the file digest
+     * @throws IOException indicating IO error
+     */
+    static byte[] digestFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(BUF_SIZE);
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        } finally {
+            channel.close();
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Compute a canonical digest of a DeploymentConfig and the config groups it refers to.
+     *
+     * @param config the DeploymentConfig to use
+     * @return the config digest or null if a config group can't list its properties
+     * @throws IOException indicating IO error
+     */
+    static byte[] digestConfig(DeploymentConfig config) throws IOException {
+        MessageDigest digest = newDigest();
+        if (!updateTasks(digest, config.getName(), config.getTasks(), config.getGroupManager())) {
+            return null;
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Update a digest with the canonical form of some Tasks and the config groups they refer to.
+     *
+     * @param digest the MessageDigest to update
+     * @param name the DeploymentConfig name or null
+     * @param tasks the Tasks to use
+     * @param groupManager the ConfigGroupManager to look up config groups in
+     * @return false if a config group can't list its properties, leaving the digest incomplete
+     * @throws IOException indicating IO error
+     */
+    static boolean updateTasks(MessageDigest digest, String name, Collection<Task> tasks,
+        ConfigGroupManager groupManager) throws IOException {
+
+        Element root = new Element(DeploymentWriter.DOM_ROOT);
+        if (name != null) {
+            root.setAttribute(DeploymentWriter.ATTR_NAME, name);
+        }
+        for (Task task : tasks) {
+            Element node = new Element(task.getSerializedName());
+            root.addContent(node);
+            task.serialize(node);
+        }
+
+        OutputStream os = new DigestOutputStream(new ByteArrayOutputStream(), digest);
+        new XMLOutputter(Format.getCompactFormat()).output(root, os);
+        os.close();
+
+        SortedSet<String> groups = new TreeSet<String>();
+        for (Element e : root.getDescendants(Filters.element())) {
+            String group = e.getAttributeValue(ATTR_GROUP);
+            if (group != null) {
+                groups.add(group);
+            }
+        }
+        for (String group : groups) {
+            update(digest, group);
+            ConfigGroup configGroup = groupManager.lookupGroup(group);
+            SortedSet<String> properties = configGroup.getPropertyNames();
+            if (properties == null) {
+                return false;
+            }
+            for (String property : properties) {
+                update(digest, property);
+                update(digest, configGroup.getProperty(property));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Update a digest with a length prefixed String.
+     *
+     * @param digest the MessageDigest to update
+     * @param value the value to add
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] b = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(b.length).array());
+        digest.update(b);
+    }
+
+    /**
+     * Create a new MessageDigest.
+     *
+     * @return a MessageDigest instance
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Convert bytes to a hexadecimal String.
+     *
+     * @param bytes the bytes to convert
+     * @return a hexadecimal String
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return result.toString();
+    }
+
+}
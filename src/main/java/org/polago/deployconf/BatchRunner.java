@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a DeployConfRunner for multiple artifacts in the same JVM.
+ * <p>
+ * All artifacts share the DeployConfRunner configuration, including the ConfigGroupManager, and are processed
+ * concurrently using a bounded pool of threads.
+ */
+public class BatchRunner {
+
+    private static Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+
+    /**
+     * Exit status used for an artifact that failed with an exception, same as the DeployConfRunner internal error.
+     */
+    public static final int STATUS_ERROR = 2;
+
+    private final DeployConfRunner runner;
+
+    private final int concurrency;
+
+    /**
+     * Public Constructor.
+     *
+     * @param runner the DeployConfRunner to use for each artifact
+     * @param concurrency the maximum number of artifacts to process concurrently
+     */
+    public BatchRunner(DeployConfRunner runner, int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        this.runner = runner;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Read a batch manifest.
+     * <p>
+     * Each non-empty line that doesn't start with '#' contains an input and an output file separated by whitespace. A
+     * file containing whitespace must be enclosed in double quotes, e.g. {@code "my app.war" "out/my app.war"}.
+     *
+     * @param manifest the manifest file to read
+     * @return a List of Jobs in manifest order
+     * @throws IOException indicating IO error or an invalid manifest
+     */
+    public static List<Job> readManifest(Path manifest) throws IOException {
+        List<Job> result = new ArrayList<Job>();
+        BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8);
+        try {
+            int lineNumber = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    List<String> parts = splitLine(line);
+                    if (parts == null || parts.size() != 2) {
+                        throw new IOException(
+                            "Invalid manifest line " + lineNumber + " in '" + manifest + "': " + line);
+                    }
+                    result.add(new Job(parts.get(0), parts.get(1)));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Split a manifest line into whitespace separated fields that may be enclosed in double quotes.
+     *
+     * @param line the line to split
+     * @return the fields of the line or null if a quoted field isn't terminated or followed by whitespace
+     */
+    private static List<String> splitLine(String line) {
+        List<String> result = new ArrayList<String>();
+        int i = 0;
+        while (i < line.length()) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                i++;
+            } else if (line.charAt(i) == '"') {
+                int end = line.indexOf('"', i + 1);
+                if (end < 0 || end + 1 < line.length() && !Character.isWhitespace(line.charAt(end + 1))) {
+                    return null;
+                }
+                result.add(line.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                result.add(line.substring(start, i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Create Jobs from a list of input and output file pairs.
+     *
+     * @param args the input and output files
+     * @return a List of Jobs
+     */
+    public static List<Job> fromArguments(List<String> args) {
+        if (args.size() % 2 != 0) {
+            throw new IllegalArgumentException("Each <INPUT> must have a corresponding <OUTPUT>");
+        }
+        List<Job> result = new ArrayList<Job>();
+        for (int i = 0; i < args.size(); i += 2) {
+            result.add(new Job(args.get(i), args.get(i + 1)));
+        }
+
+        return result;
+    }
+
+    /**
+     * Run all Jobs and update the status of each Job.
+     *
+     * @param jobs the Jobs to run
+     * @return the highest exit status of all Jobs
+     * @throws InterruptedException indicating that the batch was interrupted
+     */
+    public int run(List<Job> jobs) throws InterruptedException {
+        int threads = Math.min(concurrency, Math.max(jobs.size(), 1));
+        logger.debug("Running {} artifacts using {} threads", jobs.size(), threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        try {
+            for (final Job job : jobs) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        logger.info("Processing artifact: " + job.getSource());
+                        return runner.run(job.getSource(), job.getDestination());
+                    }
+                }));
+            }
+
+            int result = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                try {
+                    job.status = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    job.status = STATUS_ERROR;
+                    job.error = e.getCause();
+                    logger.error("Failed to process artifact '" + job.getSource() + "': " + e.getCause(),
+                        e.getCause());
+                }
+                result = Math.max(result, job.status);
+            }
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * An input and output file pair processed by a BatchRunner.
+     */
+    public static final class Job {
+
+        private final String source;
+
+        private final String destination;
+
+        private int status = -1;
+
+        private Throwable error;
+
+        /**
+         * Public Constructor.
+         *
+         * @param source the input file
+         * @param destination the output file
+         */
+        public Job(String source, String destination) {
+            this.source = source;
+            this.destination = destination;
+        }
+
+        /**
+         * Gets the source property value.
+         *
+         * @return the current value of the source property
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Gets the destination property value.
+         *
+         * @return the current value of the destination property
+         */
+        public String getDestination() {
+            return destination;
+        }
+
+        /**
+         * Gets the exit status of this Job.
+         *
+         * @return the exit status or -1 if the Job hasn't been run
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Gets the error that caused this Job to fail.
+         *
+         * @return the error or null
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Job [source=" + source + ", destination=" + destination + ", status=" + status + "]";
+        }
+    }
+
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+
+import org.polago.deployconf.DeployConfRunner.RunMode;
+import org.polago.deployconf.condition.ConditionLanguage;
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
+import org.polago.deployconf.stats.RunStatistics;
+
+/**
+ * Applies deployment configs to artifacts from within another program.
+ * <p>
+ * Instances are created using a {@link Builder} and may be used for any number of artifacts, also from multiple
+ * threads. Unlike the command line, the outcome of each artifact is returned as a {@link DeployConfResult} instead of
+ * being printed, and the JVM is never exited:
+ *
+ * <pre>
+ * DeployConf deployConf = DeployConf.builder().repository(repo).build();
+ * DeployConfResult result = deployConf.apply(input, output);
+ * if (!result.isComplete()) {
+ *     // Edit result.getDeploymentConfigPath()
+ * }
+ * </pre>
+ */
+public final class DeployConf {
+
+    private final Path repository;
+
+    private final ConfigGroupManager groupManager;
+
+    private final RunMode runMode;
+
+    private final Path deploymentConfigPath;
+
+    private final String deploymentTemplatePath;
+
+    private final int parallelism;
+
+    private final int compressionLevel;
+
+    private final boolean incremental;
+
+    private final boolean snapshot;
+
+    private final ApplyCache applyCache;
+
+    private final boolean statistics;
+
+    private final ConditionLanguage conditionLanguage;
+
+    /**
+     * Private Constructor.
+     *
+     * @param builder the Builder to use
+     * @param repository the repository to use
+     * @param groupManager the ConfigGroupManager to use
+     */
+    private DeployConf(Builder builder, Path repository, ConfigGroupManager groupManager) {
+        this.repository = repository;
+        this.groupManager = groupManager;
+        runMode = builder.runMode;
+        deploymentConfigPath = builder.deploymentConfigPath;
+        deploymentTemplatePath = builder.deploymentTemplatePath;
+        parallelism = builder.parallelism;
+        compressionLevel = builder.compressionLevel;
+        incremental = builder.incremental;
+        snapshot = builder.snapshot;
+        applyCache = builder.applyCache;
+        statistics = builder.statistics;
+        conditionLanguage = builder.conditionLanguage;
+    }
+
+    /**
+     * Create a new Builder.
+     *
+     * @return a new Builder using the default settings of the command line
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Apply the deployment config of an input file and write the output file.
+     * <p>
+     * The deployment config is read from the repository, merged with the deployment template of the input file and
+     * saved if changed. The output file is only written if the deployment config is complete. All modified config
+     * groups are flushed before returning.
+     *
+     * @param source the input file
+     * @param destination the output file
+     * @return the DeployConfResult of the run
+     * @throws Exception indicating processing error
+     */
+    public DeployConfResult apply(Path source, Path destination) throws Exception {
+        DeployConfRunner runner = new DeployConfRunner(runMode);
+        runner.setRepositoryDirectory(repository.toString());
+        runner.setGroupManager(groupManager);
+        if (deploymentConfigPath != null) {
+            runner.setDeploymentConfigPath(deploymentConfigPath);
+        }
+        if (deploymentTemplatePath != null) {
+            runner.setDeploymentTemplatePath(deploymentTemplatePath);
+        }
+        runner.setParallelism(parallelism);
+        runner.setCompressionLevel(compressionLevel);
+        runner.setIncremental(incremental);
+        runner.setSnapshot(snapshot);
+        runner.setApplyCache(applyCache);
+        runner.setConditionLanguage(conditionLanguage);
+        RunStatistics stats = null;
+        if (statistics) {
+            stats = new RunStatistics();
+            runner.setStatistics(stats);
+        }
+
+        DeployConfResult result = runner.apply(source, destination);
+
+        return new DeployConfResult(result.isComplete(), result.getDeploymentConfigPath(), stats);
+    }
+
+    /**
+     * Gets the repository property value.
+     *
+     * @return the current value of the repository property
+     */
+    public Path getRepository() {
+        return repository;
+    }
+
+    /**
+     * Gets the groupManager property value.
+     *
+     * @return the current value of the groupManager property
+     */
+    public ConfigGroupManager getGroupManager() {
+        return groupManager;
+    }
+
+    /**
+     * Builds DeployConf instances.
+     */
+    public static final class Builder {
+
+        private Path repository;
+
+        private ConfigGroupManager groupManager;
+
+        private RunMode runMode = RunMode.NON_INTERACTIVE;
+
+        private Path deploymentConfigPath;
+
+        private String deploymentTemplatePath;
+
+        private int parallelism = 1;
+
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+        private boolean incremental;
+
+        private boolean snapshot;
+
+        private ApplyCache applyCache;
+
+        private boolean statistics;
+
+        private ConditionLanguage conditionLanguage = ConditionLanguage.BUILTIN;
+
+        /**
+         * Private Constructor.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the repository for storing deployment config files and config groups.
+         *
+         * @param repository the repository to use, created if missing. Default is the user's default repository
+         * @return this Builder
+         */
+        public Builder repository(Path repository) {
+            this.repository = repository;
+            return this;
+        }
+
+        /**
+         * Sets the ConfigGroupManager to use.
+         *
+         * @param groupManager the ConfigGroupManager to use. Default is a FileSystemConfigGroupManager for the
+         *            repository
+         * @return this Builder
+         */
+        public Builder groupManager(ConfigGroupManager groupManager) {
+            this.groupManager = groupManager;
+            return this;
+        }
+
+        /**
+         * Sets how the user should be prompted for missing values.
+         *
+         * @param runMode the RunMode to use. Default is {@link RunMode#NON_INTERACTIVE}
+         * @return this Builder
+         */
+        public Builder runMode(RunMode runMode) {
+            this.runMode = runMode;
+            return this;
+        }
+
+        /**
+         * Sets an explicit deployment config file to use instead of one in the repository.
+         *
+         * @param deploymentConfigPath the deployment config file to use
+         * @return this Builder
+         */
+        public Builder deploymentConfigPath(Path deploymentConfigPath) {
+            this.deploymentConfigPath = deploymentConfigPath;
+            return this;
+        }
+
+        /**
+         * Sets the path of the deployment template in the input files.
+         *
+         * @param deploymentTemplatePath the deployment template path to use
+         * @return this Builder
+         */
+        public Builder deploymentTemplatePath(String deploymentTemplatePath) {
+            this.deploymentTemplatePath = deploymentTemplatePath;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads to use when applying the deployment config.
+         *
+         * @param parallelism the number of threads to use. Default is 1
+         * @return this Builder
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the deflate level to use for modified entries.
+         *
+         * @param compressionLevel the deflate level to use
+         * @return this Builder
+         */
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Sets if unchanged entries of an existing output file should be reused.
+         *
+         * @param incremental true if existing output files should be updated incrementally
+         * @return this Builder
+         */
+        public Builder incremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        /**
+         * Sets if deployment config files should be loaded from and saved to binary snapshots.
+         *
+         * @param snapshot true if binary snapshots should be used
+         * @return this Builder
+         */
+        public Builder snapshot(boolean snapshot) {
+            this.snapshot = snapshot;
+            return this;
+        }
+
+        /**
+         * Sets the cache of previously produced output files.
+         *
+         * @param applyCache the ApplyCache to use or null for no caching
+         * @return this Builder
+         */
+        public Builder applyCache(ApplyCache applyCache) {
+            this.applyCache = applyCache;
+            return this;
+        }
+
+        /**
+         * Sets if timings and metrics should be collected for each run.
+         *
+         * @param statistics true if {@link DeployConfResult#getStatistics()} should be available
+         * @return this Builder
+         */
+        public Builder statistics(boolean statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        /**
+         * Sets the language used for compiling conditions.
+         *
+         * @param conditionLanguage the ConditionLanguage to use. Default is {@link ConditionLanguage#BUILTIN}
+         * @return this Builder
+         */
+        public Builder conditionLanguage(ConditionLanguage conditionLanguage) {
+            this.conditionLanguage = conditionLanguage;
+            return this;
+        }
+
+        /**
+         * Create a DeployConf instance using the settings of this Builder.
+         *
+         * @return a new DeployConf instance
+         * @throws IOException indicating failure to create the repository
+         */
+        public DeployConf build() throws IOException {
+            Path repo = repository;
+            if (repo == null) {
+                repo = Paths.get(DeployConfRunner.getDefaultRepository());
+            }
+            if (Files.notExists(repo)) {
+                Files.createDirectories(repo);
+            } else if (!Files.isDirectory(repo)) {
+                throw new IOException("Specified repository is not a directory: " + repo);
+            }
+            ConfigGroupManager manager = groupManager;
+            if (manager == null) {
+                manager = new FileSystemConfigGroupManager(repo);
+            }
+
+            return new DeployConf(this, repo, manager);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Thin client that executes a command in a running {@link DeployConfServer}.
+ * <p>
+ * The client accepts the same arguments as {@link DeployConfRunner#main(String[])} and sends them to the server
+ * running for the repository, together with the current directory and the repository set in the environment. The
+ * output of the command is written to the standard output and error streams of the client and the client exits with
+ * the exit status of the command. If no server is running for the repository, the command is executed by the client
+ * itself. A command that fails after being sent to the server is never executed again by the client since it may
+ * already have been executed by the server.
+ * <p>
+ * The client avoids initializing the logging system and the other classes used for executing commands unless it
+ * executes the command itself.
+ */
+public final class DeployConfClient {
+
+    /**
+     * Exit status indicating that no server is running.
+     */
+    static final int STATUS_NO_SERVER = -1;
+
+    /**
+     * Exit status indicating that the command failed in the server or its outcome is unknown.
+     */
+    static final int STATUS_ERROR = 2;
+
+    private static final int BUF_SIZE = 8192;
+
+    /**
+     * Private Constructor.
+     */
+    private DeployConfClient() {
+    }
+
+    /**
+     * Main entry point.
+     *
+     * @param args the runtime program arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.getenv(DeployConfRunner.ENV_DEPLOYCONF_REPO)));
+    }
+
+    /**
+     * Execute a command in the server running for the repository of the command or in this JVM if no server is
+     * running.
+     *
+     * @param args the command arguments
+     * @param envRepoDir the repository directory set in the environment or null
+     * @return the exit status of the command
+     */
+    static int run(String[] args, String envRepoDir) {
+        int status;
+        try {
+            Path repository = getRepository(args, envRepoDir);
+            status = execute(repository, args, envRepoDir, System.out, System.err);
+        } catch (IOException e) {
+            System.err.println("Unable to execute command in server: " + e);
+            status = STATUS_ERROR;
+        }
+        if (status == STATUS_NO_SERVER) {
+            status = DeployConfRunner.execute(args, null, envRepoDir, null);
+        }
+
+        return status;
+    }
+
+    /**
+     * Execute a command in the server running for a repository.
+     *
+     * @param repository the repository of the server
+     * @param args the command arguments
+     * @param envRepoDir the repository directory set in the environment or null
+     * @param out the stream to write the standard output of the command to
+     * @param err the stream to write the standard error of the command to
+     * @return the exit status of the command or {@link #STATUS_NO_SERVER} if no server is running
+     * @throws IOException indicating IO error, in which case the command may have been executed by the server
+     */
+    static int execute(Path repository, String[] args, String envRepoDir, OutputStream out, OutputStream err)
+        throws IOException {
+
+        Properties server = readServerFile(repository);
+        if (server == null) {
+            return STATUS_NO_SERVER;
+        }
+
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(),
+                Integer.parseInt(server.getProperty(DeployConfServer.PROPERTY_PORT)));
+        } catch (ConnectException e) {
+            return STATUS_NO_SERVER;
+        }
+        try {
+            DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUF_SIZE));
+            os.writeUTF(server.getProperty(DeployConfServer.PROPERTY_TOKEN));
+            os.writeUTF(Paths.get("").toAbsolutePath().toString());
+            os.writeBoolean(envRepoDir != null);
+            if (envRepoDir != null) {
+                os.writeUTF(envRepoDir);
+            }
+            os.writeInt(args.length);
+            for (String arg : args) {
+                os.writeUTF(arg);
+            }
+            os.flush();
+
+            DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUF_SIZE));
+            byte[] buf = new byte[BUF_SIZE];
+            while (true) {
+                int type;
+                try {
+                    type = is.readByte();
+                } catch (EOFException e) {
+                    throw new IOException("Server closed the connection without an exit status");
+                }
+                if (type == DeployConfServer.FRAME_EXIT) {
+                    return is.readInt();
+                }
+                OutputStream target = type == DeployConfServer.FRAME_ERR ? err : out;
+                int remaining = is.readInt();
+                while (remaining > 0) {
+                    int n = Math.min(remaining, buf.length);
+                    is.readFully(buf, 0, n);
+                    target.write(buf, 0, n);
+                    remaining -= n;
+                }
+                target.flush();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Determine the repository used by a command, in the same way as {@link DeployConfRunner#main(String[])}.
+     *
+     * @param args the command arguments
+     * @param envRepoDir the repository directory set in the environment or null
+     * @return the repository
+     */
+    static Path getRepository(String[] args, String envRepoDir) {
+        String result = null;
+        for (int i = 0; i < args.length && result == null; i++) {
+            String arg = args[i];
+            if ((arg.equals("-r") || arg.equals("--repo")) && i + 1 < args.length) {
+                result = args[i + 1];
+            } else if (arg.startsWith("--repo=")) {
+                result = arg.substring("--repo=".length());
+            } else if (arg.startsWith("-r") && arg.length() > 2 && !arg.startsWith("--")) {
+                result = arg.substring(2);
+            } else if (arg.equals("--")) {
+                break;
+            }
+        }
+        if (result == null) {
+            result = envRepoDir;
+        }
+        if (result == null) {
+            result = System.getProperty("user.home") + DeployConfRunner.DEFAULT_DEPLOYCONF_REPO;
+        }
+
+        return Paths.get(result).toAbsolutePath();
+    }
+
+    /**
+     * Read the server file of a repository.
+     *
+     * @param repository the repository to use
+     * @return the server file properties or null if there is no server file
+     * @throws IOException indicating IO error
+     */
+    private static Properties readServerFile(Path repository) throws IOException {
+        Path file = repository.resolve(DeployConfServer.SERVER_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties result = new Properties();
+        InputStream is = Files.newInputStream(file);
+        try {
+            result.load(is);
+        } finally {
+            is.close();
+        }
+
+        return result;
+    }
+}
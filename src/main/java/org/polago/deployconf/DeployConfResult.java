@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.nio.file.Path;
+
+import org.polago.deployconf.stats.RunStatistics;
+
+/**
+ * The outcome of applying a deployment config to an input file.
+ */
+public final class DeployConfResult {
+
+    /**
+     * Status of a successful run.
+     */
+    public static final int STATUS_OK = 0;
+
+    /**
+     * Status of a run with an incomplete deployment config.
+     */
+    public static final int STATUS_INCOMPLETE = 2;
+
+    private final boolean complete;
+
+    private final Path deploymentConfigPath;
+
+    private final RunStatistics statistics;
+
+    /**
+     * Package Constructor.
+     *
+     * @param complete true if the deployment config was complete and the output was written
+     * @param deploymentConfigPath the deployment config file used
+     */
+    DeployConfResult(boolean complete, Path deploymentConfigPath) {
+        this(complete, deploymentConfigPath, null);
+    }
+
+    /**
+     * Package Constructor.
+     *
+     * @param complete true if the deployment config was complete and the output was written
+     * @param deploymentConfigPath the deployment config file used
+     * @param statistics the statistics collected for the run or null
+     */
+    DeployConfResult(boolean complete, Path deploymentConfigPath, RunStatistics statistics) {
+        this.complete = complete;
+        this.deploymentConfigPath = deploymentConfigPath;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Determines if the deployment config was complete and the output was written.
+     * <p>
+     * An incomplete deployment config is saved with the missing values to {@link #getDeploymentConfigPath()}.
+     *
+     * @return true if the output was written
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets the status of the run, as used as exit status by the command line.
+     *
+     * @return {@link #STATUS_OK} or {@link #STATUS_INCOMPLETE}
+     */
+    public int getStatus() {
+        return complete ? STATUS_OK : STATUS_INCOMPLETE;
+    }
+
+    /**
+     * Gets the deploymentConfigPath property value.
+     *
+     * @return the current value of the deploymentConfigPath property
+     */
+    public Path getDeploymentConfigPath() {
+        return deploymentConfigPath;
+    }
+
+    /**
+     * Gets the statistics property value.
+     *
+     * @return the statistics collected for the run or null if not enabled
+     */
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "DeployConfResult [complete=" + complete + ", deploymentConfigPath=" + deploymentConfigPath + "]";
+    }
+}
@@ -24,6 +24,7 @@
 
 package org.polago.deployconf;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,14 +32,20 @@ import java.io.OutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 import org.apache.commons.cli.CommandLine;
@@ -50,8 +57,16 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.UserInterruptException;
+import org.polago.deployconf.condition.ConditionCompiler;
+import org.polago.deployconf.condition.ConditionLanguage;
+import org.polago.deployconf.condition.ScriptEngineProvider;
 import org.polago.deployconf.group.ConfigGroupManager;
 import org.polago.deployconf.group.FileSystemConfigGroupManager;
+import org.polago.deployconf.group.IndexedConfigGroupManager;
+import org.polago.deployconf.group.RepositoryLock;
+import org.polago.deployconf.stats.RunStatistics;
+import org.polago.deployconf.zip.ZipArchiveEntry;
+import org.polago.deployconf.zip.ZipArchiveReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,7 +85,7 @@ public class DeployConfRunner {
     /**
      * Available RunModes.
      */
-    enum RunMode {
+    public enum RunMode {
         // Never prompt the user
         NON_INTERACTIVE,
         // Prompt the user for non-configured tasks
@@ -83,13 +98,13 @@ public class DeployConfRunner {
      * The Environment Variable used to set the local repository for storing config files. This may be overridden by
      * command line options.
      */
-    private static final String ENV_DEPLOYCONF_REPO = "DEPLOYCONF_REPO";
+    static final String ENV_DEPLOYCONF_REPO = "DEPLOYCONF_REPO";
 
     /**
      * The default local repository relative the user's HOME directory for storing config files. This may be overridden
      * by command line options.
      */
-    private static final String DEFAULT_DEPLOYCONF_REPO = "/.deployconf_repo";
+    static final String DEFAULT_DEPLOYCONF_REPO = "/.deployconf_repo";
 
     /**
      * The default deployment template path to use.
@@ -101,6 +116,21 @@ public class DeployConfRunner {
      */
     protected static final String DEPLOYMENT_CONFIG_SUFFIX = "deployment-config.xml";
 
+    /**
+     * The directory in the repository used by the apply cache.
+     */
+    private static final String APPLY_CACHE_DIRECTORY = "apply-cache";
+
+    /**
+     * The default log configuration.
+     */
+    private static final String DEFAULT_LOG_CONFIG = "logback.xml";
+
+    /**
+     * The log configuration in use.
+     */
+    private static String logConfig = DEFAULT_LOG_CONFIG;
+
     /**
      * The RunMode to use.
      */
@@ -126,6 +156,41 @@ public class DeployConfRunner {
      */
     private ConfigGroupManager groupManager;
 
+    /**
+     * The number of threads to use when applying the deployment config.
+     */
+    private int parallelism = 1;
+
+    /**
+     * The deflate level to use for modified entries.
+     */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * The statistics to collect for each run. Null means no statistics.
+     */
+    private RunStatistics statistics = null;
+
+    /**
+     * Determines if unchanged entries of an existing output file should be reused.
+     */
+    private boolean incremental = false;
+
+    /**
+     * The cache of previously produced output files. Null means no caching.
+     */
+    private ApplyCache applyCache = null;
+
+    /**
+     * Determines if deployment config files should be loaded from and saved to binary snapshots.
+     */
+    private boolean snapshot = false;
+
+    /**
+     * The language used for compiling conditions.
+     */
+    private ConditionLanguage conditionLanguage = ConditionLanguage.BUILTIN;
+
     /**
      * Public Constructor.
      *
@@ -141,6 +206,19 @@ public class DeployConfRunner {
      * @param args the runtime program arguments
      */
     public static void main(String[] args) {
+        System.exit(execute(args, null, System.getenv(ENV_DEPLOYCONF_REPO), null));
+    }
+
+    /**
+     * Execute this program for some command line arguments.
+     *
+     * @param args the program arguments
+     * @param workingDirectory the directory to resolve relative paths against or null to use the current directory
+     * @param envRepoDir the repository directory set in the environment or null
+     * @param server the DeployConfServer executing the arguments or null if not running in a server
+     * @return the exit status
+     */
+    static int execute(String[] args, Path workingDirectory, String envRepoDir, DeployConfServer server) {
         Options options = new Options();
 
         Option help = new Option("h", "help", false, "Display usage information");
@@ -176,6 +254,53 @@ public class DeployConfRunner {
                 + "<INPUT> file. Default is '" + DEFAULT_TEMPLATE_PATH + "'");
         options.addOption(templatePath);
 
+        Option javascriptConditions = new Option("j", "javascript-conditions", false,
+            "Evaluate conditions as JavaScript using a JSR-223 ScriptEngine instead of the built-in language");
+        options.addOption(javascriptConditions);
+
+        Option parallel = new Option("p", "parallel", true,
+            "Number of threads to use for compressing the <OUTPUT> file entries. Default is 1");
+        options.addOption(parallel);
+
+        Option compressionLevel = new Option("l", "compression-level", true,
+            "Deflate level (0-9) to use for <OUTPUT> file entries that are modified. Default is 6");
+        options.addOption(compressionLevel);
+
+        Option batch = new Option("b", "batch", true,
+            "Manifest file with one '<INPUT> <OUTPUT>' pair per line to process in the same run");
+        options.addOption(batch);
+
+        Option concurrency = new Option("c", "concurrency", true,
+            "Maximum number of artifacts to process concurrently in batch mode. Default is the number of processors");
+        options.addOption(concurrency);
+
+        Option applyCacheSize = new Option("a", "apply-cache", true,
+            "Reuse previously produced <OUTPUT> files from a cache of the given size in MB in the repository");
+        options.addOption(applyCacheSize);
+
+        Option incrementalOption = new Option("u", "incremental", false,
+            "Reuse the compressed entries of an existing <OUTPUT> file that are unchanged");
+        options.addOption(incrementalOption);
+
+        Option groupIndex = new Option("g", "group-index", false,
+            "Index all config groups in the repository when starting instead of loading each group when used");
+        options.addOption(groupIndex);
+
+        Option snapshotOption = new Option("B", "binary-snapshot", false,
+            "Keep a binary snapshot beside each deployment config file to avoid parsing it when unchanged");
+        options.addOption(snapshotOption);
+
+        Option stats = new Option("s", "stats", false, "Print timings and metrics for the run when done");
+        options.addOption(stats);
+
+        Option statsJson =
+            new Option("S", "stats-json", true, "Write timings and metrics for the run as JSON to a file");
+        options.addOption(statsJson);
+
+        Option serverOption = new Option(null, "server", false,
+            "Run as a server that executes the commands of DeployConfClient using the same warm JVM");
+        options.addOption(serverOption);
+
         CommandLineParser parser = new DefaultParser();
 
         try {
@@ -187,14 +312,14 @@ public class DeployConfRunner {
                 System.out.print(" version ");
                 System.out.println(projectProperties.getVersion());
                 System.out.println(projectProperties.getCopyrightMessage());
-                System.exit(0);
+                return 0;
             }
 
             if (cmd.hasOption(help.getOpt())) {
                 HelpFormatter formatter = new HelpFormatter();
                 formatter.printHelp(projectProperties.getName() + " [OPTION]... <INPUT> <OUTPUT>",
                     projectProperties.getHelpHeader(), options, "");
-                System.exit(0);
+                return 0;
             }
 
             if (cmd.hasOption(debug.getOpt())) {
@@ -203,6 +328,8 @@ public class DeployConfRunner {
                 setLogConfig("logback-debug.xml");
             } else if (cmd.hasOption(quiet.getOpt())) {
                 setLogConfig("logback-quiet.xml");
+            } else {
+                setLogConfig(DEFAULT_LOG_CONFIG);
             }
 
             RunMode mode = RunMode.NON_INTERACTIVE;
@@ -212,12 +339,20 @@ public class DeployConfRunner {
                 mode = RunMode.INTERACTIVE;
             }
 
+            if (server != null && mode != RunMode.NON_INTERACTIVE) {
+                logger.error("Interactive mode is not supported by the server");
+                return 1;
+            }
+
             DeployConfRunner instance = new DeployConfRunner(mode);
 
-            String envRepoDir = instance.getRepositoryDirectoryFromEnvironment();
+            if (cmd.hasOption(javascriptConditions.getOpt())) {
+                logger.debug("Using JavaScript conditions");
+                instance.setConditionLanguage(ConditionLanguage.JAVASCRIPT);
+            }
 
             if (cmd.hasOption(repoDir.getOpt())) {
-                String rd = cmd.getOptionValue(repoDir.getOpt());
+                String rd = resolvePath(workingDirectory, cmd.getOptionValue(repoDir.getOpt()));
                 logger.debug("Using repository directory: {}", rd);
                 instance.setRepositoryDirectory(rd);
             } else if (envRepoDir != null) {
@@ -233,13 +368,35 @@ public class DeployConfRunner {
                 Files.createDirectories(repo);
             } else if (!Files.isDirectory(repo)) {
                 logger.error("Specified repository is not a directory: {}", repo);
-                System.exit(1);
+                return 1;
             }
 
-            instance.setGroupManager(new FileSystemConfigGroupManager(Paths.get(instance.getRepositoryDirectory())));
+            if (cmd.hasOption(serverOption.getLongOpt())) {
+                if (server != null) {
+                    logger.error("The server can't start another server");
+                    return 1;
+                }
+                DeployConfServer s = new DeployConfServer(repo);
+                try {
+                    logger.info("Server listening on port {}: {}", s.getPort(), s.getServerFile());
+                    s.serve();
+                } finally {
+                    s.close();
+                }
+                return 0;
+            }
+
+            if (server != null) {
+                instance.setGroupManager(server.getGroupManager(repo));
+            } else if (cmd.hasOption(groupIndex.getOpt())) {
+                logger.debug("Using config group index");
+                instance.setGroupManager(new IndexedConfigGroupManager(repo));
+            } else {
+                instance.setGroupManager(new FileSystemConfigGroupManager(repo));
+            }
 
             if (cmd.hasOption(configFile.getOpt())) {
-                String f = cmd.getOptionValue(configFile.getOpt());
+                String f = resolvePath(workingDirectory, cmd.getOptionValue(configFile.getOpt()));
                 logger.debug("Using explicit deployment file: {}", f);
                 instance.setDeploymentConfigPath(FileSystems.getDefault().getPath(f));
             }
@@ -250,46 +407,193 @@ public class DeployConfRunner {
                 instance.setDeploymentTemplatePath(path);
             }
 
-            List<String> argList = cmd.getArgList();
+            if (cmd.hasOption(parallel.getOpt())) {
+                String p = cmd.getOptionValue(parallel.getOpt());
+                logger.debug("Using parallelism: {}", p);
+                instance.setParallelism(getPositiveInt(cmd, parallel));
+            }
+
+            if (cmd.hasOption(compressionLevel.getOpt())) {
+                String l = cmd.getOptionValue(compressionLevel.getOpt());
+                logger.debug("Using compression level: {}", l);
+                instance.setCompressionLevel(Integer.parseInt(l));
+            }
+
+            if (cmd.hasOption(stats.getOpt()) || cmd.hasOption(statsJson.getOpt())) {
+                logger.debug("Collecting run statistics");
+                instance.setStatistics(new RunStatistics());
+            }
+
+            if (cmd.hasOption(incrementalOption.getOpt())) {
+                logger.debug("Using incremental apply");
+                instance.setIncremental(true);
+            }
+
+            if (cmd.hasOption(snapshotOption.getOpt())) {
+                logger.debug("Using deployment config snapshots");
+                instance.setSnapshot(true);
+            }
+
+            if (cmd.hasOption(applyCacheSize.getOpt())) {
+                long size = Long.parseLong(cmd.getOptionValue(applyCacheSize.getOpt()));
+                Path dir = repo.resolve(APPLY_CACHE_DIRECTORY);
+                logger.debug("Using apply cache of {} MB: {}", size, dir);
+                instance.setApplyCache(new ApplyCache(dir, size * 1024 * 1024));
+            }
+
+            List<String> argList = new ArrayList<String>();
+            for (String arg : cmd.getArgList()) {
+                argList.add(resolvePath(workingDirectory, arg));
+            }
+            String statsFile = cmd.getOptionValue(statsJson.getOpt());
+            if (statsFile != null) {
+                statsFile = resolvePath(workingDirectory, statsFile);
+            }
+            if (cmd.hasOption(batch.getOpt()) || argList.size() > 2) {
+                if (argList.size() % 2 != 0) {
+                    System.out.println("usage: " + projectProperties.getName() + " [<INPUT> <OUTPUT>]...");
+                    return 1;
+                }
+                List<BatchRunner.Job> jobs = new ArrayList<BatchRunner.Job>();
+                if (cmd.hasOption(batch.getOpt())) {
+                    String manifest = resolvePath(workingDirectory, cmd.getOptionValue(batch.getOpt()));
+                    logger.debug("Using batch manifest: {}", manifest);
+                    for (BatchRunner.Job job : BatchRunner.readManifest(Paths.get(manifest))) {
+                        jobs.add(new BatchRunner.Job(resolvePath(workingDirectory, job.getSource()),
+                            resolvePath(workingDirectory, job.getDestination())));
+                    }
+                }
+                jobs.addAll(BatchRunner.fromArguments(argList));
+                if (jobs.size() > 1 && cmd.hasOption(configFile.getOpt())) {
+                    logger.error("An explicit deployment config file can't be used for multiple artifacts");
+                    return 1;
+                }
+                int threads = Runtime.getRuntime().availableProcessors();
+                if (cmd.hasOption(concurrency.getOpt())) {
+                    threads = getPositiveInt(cmd, concurrency);
+                }
+                if (mode != RunMode.NON_INTERACTIVE) {
+                    logger.debug("Processing artifacts sequentially in interactive mode");
+                    threads = 1;
+                }
+                int status = new BatchRunner(instance, threads).run(jobs);
+                for (BatchRunner.Job job : jobs) {
+                    System.out.println(job.getStatus() + " " + job.getSource() + " " + job.getDestination());
+                }
+                reportStatistics(instance.getStatistics(), cmd.hasOption(stats.getOpt()), statsFile);
+                return status;
+            }
             if (argList.size() != 2) {
                 System.out.println("usage: " + projectProperties.getName() + " <INPUT> <OUTPUT>");
-                System.exit(1);
+                return 1;
+            }
+            int status = instance.run(argList.get(0), argList.get(1));
+            if (instance.getConditionLanguage() == ConditionLanguage.JAVASCRIPT) {
+                logger.debug("Script cache: {}", ScriptEngineProvider.getInstance());
             }
-            System.exit(instance.run(argList.get(0), argList.get(1)));
+            reportStatistics(instance.getStatistics(), cmd.hasOption(stats.getOpt()), statsFile);
+            return status;
         } catch (ParseException e) {
             logger.error("Command Line Parse Error: " + e.getMessage(), e);
-            System.exit(1);
+            return 1;
         } catch (UserInterruptException e) {
             logger.info("Intertupted by user");
-            System.exit(1);
+            return 1;
         } catch (EndOfFileException e) {
             logger.info("EOF detected");
-            System.exit(1);
+            return 1;
         } catch (Exception e) {
             String msg = "Internal Error: " + e.toString();
             if (!debugEnabled) {
                 msg += "\n(use the -d option to print stacktraces)";
             }
             logger.error(msg, e);
-            System.exit(2);
+            return 2;
         }
     }
 
+    /**
+     * Gets the value of a command line option that must be a positive integer.
+     *
+     * @param cmd the parsed command line
+     * @param option the option to get
+     * @return the value of the option
+     * @throws ParseException indicating that the value isn't a positive integer
+     */
+    private static int getPositiveInt(CommandLine cmd, Option option) throws ParseException {
+        String value = cmd.getOptionValue(option.getOpt());
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            result = 0;
+        }
+        if (result <= 0) {
+            throw new ParseException("The " + option.getLongOpt() + " option must be a positive integer: " + value);
+        }
+
+        return result;
+    }
+
+    /**
+     * Resolve a path given on the command line.
+     *
+     * @param workingDirectory the directory to resolve relative paths against or null to use the current directory
+     * @param path the path to resolve
+     * @return the resolved path
+     */
+    private static String resolvePath(Path workingDirectory, String path) {
+        if (workingDirectory == null) {
+            return path;
+        }
+
+        return workingDirectory.resolve(path).toString();
+    }
+
     /**
      * Gets the default repository directory based on the users home directory.
      *
      * @return the default repository for the user
      */
-    private static String getDefaultRepository() {
+    static String getDefaultRepository() {
         return System.getProperty("user.home") + DEFAULT_DEPLOYCONF_REPO;
     }
 
+    /**
+     * Report the collected statistics.
+     *
+     * @param statistics the RunStatistics to report or null if no statistics are collected
+     * @param summary true if a summary should be printed
+     * @param jsonFile the file to write the statistics to as JSON or null
+     * @throws IOException indicating IO error
+     */
+    private static void reportStatistics(RunStatistics statistics, boolean summary, String jsonFile)
+        throws IOException {
+
+        if (statistics == null) {
+            return;
+        }
+        if (summary) {
+            System.err.print(statistics.toSummary());
+        }
+        if (jsonFile != null) {
+            logger.debug("Writing run statistics to: {}", jsonFile);
+            Files.write(Paths.get(jsonFile), statistics.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     /**
      * Sets the log configuration to use.
+     * <p>
+     * The logging system is only reconfigured when the log configuration differs from the one in use.
      *
      * @param config the log configuration to use
      */
-    private static void setLogConfig(String config) {
+    private static synchronized void setLogConfig(String config) {
+        if (config.equals(logConfig)) {
+            return;
+        }
+        logConfig = config;
         LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
 
         try {
@@ -305,6 +609,8 @@ public class DeployConfRunner {
 
     /**
      * Run this program.
+     * <p>
+     * All modified config groups are flushed before returning.
      *
      * @param source the input file
      * @param destination the destination file
@@ -312,15 +618,87 @@ public class DeployConfRunner {
      * @throws Exception indicating processing error
      */
     public int run(String source, String destination) throws Exception {
-        int result = 0;
+        FileSystem fs = FileSystems.getDefault();
+        DeployConfResult result = apply(fs.getPath(source), fs.getPath(destination));
+        if (!result.isComplete()) {
+            System.err.println("Deployment Configuration is incomplete");
+            System.err.println("Rerun in interactive mode " + "by using the '-i' option");
+            System.err.println(" or");
+            System.err.println("Edit '" + result.getDeploymentConfigPath() + "' and make sure that each "
+                + "deployment property has a valid value");
+        }
 
-        DeploymentConfig template = getDeploymentConfigFromZip(source);
+        return result.getStatus();
+    }
+
+    /**
+     * Apply the deployment config to an input file without reporting the outcome to the user.
+     * <p>
+     * Conditions are compiled using the condition language of this runner. All modified config groups are flushed
+     * before returning.
+     *
+     * @param source the input file
+     * @param destination the destination file
+     * @return the DeployConfResult of the run
+     * @throws Exception indicating processing error
+     */
+    public DeployConfResult apply(Path source, Path destination) throws Exception {
+        RunStatistics previousStatistics = null;
+        if (statistics != null) {
+            previousStatistics = RunStatistics.setCurrent(statistics);
+        }
+        ConditionLanguage previousLanguage = ConditionCompiler.setLanguage(conditionLanguage);
+        RunStatistics stats = RunStatistics.current();
+        long start = stats.start();
+        try {
+            ZipArchiveReader archive = openArchive(source);
+            try {
+                return run(archive, source.toString(), destination.toString());
+            } finally {
+                try {
+                    if (archive != null) {
+                        archive.close();
+                    }
+                } finally {
+                    if (groupManager != null) {
+                        groupManager.flush();
+                    }
+                }
+            }
+        } finally {
+            stats.stopAndCount(RunStatistics.ARTIFACTS, start);
+            ConditionCompiler.setLanguage(previousLanguage);
+            if (statistics != null) {
+                RunStatistics.setCurrent(previousStatistics);
+            }
+        }
+    }
+
+    /**
+     * Run this program using an already opened archive.
+     *
+     * @param archive the ZipArchiveReader for the input file or null if the input file isn't supported by
+     *            ZipArchiveReader
+     * @param source the input file
+     * @param destination the destination file
+     * @return the DeployConfResult of the run
+     * @throws Exception indicating processing error
+     */
+    private DeployConfResult run(ZipArchiveReader archive, String source, String destination) throws Exception {
+        boolean complete = true;
+        RunStatistics stats = RunStatistics.current();
+
+        long start = stats.start();
+        DeploymentConfig template = getDeploymentConfigFromZip(archive, source);
+        stats.stop(RunStatistics.TEMPLATE, start);
         DeploymentConfig config = null;
         Path repoFile = getDeploymentConfigPath(template.getName());
         boolean repoFileExists = Files.exists(repoFile);
         if (repoFileExists) {
             logger.info("Loading Deployment Configuration from: " + repoFile);
+            start = stats.start();
             config = getDeploymentConfigFromPath(repoFile);
+            stats.stop(RunStatistics.PARSE, start);
         } else {
             logger.info("Creating new Deployment Config: " + repoFile);
             config = new DeploymentConfig();
@@ -329,30 +707,28 @@ public class DeployConfRunner {
 
         logger.debug("Running in mode: {}", runMode);
 
-        if (config.merge(template) && !(runMode == RunMode.FORCE_INTERACTIVE)) {
+        start = stats.start();
+        boolean merged = config.merge(template);
+        stats.stop(RunStatistics.MERGE, start);
+        if (merged && !(runMode == RunMode.FORCE_INTERACTIVE)) {
             if (!repoFileExists) {
                 save(config);
             }
-            apply(config, source, destination);
+            apply(config, archive, source, destination);
         } else {
             // Needs manual merge
             boolean interactive = runMode == RunMode.INTERACTIVE || runMode == RunMode.FORCE_INTERACTIVE;
             if (interactive
                 && config.interactiveMerge(newInteractiveConfigurer(), runMode == RunMode.FORCE_INTERACTIVE)) {
                 save(config);
-                apply(config, source, destination);
+                apply(config, archive, source, destination);
             } else {
                 save(config);
-                System.err.println("Deployment Configuration is incomplete");
-                System.err.println("Rerun in interactive mode " + "by using the '-i' option");
-                System.err.println(" or");
-                System.err.println(
-                    "Edit '" + repoFile + "' and make sure that each " + "deployment property has a valid value");
-                result = 2;
+                complete = false;
             }
         }
 
-        return result;
+        return new DeployConfResult(complete, repoFile);
     }
 
     /**
@@ -447,6 +823,132 @@ public class DeployConfRunner {
         this.groupManager = groupManager;
     }
 
+    /**
+     * Gets the parallelism property value.
+     *
+     * @return the current value of the parallelism property
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the parallelism property.
+     *
+     * @param parallelism the new property value
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the compressionLevel property value.
+     *
+     * @return the current value of the compressionLevel property
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the compressionLevel property.
+     *
+     * @param compressionLevel the new property value
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Gets the statistics property value.
+     *
+     * @return the current value of the statistics property
+     */
+    public RunStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics property.
+     *
+     * @param statistics the new property value
+     */
+    public void setStatistics(RunStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Gets the incremental property value.
+     *
+     * @return the current value of the incremental property
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Sets the incremental property.
+     *
+     * @param incremental the new property value
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Gets the snapshot property value.
+     *
+     * @return the current value of the snapshot property
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Sets the snapshot property.
+     *
+     * @param snapshot the new property value
+     */
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Gets the conditionLanguage property value.
+     *
+     * @return the current value of the conditionLanguage property
+     */
+    public ConditionLanguage getConditionLanguage() {
+        return conditionLanguage;
+    }
+
+    /**
+     * Sets the conditionLanguage property.
+     *
+     * @param conditionLanguage the new property value
+     */
+    public void setConditionLanguage(ConditionLanguage conditionLanguage) {
+        this.conditionLanguage = conditionLanguage;
+    }
+
+    /**
+     * Gets the applyCache property value.
+     *
+     * @return the current value of the applyCache property
+     */
+    public ApplyCache getApplyCache() {
+        return applyCache;
+    }
+
+    /**
+     * Sets the applyCache property.
+     *
+     * @param applyCache the new property value
+     */
+    public void setApplyCache(ApplyCache applyCache) {
+        this.applyCache = applyCache;
+    }
+
     /**
      * Create a InteractiveConfigurer instance.
      *
@@ -478,40 +980,168 @@ public class DeployConfRunner {
 
     /**
      * Apply the given DeploymentConfig to the source and create the destination.
+     * <p>
+     * If an ApplyCache is set and it contains the output for the same input and resolved config, the cached output is
+     * restored instead.
      *
      * @param config the DeploymentConfig to apply
+     * @param archive the ZipArchiveReader for the input file, may be null
      * @param source the input file
      * @param destination the destination file
      * @throws Exception indicating processing error
      */
-    private void apply(DeploymentConfig config, String source, String destination) throws Exception {
+    private void apply(DeploymentConfig config, ZipArchiveReader archive, String source, String destination)
+        throws Exception {
 
         FileSystem fs = FileSystems.getDefault();
         Path sourceFile = fs.getPath(source);
         Path destFile = fs.getPath(destination);
 
-        InputStream srcStream = null;
-        OutputStream destStream = null;
+        String cacheKey = null;
+        if (applyCache != null) {
+            cacheKey = applyCache.computeKey(sourceFile, config, getApplyCacheSettings());
+            if (cacheKey != null && applyCache.restore(cacheKey, destFile)) {
+                logger.info("Reusing cached output for: {}", sourceFile);
+                return;
+            }
+        }
+
+        config.setParallelism(parallelism);
+        config.setCompressionLevel(compressionLevel);
 
+        RunStatistics stats = RunStatistics.current();
+        long start = stats.start();
+        ZipArchiveReader previous = null;
+        if (incremental && archive != null && Files.exists(destFile)) {
+            previous = openArchive(destFile);
+        }
+        if (previous != null) {
+            applyIncremental(config, archive, previous, destFile);
+        } else {
+            apply(config, archive, sourceFile, destFile);
+        }
+        stats.stop(RunStatistics.APPLY, start);
+        if (stats.isEnabled()) {
+            stats.count(RunStatistics.INPUT_SIZE, Files.size(sourceFile));
+            stats.count(RunStatistics.BYTES_WRITTEN, Files.size(destFile));
+        }
+
+        if (cacheKey != null) {
+            applyCache.store(cacheKey, destFile);
+        }
+    }
+
+    /**
+     * Apply the given DeploymentConfig to the source and write the destination file.
+     * <p>
+     * The destination is written to a temporary file that replaces the existing destination when complete, so an
+     * existing destination that is a hard link to a cached output is never modified.
+     *
+     * @param config the DeploymentConfig to apply
+     * @param archive the ZipArchiveReader for the input file, may be null
+     * @param sourceFile the input file
+     * @param destFile the destination file
+     * @throws Exception indicating processing error
+     */
+    private void apply(DeploymentConfig config, ZipArchiveReader archive, Path sourceFile, Path destFile)
+        throws Exception {
+
+        Path tmp = createTempFile(destFile);
         try {
-            srcStream = Files.newInputStream(sourceFile);
             logger.debug("Using input file: {}", sourceFile);
-            destStream = Files.newOutputStream(destFile);
-            logger.debug("Using output file: {}", destFile);
-            config.apply(srcStream, destStream, getDeploymentTemplatePath());
-        } finally {
-            if (srcStream != null) {
-                srcStream.close();
+            OutputStream destStream = Files.newOutputStream(tmp);
+            try {
+                logger.debug("Using output file: {}", destFile);
+                if (archive != null) {
+                    config.apply(archive, destStream, getDeploymentTemplatePath());
+                } else {
+                    config.apply(sourceFile, destStream, getDeploymentTemplatePath());
+                }
+            } finally {
+                destStream.close();
             }
+            replace(tmp, destFile);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 
-            if (destStream != null) {
-                destStream.close();
+    /**
+     * Apply the given DeploymentConfig to the source reusing unchanged entries of the existing destination file.
+     * <p>
+     * The new destination is written to a temporary file that replaces the existing destination when complete.
+     *
+     * @param config the DeploymentConfig to apply
+     * @param archive the ZipArchiveReader for the input file
+     * @param previous the ZipArchiveReader for the existing destination file, closed by this method
+     * @param destFile the destination file
+     * @throws Exception indicating processing error
+     */
+    private void applyIncremental(DeploymentConfig config, ZipArchiveReader archive, ZipArchiveReader previous,
+        Path destFile) throws Exception {
+
+        Path tmp = createTempFile(destFile);
+        try {
+            logger.debug("Using existing output file: {}", destFile);
+            try {
+                OutputStream destStream = Files.newOutputStream(tmp);
+                try {
+                    config.apply(archive, previous, destStream, getDeploymentTemplatePath());
+                } finally {
+                    destStream.close();
+                }
+            } finally {
+                previous.close();
             }
+            replace(tmp, destFile);
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
+    /**
+     * Create a temporary file in the directory of a destination file.
+     *
+     * @param destFile the destination file
+     * @return the temporary file
+     * @throws IOException indicating IO error
+     */
+    private static Path createTempFile(Path destFile) throws IOException {
+        Path dir = destFile.toAbsolutePath().getParent();
+
+        return Files.createTempFile(dir, destFile.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Replace a destination file with a temporary file, atomically if supported by the file system.
+     *
+     * @param tmp the temporary file
+     * @param destFile the destination file
+     * @throws IOException indicating IO error
+     */
+    private static void replace(Path tmp, Path destFile) throws IOException {
+        try {
+            Files.move(tmp, destFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, destFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Gets the settings, other than the input and the resolved config, that affects the output.
+     *
+     * @return a String describing the output settings
+     * @throws IOException indicating failure to load properties
+     */
+    private String getApplyCacheSettings() throws IOException {
+        return getDeploymentTemplatePath() + "|" + compressionLevel + "|" + conditionLanguage + "|"
+            + getProjectProperties().getVersion();
+    }
+
     /**
      * Save the DeploymentConfig to the configured persistent storage.
+     * <p>
+     * The deployment config file is written while holding an exclusive RepositoryLock.
      *
      * @param config the DeploymentConfig to save
      * @throws IOException indicating IO error
@@ -519,38 +1149,79 @@ public class DeployConfRunner {
     private void save(DeploymentConfig config) throws IOException {
         Path file = getDeploymentConfigPath(config.getName());
         logger.info("Saving Deployment Configuration to '" + file + "'");
-        FileOutputStream os = new FileOutputStream(file.toFile());
+        RunStatistics stats = RunStatistics.current();
+        long start = stats.start();
+        RepositoryLock lock = RepositoryLock.acquireExclusive(file);
         try {
-            config.save(os);
+            FileOutputStream os = new FileOutputStream(file.toFile());
+            try {
+                config.save(os);
+            } finally {
+                os.close();
+            }
         } finally {
-            os.close();
+            lock.close();
+            stats.stop(RunStatistics.SAVE, start);
         }
     }
 
+    /**
+     * Open the input file for random access.
+     *
+     * @param source the input file
+     * @return a ZipArchiveReader or null if the input file isn't supported by ZipArchiveReader
+     * @throws IOException indicating IO error
+     */
+    private ZipArchiveReader openArchive(Path source) throws IOException {
+        ZipArchiveReader result = null;
+        try {
+            result = new ZipArchiveReader(source);
+        } catch (ZipException e) {
+            logger.debug("Using ZipFile for unsupported input file: {}", e.getMessage());
+        }
+
+        return result;
+    }
+
     /**
      * Gets a DeploymentConfig instance from a Zip file.
      *
-     * @param source the ZipFile to use
-     * @return a DeploymentConfig representation of the ReadableByteChannel
+     * @param archive the ZipArchiveReader to use, if null the source is opened as a ZipFile
+     * @param source the Zip file to use
+     * @return a DeploymentConfig representation of the deployment template
      * @throws Exception indicating error
      */
-    private DeploymentConfig getDeploymentConfigFromZip(String source) throws Exception {
-
-        ZipFile zipFile = new ZipFile(source);
-        ZipEntry entry = zipFile.getEntry(deploymentTemplatePath);
-        if (entry == null) {
-            zipFile.close();
-            throw new IllegalArgumentException(
-                "No deployment template file found in file '" + source + "': " + deploymentTemplatePath);
+    private DeploymentConfig getDeploymentConfigFromZip(ZipArchiveReader archive, String source) throws Exception {
+
+        ZipFile zipFile = null;
+        InputStream is;
+        if (archive != null) {
+            ZipArchiveEntry entry = archive.getEntry(deploymentTemplatePath);
+            if (entry == null) {
+                throw new IllegalArgumentException(
+                    "No deployment template file found in file '" + source + "': " + deploymentTemplatePath);
+            }
+            is = archive.getInputStream(entry);
+        } else {
+            zipFile = new ZipFile(source);
+            ZipEntry entry = zipFile.getEntry(deploymentTemplatePath);
+            if (entry == null) {
+                zipFile.close();
+                throw new IllegalArgumentException(
+                    "No deployment template file found in file '" + source + "': " + deploymentTemplatePath);
+            }
+            is = zipFile.getInputStream(entry);
         }
-        InputStream is = zipFile.getInputStream(entry);
 
-        DeploymentReader reader = new DeploymentReader(is, groupManager);
-        DeploymentConfig result = reader.parse();
-        is.close();
-        zipFile.close();
-
-        return result;
+        try {
+            DeploymentReader reader = new DeploymentReader(is, groupManager);
+            return reader.parse();
+        } finally {
+            is.close();
+            if (zipFile != null) {
+                zipFile.close();
+            }
+        }
     }
 
     /**
@@ -562,12 +1233,50 @@ public class DeployConfRunner {
      */
     private DeploymentConfig getDeploymentConfigFromPath(Path path) throws Exception {
 
-        ReadableByteChannel ch = FileChannel.open(path, StandardOpenOption.READ);
-        InputStream is = Channels.newInputStream(ch);
+        RepositoryLock lock = RepositoryLock.acquireShared(path);
+        try {
+            if (snapshot) {
+                return getDeploymentConfigFromSnapshot(path);
+            }
+
+            ReadableByteChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+            InputStream is = Channels.newInputStream(ch);
+
+            DeploymentReader reader = new DeploymentReader(is, getGroupManager());
+            DeploymentConfig result = reader.parse();
+            ch.close();
+
+            return result;
+        } finally {
+            lock.close();
+        }
+    }
 
-        DeploymentReader reader = new DeploymentReader(is, getGroupManager());
-        DeploymentConfig result = reader.parse();
-        ch.close();
+    /**
+     * Gets a DeploymentConfig instance from the snapshot of a Path, or from the Path itself when there is no valid
+     * snapshot, in which case the snapshot is updated.
+     * <p>
+     * The caller must hold a RepositoryLock for the Path.
+     *
+     * @param path the file to use
+     * @return a DeploymentConfig representation of the file
+     * @throws Exception indicating error
+     */
+    private DeploymentConfig getDeploymentConfigFromSnapshot(Path path) throws Exception {
+        byte[] data = Files.readAllBytes(path);
+        byte[] checksum = DeploymentSnapshot.checksum(data);
+        DeploymentSnapshot s = new DeploymentSnapshot(path);
+
+        DeploymentConfig result = s.load(checksum, getGroupManager());
+        if (result == null) {
+            DeploymentReader reader = new DeploymentReader(new ByteArrayInputStream(data), getGroupManager());
+            result = reader.parse();
+            try {
+                s.store(result, checksum);
+            } catch (IOException e) {
+                logger.warn("Unable to store deployment config snapshot: " + s.getPath(), e);
+            }
+        }
 
         return result;
     }
@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.group.IndexedConfigGroupManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server that executes the commands of {@link DeployConfClient} in a long-running JVM.
+ * <p>
+ * The server keeps the JVM, the log configuration and an {@link IndexedConfigGroupManager} for each repository warm
+ * between commands. It listens on a socket bound to the loopback address and writes the port and a random token to
+ * the server file in the repository, readable only by its owner. Clients must send the token with each command, so
+ * only users that can read the server file may execute commands.
+ * <p>
+ * Commands are executed one at a time since the standard output and error streams of the JVM are redirected to the
+ * client while a command is executed. Interactive commands are not supported.
+ */
+public class DeployConfServer implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(DeployConfServer.class);
+
+    /**
+     * Name of the server file in the repository.
+     */
+    public static final String SERVER_FILE = "deployconf-server.properties";
+
+    /**
+     * Server file property containing the port.
+     */
+    static final String PROPERTY_PORT = "port";
+
+    /**
+     * Server file property containing the token.
+     */
+    static final String PROPERTY_TOKEN = "token";
+
+    /**
+     * Frame type containing the exit status.
+     */
+    static final int FRAME_EXIT = 0;
+
+    /**
+     * Frame type containing standard output data.
+     */
+    static final int FRAME_OUT = 1;
+
+    /**
+     * Frame type containing standard error data.
+     */
+    static final int FRAME_ERR = 2;
+
+    private static final int TOKEN_SIZE = 32;
+
+    /**
+     * The default time in milliseconds a client may use for sending its command.
+     */
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT = 10000;
+
+    private static final int BUF_SIZE = 8192;
+
+    /**
+     * The maximum number of arguments a client may send.
+     */
+    private static final int MAX_ARGS = 1024;
+
+    private final Path serverFile;
+
+    private final ServerSocket serverSocket;
+
+    private final String token;
+
+    private final ConcurrentMap<Path, ConfigGroupManager> groupManagers;
+
+    private volatile boolean closed;
+
+    private volatile int handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+
+    /**
+     * Public Constructor.
+     *
+     * @param repository the repository to write the server file to
+     * @throws IOException indicating IO error
+     */
+    public DeployConfServer(Path repository) throws IOException {
+        serverFile = repository.resolve(SERVER_FILE);
+        groupManagers = new ConcurrentHashMap<Path, ConfigGroupManager>();
+
+        byte[] random = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(random);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : random) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        token = sb.toString();
+
+        serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        try {
+            writeServerFile();
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the port property value.
+     *
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the serverFile property value.
+     *
+     * @return the current value of the serverFile property
+     */
+    public Path getServerFile() {
+        return serverFile;
+    }
+
+    /**
+     * Gets the handshakeTimeout property value.
+     *
+     * @return the time in milliseconds a client may use for sending its command
+     */
+    public int getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    /**
+     * Sets the handshakeTimeout property.
+     * <p>
+     * Commands are executed one at a time, so a client that connects without sending its command blocks the server
+     * until the timeout expires.
+     *
+     * @param handshakeTimeout the new property value
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    /**
+     * Gets the ConfigGroupManager to use for a repository.
+     * <p>
+     * The ConfigGroupManager is created on first use and watches the repository for config groups changed by other
+     * processes.
+     *
+     * @param repository the repository to use
+     * @return a ConfigGroupManager shared by all commands using the repository
+     * @throws IOException indicating IO error
+     */
+    public ConfigGroupManager getGroupManager(Path repository) throws IOException {
+        Path key = repository.toAbsolutePath().normalize();
+        ConfigGroupManager result = groupManagers.get(key);
+        if (result == null) {
+            IndexedConfigGroupManager manager = new IndexedConfigGroupManager(key);
+            manager.watch();
+            result = groupManagers.putIfAbsent(key, manager);
+            if (result == null) {
+                result = manager;
+            } else {
+                manager.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Accept and execute commands until this server is closed.
+     *
+     * @throws IOException indicating IO error
+     */
+    public void serve() throws IOException {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            try {
+                handle(socket);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to execute client command: " + e, e);
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            serverSocket.close();
+            Files.deleteIfExists(serverFile);
+        } finally {
+            for (ConfigGroupManager manager : groupManagers.values()) {
+                manager.close();
+            }
+        }
+    }
+
+    /**
+     * Execute the command sent on a socket.
+     *
+     * @param socket the socket to use
+     * @throws IOException indicating IO error
+     */
+    private void handle(Socket socket) throws IOException {
+        socket.setSoTimeout(handshakeTimeout);
+        DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        byte[] clientToken = is.readUTF().getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(clientToken, token.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejecting client with invalid token");
+            return;
+        }
+        Path workingDirectory;
+        String dir = is.readUTF();
+        try {
+            workingDirectory = Paths.get(dir);
+        } catch (InvalidPathException e) {
+            throw new IOException("Invalid working directory: " + dir, e);
+        }
+        String envRepoDir = null;
+        if (is.readBoolean()) {
+            envRepoDir = is.readUTF();
+        }
+        int count = is.readInt();
+        if (count < 0 || count > MAX_ARGS) {
+            throw new IOException("Invalid argument count: " + count);
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = is.readUTF();
+        }
+        socket.setSoTimeout(0);
+
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUF_SIZE));
+        PrintStream out = new PrintStream(new FrameOutputStream(os, FRAME_OUT), true);
+        PrintStream err = new PrintStream(new FrameOutputStream(os, FRAME_ERR), true);
+        PrintStream previousOut = System.out;
+        PrintStream previousErr = System.err;
+        int status;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            status = DeployConfRunner.execute(args, workingDirectory, envRepoDir, this);
+        } finally {
+            System.setOut(previousOut);
+            System.setErr(previousErr);
+            out.flush();
+            err.flush();
+        }
+        synchronized (os) {
+            os.writeByte(FRAME_EXIT);
+            os.writeInt(status);
+            os.flush();
+        }
+    }
+
+    /**
+     * Write the server file atomically, readable only by its owner if supported by the file system.
+     *
+     * @throws IOException indicating IO error
+     */
+    private void writeServerFile() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY_PORT, String.valueOf(getPort()));
+        properties.setProperty(PROPERTY_TOKEN, token);
+
+        Path dir = serverFile.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, SERVER_FILE, ".tmp");
+        try {
+            try {
+                Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-------");
+                Files.setPosixFilePermissions(tmp, permissions);
+            } catch (UnsupportedOperationException e) {
+                logger.debug("Unable to restrict server file permissions: {}", e.toString());
+            }
+            OutputStream os = Files.newOutputStream(tmp);
+            try {
+                properties.store(os, null);
+            } finally {
+                os.close();
+            }
+            try {
+                Files.move(tmp, serverFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, serverFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * OutputStream that writes data as frames of a given type.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream os;
+
+        private final int type;
+
+        /**
+         * Private Constructor.
+         *
+         * @param os the stream to write frames to, also used for synchronizing frames of different types
+         * @param type the frame type
+         */
+        private FrameOutputStream(DataOutputStream os, int type) {
+            this.os = os;
+            this.type = type;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (os) {
+                os.writeByte(type);
+                os.writeInt(len);
+                os.write(b, off, len);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flush() throws IOException {
+            synchronized (os) {
+                os.flush();
+            }
+        }
+    }
+}
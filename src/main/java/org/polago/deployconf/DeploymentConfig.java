@@ -24,20 +24,46 @@
 
 package org.polago.deployconf;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.polago.deployconf.condition.ConditionCompiler;
 import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.stats.RunStatistics;
 import org.polago.deployconf.task.Task;
+import org.polago.deployconf.zip.ZipArchiveEntry;
+import org.polago.deployconf.zip.ZipArchiveReader;
+import org.polago.deployconf.zip.ZipArchiveWriter;
+import org.polago.deployconf.zip.ZipCompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,12 +76,26 @@ public class DeploymentConfig {
 
     private static final int BUF_SIZE = 1024;
 
+    /**
+     * Header id of the Zip extra field containing the digest of everything an entry written by Tasks depends on.
+     */
+    static final int DIGEST_EXTRA_ID = 0x4443;
+
+    /**
+     * Version of the entry digest, changed when the digested data changes.
+     */
+    private static final int DIGEST_VERSION = 1;
+
     private final List<Task> tasks;
 
     private String name;
 
     private ConfigGroupManager groupManager;
 
+    private int parallelism = 1;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
     /**
      * Public Constructor.
      */
@@ -99,6 +139,48 @@ public class DeploymentConfig {
         this.groupManager = groupManager;
     }
 
+    /**
+     * Gets the parallelism property value.
+     *
+     * @return the current value of the parallelism property
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads to use when compressing Zip entries in {@link #apply(Path, OutputStream, String)}.
+     *
+     * @param parallelism the new property value
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the compressionLevel property value.
+     *
+     * @return the current value of the compressionLevel property
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate level to use for entries that are rewritten by Tasks.
+     *
+     * @param compressionLevel the new property value, 0-9 or -1 for the default level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * Perform an interactive post merge operation.
      * <p>
@@ -157,14 +239,25 @@ public class DeploymentConfig {
 
         // Remove all tasks that isn't available in the template since they are
         // not used anymore
-        tasks.retainAll(template.tasks);
+        tasks.retainAll(new HashSet<Task>(template.tasks));
+
+        // Index the remaining tasks so that each template task is merged with
+        // the first equal task
+        Map<Task, Task> index = new HashMap<Task, Task>();
+        for (Task t : tasks) {
+            if (!index.containsKey(t)) {
+                index.put(t, t);
+            }
+        }
 
         // Add any new task from the template
         for (Task t : template.tasks) {
-            if (!tasks.contains(t)) {
+            Task existing = index.get(t);
+            if (existing == null) {
                 tasks.add(t);
+                index.put(t, t);
             } else {
-                mergeTask(t);
+                existing.merge(t);
             }
         }
 
@@ -178,20 +271,6 @@ public class DeploymentConfig {
         return true;
     }
 
-    /**
-     * Merge a single Task with corresponding Task in this instance.
-     *
-     * @param task the Task to merge
-     */
-    private void mergeTask(Task task) {
-        for (Task t : tasks) {
-            if (t.equals(task)) {
-                t.merge(task);
-                return;
-            }
-        }
-    }
-
     /**
      * Gets the tasks property value.
      *
@@ -242,6 +321,7 @@ public class DeploymentConfig {
 
         ZipInputStream srcZipStream = new ZipInputStream(srcStream);
         ZipOutputStream destZipStream = new ZipOutputStream(destStream);
+        destZipStream.setLevel(compressionLevel);
 
         ZipEntry e = srcZipStream.getNextEntry();
 
@@ -252,6 +332,7 @@ public class DeploymentConfig {
             logger.warn("Source input stream has no entries");
         }
 
+        RunStatistics stats = RunStatistics.current();
         boolean entryWritten = false;
         while (e != null) {
             if (e.getName().equals(ignorePath)) {
@@ -259,11 +340,25 @@ public class DeploymentConfig {
                 e = srcZipStream.getNextEntry();
                 continue;
             }
-            destZipStream.putNextEntry(createZipEntry(e));
+            ZipEntry destEntry = createZipEntry(e);
             List<Task> taskList = taskMap.get(e.getName());
-            if (taskList != null) {
-                applyZipEntry(e, taskList, srcZipStream, destZipStream);
+            stats.count(taskList != null ? RunStatistics.ENTRIES_FILTERED : RunStatistics.ENTRIES_COPIED, 1);
+            if (taskList != null && destEntry.getMethod() == ZipEntry.STORED) {
+                // The CRC and size of a STORED entry must be known before it is written
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                applyZipEntry(e.getName(), taskList, srcZipStream, data);
+                CRC32 crc = new CRC32();
+                crc.update(data.toByteArray(), 0, data.size());
+                destEntry.setCrc(crc.getValue());
+                destEntry.setSize(data.size());
+                destEntry.setCompressedSize(data.size());
+                destZipStream.putNextEntry(destEntry);
+                data.writeTo(destZipStream);
+            } else if (taskList != null) {
+                destZipStream.putNextEntry(destEntry);
+                applyZipEntry(e.getName(), taskList, srcZipStream, destZipStream);
             } else {
+                destZipStream.putNextEntry(destEntry);
                 copyZipEntry(e, srcZipStream, destZipStream);
             }
             e = srcZipStream.getNextEntry();
@@ -275,10 +370,212 @@ public class DeploymentConfig {
         destZipStream.finish();
     }
 
+    /**
+     * Apply this DeploymentConfig to the destination using the source file as input.
+     * <p>
+     * The source is read using random access. Entries without Tasks are copied as is without being inflated and
+     * deflated again, so only the entries that Tasks are applied to are recompressed using their original method. If
+     * the parallelism is greater than one, entries are read and compressed by a pool of worker threads. Tasks are
+     * always applied by the calling thread and the destination entries are written in the same order as in the
+     * source. A DEFLATED entry that Tasks are applied to is deflated directly to the destination while the Tasks write
+     * it, so its content is never kept in memory. A STORED entry is kept in memory since its CRC and size must be
+     * written before its data.
+     *
+     * @param source the Zip file to use
+     * @param destStream the OutputStream file to use
+     * @param ignorePath a zip path to ignore
+     * @throws Exception indicating IO error
+     */
+    public void apply(Path source, OutputStream destStream, String ignorePath) throws Exception {
+        ZipArchiveReader reader;
+        try {
+            reader = new ZipArchiveReader(source);
+        } catch (ZipException e) {
+            logger.debug("Using stream processing for unsupported Zip file: {}", e.getMessage());
+            InputStream srcStream = Files.newInputStream(source);
+            try {
+                apply(srcStream, destStream, ignorePath);
+            } finally {
+                srcStream.close();
+            }
+            return;
+        }
+
+        try {
+            apply(reader, destStream, ignorePath);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Apply this DeploymentConfig using an already opened ZipArchiveReader as input.
+     * <p>
+     * The reader is not closed, allowing the same archive to be used for locating the deployment template before
+     * applying the configuration.
+     *
+     * @param reader the ZipArchiveReader to use
+     * @param destStream the OutputStream file to use
+     * @param ignorePath a zip path to ignore
+     * @throws Exception indicating IO error
+     * @see #apply(Path, OutputStream, String)
+     */
+    public void apply(ZipArchiveReader reader, OutputStream destStream, String ignorePath) throws Exception {
+        apply(reader, null, destStream, ignorePath);
+    }
+
+    /**
+     * Apply this DeploymentConfig incrementally using an already opened ZipArchiveReader as input and the output of a
+     * previous apply.
+     * <p>
+     * Each entry that Tasks are applied to is written with an extra field containing a digest of the source entry,
+     * the Tasks owning it and the config group values they use. If the same entry in the previous output has the
+     * same digest, its compressed data is reused without applying the Tasks or inflating any data. No digest is
+     * written if a config group used by the Tasks can't list its properties. A previous entry is also reused if either
+     * digest is missing and the Tasks produce identical content. Reused entries keep the compression level used when
+     * the previous output was created. Neither reader is closed.
+     *
+     * @param reader the ZipArchiveReader to use
+     * @param previous the ZipArchiveReader for a previous output or null to apply all entries
+     * @param destStream the OutputStream file to use. This must not be the file read by previous.
+     * @param ignorePath a zip path to ignore
+     * @throws Exception indicating IO error
+     * @see #apply(ZipArchiveReader, OutputStream, String)
+     */
+    public void apply(ZipArchiveReader reader, ZipArchiveReader previous, OutputStream destStream, String ignorePath)
+        throws Exception {
+
+        Map<String, List<Task>> taskMap = getTaskMap();
+        logger.debug("Using TaskMap: {}", taskMap);
+
+        ExecutorService executor = null;
+        if (parallelism > 1) {
+            logger.debug("Applying using {} threads", parallelism);
+            executor = Executors.newFixedThreadPool(parallelism);
+        }
+        RunStatistics stats = RunStatistics.current();
+        Deque<Future<CompressedEntry>> pending = new ArrayDeque<Future<CompressedEntry>>();
+        try {
+            BufferedOutputStream out = new BufferedOutputStream(destStream, BUF_SIZE * 64);
+            ZipArchiveWriter writer = new ZipArchiveWriter(out);
+            if (reader.getEntries().isEmpty()) {
+                logger.warn("Source input stream has no entries");
+            }
+            for (ZipArchiveEntry e : reader.getEntries()) {
+                if (e.getName().equals(ignorePath)) {
+                    logger.debug("Ignoring Zip Entry: " + e.getName());
+                    continue;
+                }
+                Callable<CompressedEntry> task;
+                List<Task> taskList = taskMap.get(e.getName());
+                if (taskList != null) {
+                    byte[] digest = digestEntry(e, taskList);
+                    ZipArchiveEntry previousEntry = null;
+                    byte[] previousDigest = null;
+                    if (previous != null) {
+                        previousEntry = previous.getEntry(e.getName());
+                    }
+                    if (previousEntry != null) {
+                        previousDigest = previousEntry.getExtraField(DIGEST_EXTRA_ID);
+                    }
+                    if (previousDigest != null && Arrays.equals(digest, previousDigest)) {
+                        logger.debug("Reusing unchanged Zip Entry: " + e.getName());
+                        stats.count(RunStatistics.ENTRIES_REUSED, 1);
+                        task = new ReuseTask(previous, previousEntry, e, digest);
+                    } else {
+                        boolean compare = previousEntry != null && (previousDigest == null || digest == null)
+                            && previousEntry.getMethod() == e.getMethod();
+                        if (e.getMethod() != ZipEntry.STORED && !compare) {
+                            stats.count(RunStatistics.ENTRIES_FILTERED, 1);
+                            while (!pending.isEmpty()) {
+                                writeCompressedEntry(writer, pending.remove());
+                            }
+                            streamZipEntry(reader, e, taskList, writer, digest);
+                            continue;
+                        }
+                        // The data is needed before compressing a STORED entry or comparing with the previous entry
+                        EntryBuffer data = new EntryBuffer();
+                        InputStream is = reader.getInputStream(e);
+                        try {
+                            applyZipEntry(e.getName(), taskList, is, data);
+                        } finally {
+                            is.close();
+                        }
+                        task = new CompressTask(e, data.getBuffer(), data.size(), compressionLevel, digest);
+                        if (compare && previousEntry.getSize() == data.size()) {
+                            // Counted as filtered or reused once the content has been compared
+                            task = new CompareTask(previous, previousEntry, (CompressTask) task, stats);
+                        } else {
+                            stats.count(RunStatistics.ENTRIES_FILTERED, 1);
+                        }
+                    }
+                } else {
+                    logger.debug("Copying Zip Entry: " + e.getName());
+                    stats.count(RunStatistics.ENTRIES_COPIED, 1);
+                    task = new CopyTask(reader, e);
+                }
+                pending.add(submit(executor, task));
+                if (pending.size() >= parallelism * 2) {
+                    writeCompressedEntry(writer, pending.remove());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeCompressedEntry(writer, pending.remove());
+            }
+            writer.finish();
+        } finally {
+            for (Future<CompressedEntry> f : pending) {
+                f.cancel(true);
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Submit a task to an ExecutorService or run it directly if no ExecutorService is used.
+     *
+     * @param executor the ExecutorService to use, may be null
+     * @param task the task to run
+     * @return the Future result of the task
+     */
+    private Future<CompressedEntry> submit(ExecutorService executor, Callable<CompressedEntry> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<CompressedEntry> result = new FutureTask<CompressedEntry>(task);
+        result.run();
+
+        return result;
+    }
+
+    /**
+     * Wait for a compressed entry and write it to the archive.
+     *
+     * @param writer the ZipArchiveWriter to use
+     * @param future the pending CompressedEntry
+     * @throws Exception indicating processing error
+     */
+    private void writeCompressedEntry(ZipArchiveWriter writer, Future<CompressedEntry> future) throws Exception {
+        CompressedEntry entry;
+        try {
+            entry = future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        writer.writeEntry(entry.entry, entry.data);
+    }
+
     /**
      * Create a new ZipEntry preserving relevant fields.
      * <p>
-     * Just reusing the original entry seems to produce a corrupt zip file
+     * Just reusing the original entry seems to produce a corrupt zip file. STORED entries are kept STORED using the
+     * CRC and size from the original entry.
      *
      * @param e the ZipEntry to use
      * @return a new ZipEntry based on e
@@ -291,6 +588,12 @@ public class DeploymentConfig {
             result.setExtra(extra.clone());
         }
         result.setTime(e.getTime());
+        if (e.getMethod() == ZipEntry.STORED && e.getSize() != -1 && e.getCrc() != -1) {
+            result.setMethod(ZipEntry.STORED);
+            result.setSize(e.getSize());
+            result.setCompressedSize(e.getSize());
+            result.setCrc(e.getCrc());
+        }
 
         return result;
     }
@@ -318,19 +621,69 @@ public class DeploymentConfig {
     /**
      * Apply given Tasks to a ZipEntry.
      *
-     * @param e the ZipEntry to use
+     * @param name the ZipEntry name to use
      * @param taskList the list of task to apply to the ZipEntry
-     * @param zipSrc the ZipInputStream file to use
-     * @param zipDest the ZipOutputStream file to use
+     * @param zipSrc the InputStream to use
+     * @param zipDest the OutputStream to use
      * @throws Exception indicating processing error
      */
-    private void applyZipEntry(ZipEntry e, List<Task> taskList, ZipInputStream zipSrc, ZipOutputStream zipDest)
+    private void applyZipEntry(String name, List<Task> taskList, InputStream zipSrc, OutputStream zipDest)
         throws Exception {
 
-        logger.info("Applying deployment config to Zip Entry: " + e);
+        logger.info("Applying deployment config to Zip Entry: " + name);
+        RunStatistics stats = RunStatistics.current();
         for (Task t : taskList) {
+            long start = stats.start();
             t.apply(zipSrc, zipDest);
+            stats.stopTask(t.getSerializedName() + " " + name, start);
+        }
+    }
+
+    /**
+     * Apply given Tasks to an entry and deflate the result directly to the archive.
+     *
+     * @param reader the ZipArchiveReader to read the entry from
+     * @param e the entry to apply the Tasks to
+     * @param taskList the Tasks to apply to the entry
+     * @param writer the ZipArchiveWriter to write the entry to
+     * @param digest the entry digest to record in the entry or null to record no digest
+     * @throws Exception indicating processing error
+     */
+    private void streamZipEntry(ZipArchiveReader reader, ZipArchiveEntry e, List<Task> taskList,
+        ZipArchiveWriter writer, byte[] digest) throws Exception {
+
+        ZipArchiveEntry entry = e.copyHeader();
+        entry.setExtraField(DIGEST_EXTRA_ID, digest);
+        OutputStream os = writer.startEntry(entry, compressionLevel);
+        InputStream is = reader.getInputStream(e);
+        try {
+            applyZipEntry(e.getName(), taskList, is, os);
+        } finally {
+            is.close();
+        }
+        os.close();
+    }
+
+    /**
+     * Compute the digest of everything an entry written by Tasks depends on.
+     *
+     * @param entry the source entry
+     * @param taskList the Tasks to apply to the entry
+     * @return the digest or null if a config group can't list its properties
+     * @throws IOException indicating IO error
+     */
+    private byte[] digestEntry(ZipArchiveEntry entry, List<Task> taskList) throws IOException {
+        MessageDigest digest = ApplyCache.newDigest();
+        ByteBuffer header = ByteBuffer.allocate(28);
+        header.putInt(DIGEST_VERSION).putInt(entry.getMethod()).putLong(entry.getCrc()).putLong(entry.getSize());
+        header.putInt(ConditionCompiler.getLanguage().ordinal());
+        digest.update(header.array());
+        digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+        if (!ApplyCache.updateTasks(digest, getName(), taskList, groupManager)) {
+            return null;
         }
+
+        return digest.digest();
     }
 
     /**
@@ -354,4 +707,257 @@ public class DeploymentConfig {
         return result;
     }
 
+    /**
+     * ByteArrayOutputStream giving access to its buffer, so the data doesn't have to be copied.
+     */
+    private static final class EntryBuffer extends ByteArrayOutputStream {
+
+        /**
+         * Gets the buffer holding the data, valid up to {@link #size()}.
+         *
+         * @return the buffer
+         */
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * A compressed Zip entry ready to be written.
+     */
+    private static final class CompressedEntry {
+
+        private final ZipArchiveEntry entry;
+
+        private final ByteBuffer data;
+
+        /**
+         * Private Constructor.
+         *
+         * @param entry the entry to write
+         * @param data the compressed data
+         */
+        private CompressedEntry(ZipArchiveEntry entry, ByteBuffer data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Compresses the data of a single Zip entry using the method of the original entry.
+     */
+    private static final class CompressTask implements Callable<CompressedEntry> {
+
+        private final ZipArchiveEntry zipEntry;
+
+        private final byte[] data;
+
+        private final int len;
+
+        private final int level;
+
+        private final byte[] digest;
+
+        /**
+         * Private Constructor.
+         *
+         * @param zipEntry the entry to compress
+         * @param data the uncompressed data
+         * @param len the number of bytes to use from data
+         * @param level the deflate level to use
+         * @param digest the entry digest to record in the entry or null to record no digest
+         */
+        private CompressTask(ZipArchiveEntry zipEntry, byte[] data, int len, int level, byte[] digest) {
+            this.zipEntry = zipEntry;
+            this.data = data;
+            this.len = len;
+            this.level = level;
+            this.digest = digest;
+        }
+
+        /**
+         * Create the header of the entry to write.
+         *
+         * @return a new ZipArchiveEntry
+         */
+        private ZipArchiveEntry createHeader() {
+            ZipArchiveEntry result = zipEntry.copyHeader();
+            result.setExtraField(DIGEST_EXTRA_ID, digest);
+
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CompressedEntry call() throws Exception {
+            ZipArchiveEntry entry = createHeader();
+            ByteBuffer compressed;
+            if (entry.getMethod() == ZipEntry.STORED) {
+                compressed = ZipCompressor.store(entry, data, len);
+            } else {
+                compressed = ZipCompressor.deflate(entry, data, len, level);
+            }
+
+            return new CompressedEntry(entry, compressed);
+        }
+    }
+
+    /**
+     * Reuses the compressed data of an entry in a previous output with the same digest.
+     */
+    private static final class ReuseTask implements Callable<CompressedEntry> {
+
+        private final ZipArchiveReader previous;
+
+        private final ZipArchiveEntry previousEntry;
+
+        private final ZipArchiveEntry zipEntry;
+
+        private final byte[] digest;
+
+        /**
+         * Private Constructor.
+         *
+         * @param previous the ZipArchiveReader for the previous output
+         * @param previousEntry the entry in the previous output
+         * @param zipEntry the source entry
+         * @param digest the entry digest to record in the entry
+         */
+        private ReuseTask(ZipArchiveReader previous, ZipArchiveEntry previousEntry, ZipArchiveEntry zipEntry,
+            byte[] digest) {
+            this.previous = previous;
+            this.previousEntry = previousEntry;
+            this.zipEntry = zipEntry;
+            this.digest = digest;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CompressedEntry call() throws Exception {
+            ZipArchiveEntry entry = zipEntry.copyHeader();
+            entry.setExtraField(DIGEST_EXTRA_ID, digest);
+            entry.setMethod(previousEntry.getMethod());
+            entry.setDataDescriptor(previousEntry.isDataDescriptor());
+            entry.setCrc(previousEntry.getCrc());
+            entry.setSize(previousEntry.getSize());
+            entry.setCompressedSize(previousEntry.getCompressedSize());
+
+            return new CompressedEntry(entry, previous.getRawData(previousEntry));
+        }
+    }
+
+    /**
+     * Reuses the compressed data of an entry without a digest in a previous output if its content is unchanged, and
+     * compresses the entry otherwise.
+     */
+    private static final class CompareTask implements Callable<CompressedEntry> {
+
+        private final ZipArchiveReader previous;
+
+        private final ZipArchiveEntry previousEntry;
+
+        private final CompressTask compressTask;
+
+        private final RunStatistics stats;
+
+        /**
+         * Private Constructor.
+         *
+         * @param previous the ZipArchiveReader for the previous output
+         * @param previousEntry the entry in the previous output
+         * @param compressTask the task to use if the previous entry can't be reused
+         * @param stats the RunStatistics to update
+         */
+        private CompareTask(ZipArchiveReader previous, ZipArchiveEntry previousEntry, CompressTask compressTask,
+            RunStatistics stats) {
+            this.previous = previous;
+            this.previousEntry = previousEntry;
+            this.compressTask = compressTask;
+            this.stats = stats;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CompressedEntry call() throws Exception {
+            CRC32 crc = new CRC32();
+            crc.update(compressTask.data, 0, compressTask.len);
+            if (crc.getValue() != previousEntry.getCrc() || !isUnchanged()) {
+                stats.count(RunStatistics.ENTRIES_FILTERED, 1);
+                return compressTask.call();
+            }
+
+            logger.debug("Reusing unchanged Zip Entry: " + previousEntry.getName());
+            stats.count(RunStatistics.ENTRIES_REUSED, 1);
+            ZipArchiveEntry entry = compressTask.createHeader();
+            entry.setDataDescriptor(previousEntry.isDataDescriptor());
+            entry.setCrc(previousEntry.getCrc());
+            entry.setSize(previousEntry.getSize());
+            entry.setCompressedSize(previousEntry.getCompressedSize());
+
+            return new CompressedEntry(entry, previous.getRawData(previousEntry));
+        }
+
+        /**
+         * Determine if the previous entry has the same content as the new entry data.
+         *
+         * @return true if the content is unchanged
+         * @throws IOException indicating IO error
+         */
+        private boolean isUnchanged() throws IOException {
+            InputStream is = previous.getInputStream(previousEntry);
+            try {
+                byte[] buf = new byte[BUF_SIZE * 64];
+                int pos = 0;
+                int i = is.read(buf);
+                while (i != -1) {
+                    for (int j = 0; j < i; j++) {
+                        if (pos >= compressTask.len || buf[j] != compressTask.data[pos++]) {
+                            return false;
+                        }
+                    }
+                    i = is.read(buf);
+                }
+
+                return pos == compressTask.len;
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the compressed data of a single Zip entry.
+     */
+    private static final class CopyTask implements Callable<CompressedEntry> {
+
+        private final ZipArchiveReader reader;
+
+        private final ZipArchiveEntry zipEntry;
+
+        /**
+         * Private Constructor.
+         *
+         * @param reader the ZipArchiveReader to read from
+         * @param zipEntry the entry to copy
+         */
+        private CopyTask(ZipArchiveReader reader, ZipArchiveEntry zipEntry) {
+            this.reader = reader;
+            this.zipEntry = zipEntry;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CompressedEntry call() throws Exception {
+            return new CompressedEntry(zipEntry, reader.getRawData(zipEntry));
+        }
+    }
+
 }
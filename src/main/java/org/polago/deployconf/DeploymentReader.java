@@ -29,10 +29,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.StAXStreamBuilder;
 import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.task.StreamingTask;
 import org.polago.deployconf.task.Task;
 import org.polago.deployconf.task.filter.FilterTask;
 import org.polago.deployconf.task.properties.PropertiesTask;
@@ -51,10 +58,18 @@ public class DeploymentReader {
 
     private final InputStream inputStream;
 
-    private final Map<String, Class<? extends Task>> handlerMapping;
+    private static final Map<String, Class<? extends Task>> HANDLER_MAPPING;
+
+    static {
+        HANDLER_MAPPING = new HashMap<String, Class<? extends Task>>();
+        HANDLER_MAPPING.put(PropertiesTask.DOM_ELEMENT_TASK, PropertiesTask.class);
+        HANDLER_MAPPING.put(FilterTask.DOM_ELEMENT_TASK, FilterTask.class);
+    }
 
     private final ConfigGroupManager groupManager;
 
+    private boolean streaming = true;
+
     /**
      * Public Constructor.
      *
@@ -67,10 +82,28 @@ public class DeploymentReader {
         }
         this.inputStream = inputStream;
         this.groupManager = groupManager;
+    }
 
-        handlerMapping = new HashMap<String, Class<? extends Task>>();
-        handlerMapping.put(PropertiesTask.DOM_ELEMENT_TASK, PropertiesTask.class);
-        handlerMapping.put(FilterTask.DOM_ELEMENT_TASK, FilterTask.class);
+    /**
+     * Gets the streaming property value.
+     *
+     * @return true if the input stream is parsed using StAX
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets the streaming property.
+     * <p>
+     * When streaming, the input stream is parsed using StAX and tasks implementing {@link StreamingTask} are created
+     * directly from the StAX events. Other tasks are deserialized from a JDOM Element built for the task element only.
+     * When not streaming, a JDOM Document is built for the whole input stream before deserializing the tasks.
+     *
+     * @param streaming the new property value
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
     }
 
     /**
@@ -80,6 +113,101 @@ public class DeploymentReader {
      * @throws Exception indicating failure
      */
     public DeploymentConfig parse() throws Exception {
+        if (streaming) {
+            return parseStream();
+        }
+
+        return parseDocument();
+    }
+
+    /**
+     * Parse the input stream using StAX.
+     *
+     * @return a DeploymentConfig
+     * @throws Exception indicating failure
+     */
+    private DeploymentConfig parseStream() throws Exception {
+        XMLStreamReader reader = newInputFactory().createXMLStreamReader(inputStream);
+        try {
+            DeploymentConfig result = new DeploymentConfig();
+            result.setGroupManager(groupManager);
+
+            reader.nextTag();
+            String name = reader.getAttributeValue(null, ATTR_NAME);
+            if (name != null) {
+                result.setName(name);
+            }
+
+            int event = nextElement(reader);
+            while (event == XMLStreamConstants.START_ELEMENT) {
+                Task t = newTask(reader.getLocalName(), groupManager);
+                if (t instanceof StreamingTask) {
+                    ((StreamingTask) t).deserialize(reader);
+                    reader.next();
+                } else {
+                    // The builder leaves the reader at the event following the task element
+                    Element e = (Element) new StAXStreamBuilder().fragment(reader);
+                    t.deserialize(e);
+                }
+                result.addTask(t);
+                event = currentElement(reader);
+            }
+
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create a StAX XMLInputFactory that doesn't resolve external entities.
+     *
+     * @return a XMLInputFactory instance
+     */
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory result = XMLInputFactory.newInstance();
+        result.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        result.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+        return result;
+    }
+
+    /**
+     * Advance the reader to the next START_ELEMENT or END_ELEMENT event.
+     *
+     * @param reader the XMLStreamReader to use
+     * @return the event type
+     * @throws XMLStreamException indicating parse failure
+     */
+    private static int nextElement(XMLStreamReader reader) throws XMLStreamException {
+        reader.next();
+
+        return currentElement(reader);
+    }
+
+    /**
+     * Advance the reader to the current or next START_ELEMENT or END_ELEMENT event.
+     *
+     * @param reader the XMLStreamReader to use
+     * @return the event type
+     * @throws XMLStreamException indicating parse failure
+     */
+    private static int currentElement(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            event = reader.next();
+        }
+
+        return event;
+    }
+
+    /**
+     * Parse the input stream by building a JDOM Document.
+     *
+     * @return a DeploymentConfig
+     * @throws Exception indicating failure
+     */
+    private DeploymentConfig parseDocument() throws Exception {
         SAXBuilder builder = new SAXBuilder();
         Document d = builder.build(inputStream);
         String name = d.getRootElement().getAttributeValue(ATTR_NAME);
@@ -106,15 +234,28 @@ public class DeploymentReader {
      * @throws Exception indicating failure
      */
     private Task getTaskFromElement(Element e) throws Exception {
-        Class<? extends Task> cls = handlerMapping.get(e.getName());
-        if (cls == null) {
-            throw new IllegalStateException("No Task Handler found for element: " + e.getName());
-        }
-        Task t = cls.getDeclaredConstructor(ConfigGroupManager.class).newInstance(groupManager);
+        Task t = newTask(e.getName(), groupManager);
         t.deserialize(e);
 
         return t;
     }
 
+    /**
+     * Create a new Task for an element name using the handler mapping.
+     *
+     * @param name the element name
+     * @param groupManager the Configuration Group Manager to use
+     * @return a Task instance
+     * @throws Exception indicating failure
+     */
+    static Task newTask(String name, ConfigGroupManager groupManager) throws Exception {
+        Class<? extends Task> cls = HANDLER_MAPPING.get(name);
+        if (cls == null) {
+            throw new IllegalStateException("No Task Handler found for element: " + name);
+        }
+
+        return cls.getDeclaredConstructor(ConfigGroupManager.class).newInstance(groupManager);
+    }
+
 
 }
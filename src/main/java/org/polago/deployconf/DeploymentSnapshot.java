@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.task.SnapshotInput;
+import org.polago.deployconf.task.SnapshotOutput;
+import org.polago.deployconf.task.SnapshotTask;
+import org.polago.deployconf.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary snapshot of a deployment config file.
+ * <p>
+ * A snapshot is stored beside the deployment config file and contains a format version, the checksum of the
+ * deployment config file it was created from, a table of length-prefixed Strings and a body referring to the String
+ * table. A snapshot is only used when its checksum matches the current deployment config file, which remains the
+ * source of truth.
+ */
+public class DeploymentSnapshot {
+
+    private static Logger logger = LoggerFactory.getLogger(DeploymentSnapshot.class);
+
+    private static final int MAGIC = 0x44434653;
+
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".snapshot";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int BUF_SIZE = 65536;
+
+    private final Path path;
+
+    /**
+     * Public Constructor.
+     *
+     * @param configPath the deployment config file to store the snapshot beside
+     */
+    public DeploymentSnapshot(Path configPath) {
+        path = configPath.resolveSibling(configPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Gets the path property value.
+     *
+     * @return the current value of the path property
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Compute the checksum of a deployment config file content.
+     *
+     * @param data the deployment config file content
+     * @return the checksum
+     */
+    public static byte[] checksum(byte[] data) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported", e);
+        }
+    }
+
+    /**
+     * Load the snapshot.
+     *
+     * @param checksum the checksum of the current deployment config file
+     * @param groupManager the Configuration Group Manager to use
+     * @return a DeploymentConfig or null if there is no valid snapshot for the checksum
+     * @throws Exception indicating failure
+     */
+    public DeploymentConfig load(byte[] checksum, ConfigGroupManager groupManager) throws Exception {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            logger.debug("No deployment config snapshot: {}", path);
+            return null;
+        }
+
+        try {
+            DataInputStream is = new DataInputStream(new ByteArrayInputStream(data));
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                logger.debug("Ignoring deployment config snapshot of unknown version: {}", path);
+                return null;
+            }
+            byte[] stored = readBytes(is);
+            if (!MessageDigest.isEqual(stored, checksum)) {
+                logger.debug("Ignoring outdated deployment config snapshot: {}", path);
+                return null;
+            }
+            String[] strings = new String[is.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(readBytes(is), StandardCharsets.UTF_8);
+            }
+            SnapshotInput input = new SnapshotInput(strings, readBytes(is));
+
+            DeploymentConfig result = new DeploymentConfig();
+            result.setGroupManager(groupManager);
+            result.setName(input.readString());
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Task t = DeploymentReader.newTask(input.readString(), groupManager);
+                ((SnapshotTask) t).readSnapshot(input);
+                result.addTask(t);
+            }
+            if (!input.isDone() || is.available() > 0) {
+                throw new IOException("Trailing data");
+            }
+            logger.debug("Loaded deployment config snapshot: {}", path);
+
+            return result;
+        } catch (IOException | IllegalStateException | ClassCastException e) {
+            logger.debug("Ignoring invalid deployment config snapshot: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Store a DeploymentConfig as the snapshot.
+     *
+     * @param config the DeploymentConfig to store
+     * @param checksum the checksum of the deployment config file the DeploymentConfig was loaded from
+     * @return true if the snapshot was stored or false if some task doesn't support snapshots
+     * @throws IOException indicating IO error
+     */
+    public boolean store(DeploymentConfig config, byte[] checksum) throws IOException {
+        SnapshotOutput output = new SnapshotOutput();
+        output.writeString(config.getName());
+        output.writeInt(config.getTasks().size());
+        for (Task t : config.getTasks()) {
+            if (!(t instanceof SnapshotTask)) {
+                logger.debug("Task doesn't support snapshots: {}", t);
+                return false;
+            }
+            output.writeString(t.getSerializedName());
+            ((SnapshotTask) t).writeSnapshot(output);
+        }
+
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUF_SIZE));
+            try {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                writeBytes(os, checksum);
+                List<String> strings = output.getStrings();
+                os.writeInt(strings.size());
+                for (String s : strings) {
+                    writeBytes(os, s.getBytes(StandardCharsets.UTF_8));
+                }
+                writeBytes(os, output.getBody());
+            } finally {
+                os.close();
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        logger.debug("Stored deployment config snapshot: {}", path);
+
+        return true;
+    }
+
+    /**
+     * Write a length-prefixed byte array.
+     *
+     * @param os the stream to write to
+     * @param data the bytes to write
+     * @throws IOException indicating IO error
+     */
+    private static void writeBytes(DataOutputStream os, byte[] data) throws IOException {
+        os.writeInt(data.length);
+        os.write(data);
+    }
+
+    /**
+     * Read a length-prefixed byte array.
+     *
+     * @param is the stream to read from
+     * @return the bytes read
+     * @throws IOException indicating IO error or an invalid length
+     */
+    private static byte[] readBytes(DataInputStream is) throws IOException {
+        int length = is.readInt();
+        if (length < 0 || length > is.available()) {
+            throw new IOException("Invalid snapshot length: " + length);
+        }
+        byte[] result = new byte[length];
+        is.readFully(result);
+
+        return result;
+    }
+}
@@ -24,14 +24,21 @@
 
 package org.polago.deployconf;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.output.Format;
 import org.jdom2.output.LineSeparator;
 import org.jdom2.output.XMLOutputter;
+import org.polago.deployconf.task.StreamingTask;
 import org.polago.deployconf.task.Task;
 
 /**
@@ -43,8 +50,14 @@ public class DeploymentWriter {
 
     protected static final String ATTR_NAME = "name";
 
+    private static final String ENCODING = "UTF-8";
+
+    private static final int BUF_SIZE = 65536;
+
     private final OutputStream outputStream;
 
+    private boolean streaming = true;
+
     /**
      * Public Constructor.
      *
@@ -54,6 +67,29 @@ public class DeploymentWriter {
         this.outputStream = outputStream;
     }
 
+    /**
+     * Gets the streaming property value.
+     *
+     * @return true if the DeploymentConfig is written using StAX
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets the streaming property.
+     * <p>
+     * When streaming, a DeploymentConfig where all tasks implement {@link StreamingTask} is written incrementally
+     * using StAX. Otherwise a JDOM Document is built for the whole DeploymentConfig before it is written. Both ways
+     * produce the same document and reject the same characters that aren't legal in XML with an
+     * IllegalDataException.
+     *
+     * @param streaming the new property value
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     /**
      * Write the given DeploymentConfig to persistent storage.
      *
@@ -61,6 +97,67 @@ public class DeploymentWriter {
      * @throws IOException indicating IO problems
      */
     public void persist(DeploymentConfig deploymentConfig) throws IOException {
+        if (streaming && isStreamable(deploymentConfig)) {
+            try {
+                persistStream(deploymentConfig);
+            } catch (XMLStreamException e) {
+                throw new IOException("Unable to write deployment config", e);
+            }
+        } else {
+            persistDocument(deploymentConfig);
+        }
+    }
+
+    /**
+     * Determine if all tasks of a DeploymentConfig can be written using StAX.
+     *
+     * @param deploymentConfig the DeploymentConfig to use
+     * @return true if all tasks implement StreamingTask
+     */
+    private static boolean isStreamable(DeploymentConfig deploymentConfig) {
+        for (Task task : deploymentConfig.getTasks()) {
+            if (!(task instanceof StreamingTask)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the given DeploymentConfig using StAX.
+     *
+     * @param deploymentConfig the DeploymentConfig to persist
+     * @throws IOException indicating IO problems
+     * @throws XMLStreamException indicating XML write problems
+     */
+    private void persistStream(DeploymentConfig deploymentConfig) throws IOException, XMLStreamException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, ENCODING), BUF_SIZE);
+        XMLStreamWriter writer = new PrettyXMLStreamWriter(out);
+
+        writer.writeStartDocument(ENCODING, "1.0");
+        writer.writeStartElement(DOM_ROOT);
+        String name = deploymentConfig.getName();
+        if (name != null) {
+            writer.writeAttribute(ATTR_NAME, name);
+        }
+        for (Task task : deploymentConfig.getTasks()) {
+            writer.writeStartElement(task.getSerializedName());
+            ((StreamingTask) task).serialize(writer);
+            writer.writeEndElement();
+        }
+        writer.writeEndDocument();
+        writer.close();
+        out.flush();
+    }
+
+    /**
+     * Write the given DeploymentConfig by building a JDOM Document.
+     *
+     * @param deploymentConfig the DeploymentConfig to persist
+     * @throws IOException indicating IO problems
+     */
+    private void persistDocument(DeploymentConfig deploymentConfig) throws IOException {
         Format format = Format.getPrettyFormat();
         format.setLineSeparator(LineSeparator.UNIX);
         format.setExpandEmptyElements(true);
@@ -0,0 +1,511 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jdom2.IllegalDataException;
+import org.jdom2.Verifier;
+
+/**
+ * XMLStreamWriter that formats the written document like the JDOM pretty Format used by DeploymentWriter.
+ * <p>
+ * Elements are indented using two spaces and UNIX line separators, elements containing only text are written on a
+ * single line, text and CDATA content is trimmed and empty content is left out and empty elements are written
+ * expanded. Text and attribute values are escaped like JDOM does: carriage returns in text and tabs, carriage returns
+ * and line feeds in attribute values are written as character references so they survive parsing. Characters that
+ * aren't legal in XML are rejected with an IllegalDataException, just like JDOM rejects them.
+ * <p>
+ * Only the subset of XMLStreamWriter used by {@link org.polago.deployconf.task.StreamingTask} is supported, so
+ * namespaces are not supported.
+ */
+final class PrettyXMLStreamWriter implements XMLStreamWriter {
+
+    private static final String LINE_SEPARATOR = "\n";
+
+    private static final String INDENT = "  ";
+
+    private static final String DEFAULT_VERSION = "1.0";
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private final Writer out;
+
+    // One entry for each open element, true if the element has child elements
+    private final Deque<Boolean> elements = new ArrayDeque<Boolean>();
+
+    private final Deque<String> names = new ArrayDeque<String>();
+
+    private boolean startTagOpen;
+
+    /**
+     * Package Constructor.
+     *
+     * @param out the Writer to write to. The Writer is not closed by this class.
+     */
+    PrettyXMLStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a String to the Writer.
+     *
+     * @param s the String to write
+     * @throws XMLStreamException indicating write error
+     */
+    private void write(String s) throws XMLStreamException {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * Finish the start tag of the current element, if still open.
+     *
+     * @throws XMLStreamException indicating write error
+     */
+    private void closeStartTag() throws XMLStreamException {
+        if (startTagOpen) {
+            write(">");
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * Write a line separator and the indentation of a new child element.
+     *
+     * @throws XMLStreamException indicating write error
+     */
+    private void beforeStartElement() throws XMLStreamException {
+        closeStartTag();
+        if (!elements.isEmpty()) {
+            elements.pop();
+            elements.push(Boolean.TRUE);
+        }
+        write(LINE_SEPARATOR);
+        for (int i = 0; i < elements.size(); i++) {
+            write(INDENT);
+        }
+    }
+
+    /**
+     * Remove leading and trailing XML whitespace from a String.
+     *
+     * @param text the String to trim
+     * @return the trimmed String
+     */
+    private static String trim(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        return text.substring(start, end);
+    }
+
+    /**
+     * Determine if a character is XML whitespace.
+     *
+     * @param c the character to test
+     * @return true if c is XML whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Escape a text or attribute value like JDOM does.
+     *
+     * @param text the String to escape
+     * @param attribute true if text is an attribute value
+     * @return the escaped String
+     */
+    private static String escape(String text, boolean attribute) {
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    result.append("&amp;");
+                    break;
+                case '<':
+                    result.append("&lt;");
+                    break;
+                case '>':
+                    result.append("&gt;");
+                    break;
+                case '"':
+                    result.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '\r':
+                    result.append("&#xD;");
+                    break;
+                case '\t':
+                    result.append(attribute ? "&#x9;" : "\t");
+                    break;
+                case '\n':
+                    result.append(attribute ? "&#xA;" : "\n");
+                    break;
+                default:
+                    result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Reject data that JDOM would reject.
+     *
+     * @param reason the reason returned by the JDOM Verifier or null if the data is legal
+     * @param data the verified data
+     * @param construct the kind of XML construct used in the error message
+     * @throws IllegalDataException if reason is not null
+     */
+    private static void checkData(String reason, String data, String construct) {
+        if (reason != null) {
+            throw new IllegalDataException("The data \"" + data + "\" is not legal for " + construct + ": " + reason
+                + ".");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+        beforeStartElement();
+        write("<" + localName);
+        startTagOpen = true;
+        elements.push(Boolean.FALSE);
+        names.push(localName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        writeStartElement(localName);
+        writeEndElement();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+        if (names.isEmpty()) {
+            throw new XMLStreamException("No element to end");
+        }
+        closeStartTag();
+        if (elements.pop()) {
+            write(LINE_SEPARATOR);
+            for (int i = 0; i < elements.size(); i++) {
+                write(INDENT);
+            }
+        }
+        write("</" + names.pop() + ">");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+        while (!elements.isEmpty()) {
+            writeEndElement();
+        }
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Flush the written document. The Writer is not closed.
+     *
+     * @throws XMLStreamException indicating write error
+     */
+    @Override
+    public void close() throws XMLStreamException {
+        flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws XMLStreamException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new XMLStreamException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        if (!startTagOpen) {
+            throw new XMLStreamException("Attribute written outside of a start tag: " + localName);
+        }
+        checkData(Verifier.checkCharacterData(value), value, "an attribute");
+        write(" " + localName + "=\"" + escape(value, true) + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+        throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+        checkData(Verifier.checkCommentData(data), data, "a comment");
+        closeStartTag();
+        write("<!--" + data + "-->");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        writeProcessingInstruction(target, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        checkData(Verifier.checkProcessingInstructionData(data), data, "a processing instruction");
+        closeStartTag();
+        if (data.length() > 0) {
+            write("<?" + target + " " + data + "?>");
+        } else {
+            write("<?" + target + "?>");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+        checkData(Verifier.checkCDATASection(data), data, "a CDATA section");
+        String text = trim(data);
+        if (text.length() > 0) {
+            closeStartTag();
+            write("<![CDATA[" + text + "]]>");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+        write(dtd);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+        closeStartTag();
+        write("&" + name + ";");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+        writeStartDocument(DEFAULT_ENCODING, DEFAULT_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+        writeStartDocument(DEFAULT_ENCODING, version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        write("<?xml version=\"" + version + "\" encoding=\"" + encoding + "\"?>");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+        checkData(Verifier.checkCharacterData(text), text, "character content");
+        String trimmed = trim(text);
+        if (trimmed.length() > 0) {
+            closeStartTag();
+            write(escape(trimmed, false));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        writeCharacters(new String(text, start, len));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        throw new XMLStreamException("Namespaces are not supported");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getProperty(String name) {
+        throw new IllegalArgumentException("Unsupported property: " + name);
+    }
+
+}
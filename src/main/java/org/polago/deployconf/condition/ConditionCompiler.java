@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import org.polago.deployconf.group.ConfigGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles condition texts into Condition instances.
+ * <p>
+ * Conditions use the built-in expression language unless the JavaScript language has been selected for the current
+ * thread, allowing several deployment configs to be processed at the same time using different languages.
+ */
+public final class ConditionCompiler {
+
+    private static Logger logger = LoggerFactory.getLogger(ConditionCompiler.class);
+
+    /**
+     * Condition that is always true.
+     */
+    public static final Condition TRUE = new Condition() {
+        @Override
+        public boolean evaluate(ConfigGroup group) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "TRUE";
+        }
+    };
+
+    private static final ThreadLocal<ConditionLanguage> CURRENT = new ThreadLocal<ConditionLanguage>() {
+        @Override
+        protected ConditionLanguage initialValue() {
+            return ConditionLanguage.BUILTIN;
+        }
+    };
+
+    /**
+     * Private Constructor.
+     */
+    private ConditionCompiler() {
+    }
+
+    /**
+     * Gets the language used when compiling conditions in the current thread.
+     *
+     * @return the current ConditionLanguage
+     */
+    public static ConditionLanguage getLanguage() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the language used when compiling conditions in the current thread.
+     *
+     * @param language the new ConditionLanguage
+     * @return the previous ConditionLanguage
+     */
+    public static ConditionLanguage setLanguage(ConditionLanguage language) {
+        ConditionLanguage result = CURRENT.get();
+        CURRENT.set(language);
+
+        return result;
+    }
+
+    /**
+     * Compile a condition text.
+     * <p>
+     * An empty condition is always true and a condition that can't be parsed is an {@link InvalidCondition}.
+     *
+     * @param text the condition text, may be null
+     * @return a Condition instance
+     */
+    public static Condition compile(String text) {
+        if (text == null || text.trim().length() == 0) {
+            return TRUE;
+        }
+
+        if (getLanguage() == ConditionLanguage.JAVASCRIPT) {
+            return new ScriptCondition(text, ScriptEngineProvider.getInstance());
+        }
+
+        try {
+            return new ExpressionCondition(text, ExpressionParser.parse(text));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to parse condition '" + text + "': " + e.getMessage()
+                + ". Select the JavaScript condition language for conditions written in JavaScript");
+            return new InvalidCondition(text, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import org.polago.deployconf.group.ConfigGroup;
+
+/**
+ * A node in a parsed condition expression.
+ * <p>
+ * Values are represented as String, Double, Boolean or null and are compared using the same rules as the JavaScript
+ * operators with the same name.
+ */
+abstract class Expression {
+
+    /**
+     * Evaluate this expression.
+     *
+     * @param group the ConfigGroup to use for resolving property expressions, may be null
+     * @return the expression value
+     */
+    abstract Object evaluate(ConfigGroup group);
+
+    /**
+     * Resolve a property reference.
+     *
+     * @param name the property name
+     * @param group the ConfigGroup to use, may be null
+     * @return the property value or the reference itself if the property doesn't exist
+     */
+    static String resolve(String name, ConfigGroup group) {
+        String result = null;
+        if (group != null) {
+            result = group.getProperty(name);
+        }
+        if (result == null) {
+            result = "${" + name + "}";
+        }
+
+        return result;
+    }
+
+    /**
+     * Determine if a value is considered true.
+     *
+     * @param value the value to check
+     * @return the truth value
+     */
+    static boolean isTrue(Object value) {
+        boolean result;
+        if (value == null) {
+            result = false;
+        } else if (value instanceof Boolean) {
+            result = ((Boolean) value).booleanValue();
+        } else if (value instanceof Double) {
+            double d = ((Double) value).doubleValue();
+            result = d != 0 && !Double.isNaN(d);
+        } else {
+            result = value.toString().length() > 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * Convert a value to a number.
+     *
+     * @param value the value to convert
+     * @return the numeric value, NaN if the value isn't a number
+     */
+    static double toNumber(Object value) {
+        double result;
+        if (value == null) {
+            result = 0;
+        } else if (value instanceof Double) {
+            result = ((Double) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            result = 0;
+            if (((Boolean) value).booleanValue()) {
+                result = 1;
+            }
+        } else {
+            String s = value.toString().trim();
+            if (s.length() == 0) {
+                result = 0;
+            } else {
+                try {
+                    result = Double.parseDouble(s);
+                } catch (NumberFormatException e) {
+                    result = Double.NaN;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Compare two values for equality with type conversion, like the JavaScript == operator.
+     *
+     * @param left the left value
+     * @param right the right value
+     * @return true if the values are equal
+     */
+    static boolean looseEquals(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left.getClass() == right.getClass()) {
+            return strictEquals(left, right);
+        }
+
+        return toNumber(left) == toNumber(right);
+    }
+
+    /**
+     * Compare two values for equality without type conversion, like the JavaScript === operator.
+     *
+     * @param left the left value
+     * @param right the right value
+     * @return true if the values are equal
+     */
+    static boolean strictEquals(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Double && right instanceof Double) {
+            return ((Double) left).doubleValue() == ((Double) right).doubleValue();
+        }
+
+        return left.equals(right);
+    }
+
+    /**
+     * A constant value.
+     */
+    static final class Literal extends Expression {
+
+        private final Object value;
+
+        /**
+         * Package Constructor.
+         *
+         * @param value the constant value
+         */
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        Object evaluate(ConfigGroup group) {
+            return value;
+        }
+    }
+
+    /**
+     * A text with embedded property expressions like <code>${name}</code>.
+     */
+    static final class Template extends Expression {
+
+        private final String[] texts;
+
+        private final String[] names;
+
+        /**
+         * Package Constructor.
+         *
+         * @param texts the literal text parts, one more than the number of names
+         * @param names the property names between the text parts
+         */
+        Template(String[] texts, String[] names) {
+            this.texts = texts;
+            this.names = names;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        Object evaluate(ConfigGroup group) {
+            return expand(group);
+        }
+
+        /**
+         * Determine if this template has no property expressions.
+         *
+         * @return true if the template is a constant text
+         */
+        boolean isConstant() {
+            return names.length == 0;
+        }
+
+        /**
+         * Expand the property expressions in this template.
+         *
+         * @param group the ConfigGroup to use, may be null
+         * @return the expanded text
+         */
+        String expand(ConfigGroup group) {
+            if (names.length == 0) {
+                return texts[0];
+            }
+
+            StringBuilder result = new StringBuilder(texts[0]);
+            for (int i = 0; i < names.length; i++) {
+                result.append(resolve(names[i], group));
+                result.append(texts[i + 1]);
+            }
+
+            return result.toString();
+        }
+    }
+
+    /**
+     * A property expression used as a value outside of a string.
+     * <p>
+     * The property value is interpreted as a boolean or number if possible and otherwise used as a string.
+     */
+    static final class Reference extends Expression {
+
+        private final String name;
+
+        /**
+         * Package Constructor.
+         *
+         * @param name the property name
+         */
+        Reference(String name) {
+            this.name = name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        Object evaluate(ConfigGroup group) {
+            String value = resolve(name, group).trim();
+            Object result = value;
+            if ("true".equals(value)) {
+                result = Boolean.TRUE;
+            } else if ("false".equals(value)) {
+                result = Boolean.FALSE;
+            } else if ("null".equals(value)) {
+                result = null;
+            } else if (value.length() > 0) {
+                double d = toNumber(value);
+                if (!Double.isNaN(d)) {
+                    result = Double.valueOf(d);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * A unary operator.
+     */
+    static final class Unary extends Expression {
+
+        private final String operator;
+
+        private final Expression operand;
+
+        /**
+         * Package Constructor.
+         *
+         * @param operator the operator, either ! or -
+         * @param operand the operand
+         */
+        Unary(String operator, Expression operand) {
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        Object evaluate(ConfigGroup group) {
+            Object value = operand.evaluate(group);
+            if ("!".equals(operator)) {
+                return Boolean.valueOf(!isTrue(value));
+            }
+
+            return Double.valueOf(-toNumber(value));
+        }
+    }
+
+    /**
+     * A binary operator.
+     */
+    static final class Binary extends Expression {
+
+        private final String operator;
+
+        private final Expression left;
+
+        private final Expression right;
+
+        /**
+         * Package Constructor.
+         *
+         * @param operator the operator
+         * @param left the left operand
+         * @param right the right operand
+         */
+        Binary(String operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        Object evaluate(ConfigGroup group) {
+            Object l = left.evaluate(group);
+
+            if ("&&".equals(operator)) {
+                if (!isTrue(l)) {
+                    return l;
+                }
+                return right.evaluate(group);
+            } else if ("||".equals(operator)) {
+                if (isTrue(l)) {
+                    return l;
+                }
+                return right.evaluate(group);
+            }
+
+            Object r = right.evaluate(group);
+            boolean result;
+            if ("==".equals(operator)) {
+                result = looseEquals(l, r);
+            } else if ("!=".equals(operator)) {
+                result = !looseEquals(l, r);
+            } else if ("===".equals(operator)) {
+                result = strictEquals(l, r);
+            } else if ("!==".equals(operator)) {
+                result = !strictEquals(l, r);
+            } else {
+                result = compare(l, r);
+            }
+
+            return Boolean.valueOf(result);
+        }
+
+        /**
+         * Evaluate a relational operator.
+         *
+         * @param l the left value
+         * @param r the right value
+         * @return the comparison result
+         */
+        private boolean compare(Object l, Object r) {
+            int cmp;
+            if (l instanceof String && r instanceof String) {
+                cmp = ((String) l).compareTo((String) r);
+            } else {
+                double dl = toNumber(l);
+                double dr = toNumber(r);
+                if (Double.isNaN(dl) || Double.isNaN(dr)) {
+                    return false;
+                }
+                cmp = Double.compare(dl, dr);
+                if (dl == dr) {
+                    cmp = 0;
+                }
+            }
+
+            boolean result;
+            if ("<".equals(operator)) {
+                result = cmp < 0;
+            } else if ("<=".equals(operator)) {
+                result = cmp <= 0;
+            } else if (">".equals(operator)) {
+                result = cmp > 0;
+            } else {
+                result = cmp >= 0;
+            }
+
+            return result;
+        }
+    }
+
+}
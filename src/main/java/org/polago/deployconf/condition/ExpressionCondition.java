@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import org.polago.deployconf.group.ConfigGroup;
+
+/**
+ * Condition using the built-in expression language.
+ */
+class ExpressionCondition implements Condition {
+
+    private final String text;
+
+    private final Expression expression;
+
+    /**
+     * Package Constructor.
+     *
+     * @param text the condition text
+     * @param expression the parsed condition
+     */
+    ExpressionCondition(String text, Expression expression) {
+        this.text = text;
+        this.expression = expression;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A condition that doesn't evaluate to a boolean value is considered true.
+     */
+    @Override
+    public boolean evaluate(ConfigGroup group) {
+        Object result = expression.evaluate(group);
+        if (result instanceof Boolean) {
+            return ((Boolean) result).booleanValue();
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ExpressionCondition [text=" + text + "]";
+    }
+
+}
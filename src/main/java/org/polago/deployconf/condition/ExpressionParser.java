@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for the built-in condition expression language.
+ * <p>
+ * The language supports string, number and boolean literals, property expressions like <code>${name}</code>, the
+ * comparison operators <code>== != === !== &lt; &lt;= &gt; &gt;=</code>, the boolean operators
+ * <code>&amp;&amp; || !</code>, unary minus and parentheses.
+ */
+final class ExpressionParser {
+
+    private static final String REFERENCE_START = "${";
+
+    private static final char REFERENCE_END = '}';
+
+    private static final int HEX_RADIX = 16;
+
+    private static final int UNICODE_ESCAPE_LENGTH = 4;
+
+    private static final String[] EQUALITY_OPERATORS = {"===", "!==", "==", "!="};
+
+    private static final String[] RELATIONAL_OPERATORS = {"<=", ">=", "<", ">"};
+
+    private final String text;
+
+    private int pos;
+
+    /**
+     * Private Constructor.
+     *
+     * @param text the text to parse
+     */
+    private ExpressionParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parse a condition expression.
+     *
+     * @param text the expression to parse
+     * @return the parsed Expression
+     * @throws IllegalArgumentException indicating a syntax error
+     */
+    static Expression parse(String text) {
+        ExpressionParser parser = new ExpressionParser(text);
+        Expression result = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.pos < text.length()) {
+            throw parser.syntaxError("Unexpected '" + text.charAt(parser.pos) + "'");
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a text with embedded property expressions.
+     *
+     * @param text the text to parse
+     * @return a Template Expression
+     */
+    static Expression.Template parseTemplate(String text) {
+        List<String> texts = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        int start = 0;
+        int i = text.indexOf(REFERENCE_START);
+        while (i >= 0) {
+            int end = text.indexOf(REFERENCE_END, i + REFERENCE_START.length());
+            if (end < 0) {
+                break;
+            }
+            if (end > i + REFERENCE_START.length()) {
+                texts.add(text.substring(start, i));
+                names.add(text.substring(i + REFERENCE_START.length(), end));
+                start = end + 1;
+            }
+            i = text.indexOf(REFERENCE_START, end + 1);
+        }
+        texts.add(text.substring(start));
+
+        return new Expression.Template(texts.toArray(new String[texts.size()]),
+            names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * Parse a sequence of || operators.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseOr() {
+        Expression result = parseAnd();
+        while (accept("||")) {
+            result = new Expression.Binary("||", result, parseAnd());
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a sequence of &amp;&amp; operators.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseAnd() {
+        Expression result = parseEquality();
+        while (accept("&&")) {
+            result = new Expression.Binary("&&", result, parseEquality());
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a sequence of equality operators.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseEquality() {
+        Expression result = parseRelational();
+        String op = acceptAny(EQUALITY_OPERATORS);
+        while (op != null) {
+            result = new Expression.Binary(op, result, parseRelational());
+            op = acceptAny(EQUALITY_OPERATORS);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a sequence of relational operators.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseRelational() {
+        Expression result = parseUnary();
+        String op = acceptAny(RELATIONAL_OPERATORS);
+        while (op != null) {
+            result = new Expression.Binary(op, result, parseUnary());
+            op = acceptAny(RELATIONAL_OPERATORS);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a unary operator.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseUnary() {
+        skipWhitespace();
+        if (peek('!') && !text.startsWith("!=", pos)) {
+            pos++;
+            return new Expression.Unary("!", parseUnary());
+        }
+        if (peek('-')) {
+            pos++;
+            return new Expression.Unary("-", parseUnary());
+        }
+
+        return parsePrimary();
+    }
+
+    /**
+     * Parse a literal, a property expression or a parenthesized expression.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parsePrimary() {
+        skipWhitespace();
+        if (pos >= text.length()) {
+            throw syntaxError("Unexpected end of condition");
+        }
+
+        char c = text.charAt(pos);
+        Expression result;
+        if (c == '(') {
+            pos++;
+            result = parseOr();
+            if (!accept(")")) {
+                throw syntaxError("Missing ')'");
+            }
+        } else if (c == '\'' || c == '"') {
+            result = parseString(c);
+        } else if (text.startsWith(REFERENCE_START, pos)) {
+            int end = text.indexOf(REFERENCE_END, pos);
+            if (end < 0 || end == pos + REFERENCE_START.length()) {
+                throw syntaxError("Invalid property expression");
+            }
+            result = new Expression.Reference(text.substring(pos + REFERENCE_START.length(), end));
+            pos = end + 1;
+        } else if (Character.isDigit(c) || c == '.') {
+            result = parseNumber();
+        } else if (Character.isLetter(c)) {
+            int start = pos;
+            while (pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) {
+                pos++;
+            }
+            String word = text.substring(start, pos);
+            if ("true".equals(word)) {
+                result = new Expression.Literal(Boolean.TRUE);
+            } else if ("false".equals(word)) {
+                result = new Expression.Literal(Boolean.FALSE);
+            } else if ("null".equals(word)) {
+                result = new Expression.Literal(null);
+            } else {
+                pos = start;
+                throw syntaxError("Unknown identifier '" + word + "'");
+            }
+        } else {
+            throw syntaxError("Unexpected '" + c + "'");
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse a quoted string that may contain property expressions.
+     *
+     * @param quote the quote character
+     * @return the parsed Expression
+     */
+    private Expression parseString(char quote) {
+        int start = pos;
+        pos++;
+        StringBuilder value = new StringBuilder();
+        while (pos < text.length() && text.charAt(pos) != quote) {
+            char c = text.charAt(pos++);
+            if (c == '\\' && pos < text.length()) {
+                c = text.charAt(pos++);
+                switch (c) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'u':
+                        if (pos + UNICODE_ESCAPE_LENGTH > text.length()) {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        try {
+                            String hex = text.substring(pos, pos + UNICODE_ESCAPE_LENGTH);
+                            value.append((char) Integer.parseInt(hex, HEX_RADIX));
+                        } catch (NumberFormatException e) {
+                            throw syntaxError("Invalid unicode escape");
+                        }
+                        pos += UNICODE_ESCAPE_LENGTH;
+                        break;
+                    default:
+                        value.append(c);
+                        break;
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        if (pos >= text.length()) {
+            pos = start;
+            throw syntaxError("Unterminated string");
+        }
+        pos++;
+
+        Expression.Template template = parseTemplate(value.toString());
+        if (template.isConstant()) {
+            return new Expression.Literal(template.expand(null));
+        }
+
+        return template;
+    }
+
+    /**
+     * Parse a decimal number.
+     *
+     * @return the parsed Expression
+     */
+    private Expression parseNumber() {
+        int start = pos;
+        while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+            pos++;
+        }
+        if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            pos++;
+            if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                pos++;
+            }
+            while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        try {
+            return new Expression.Literal(Double.valueOf(text.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw syntaxError("Invalid number");
+        }
+    }
+
+    /**
+     * Skip any whitespace at the current position.
+     */
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /**
+     * Determine if the current character is c.
+     *
+     * @param c the character to check
+     * @return true if the current character is c
+     */
+    private boolean peek(char c) {
+        return pos < text.length() && text.charAt(pos) == c;
+    }
+
+    /**
+     * Consume the given token if present at the current position.
+     *
+     * @param token the token to consume
+     * @return true if the token was consumed
+     */
+    private boolean accept(String token) {
+        skipWhitespace();
+        if (text.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Consume the first of the given tokens present at the current position.
+     *
+     * @param tokens the tokens to consider, longest first
+     * @return the consumed token or null
+     */
+    private String acceptAny(String[] tokens) {
+        for (String token : tokens) {
+            if (accept(token)) {
+                return token;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Create an Exception describing a syntax error at the current position.
+     *
+     * @param message the error message
+     * @return an IllegalArgumentException instance
+     */
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in condition: " + text);
+    }
+
+}
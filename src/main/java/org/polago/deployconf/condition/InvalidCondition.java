@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import org.polago.deployconf.group.ConfigGroup;
+
+/**
+ * Condition that couldn't be parsed.
+ * <p>
+ * Tasks are never configured while they use an invalid condition, so the deployment config is reported as incomplete
+ * until the condition is fixed or the language it is written in is selected.
+ */
+public final class InvalidCondition implements Condition {
+
+    private final String text;
+
+    private final String message;
+
+    /**
+     * Package Constructor.
+     *
+     * @param text the condition text
+     * @param message the reason the condition couldn't be parsed
+     */
+    InvalidCondition(String text, String message) {
+        this.text = text;
+        this.message = message;
+    }
+
+    /**
+     * Gets the text property value.
+     *
+     * @return the current value of the text property
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the message property value.
+     *
+     * @return the reason the condition couldn't be parsed
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * An invalid condition is always true when evaluated.
+     *
+     * @param group the ConfigGroup to use for resolving property expressions, may be null
+     * @return always true
+     */
+    @Override
+    public boolean evaluate(ConfigGroup group) {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "InvalidCondition [text=" + text + ", message=" + message + "]";
+    }
+}
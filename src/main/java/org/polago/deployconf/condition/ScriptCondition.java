@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import javax.script.ScriptException;
+
+import org.polago.deployconf.group.ConfigGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Condition evaluated as JavaScript by a JSR-223 ScriptEngine.
+ * <p>
+ * Property expressions are expanded before the script is evaluated by the shared {@link ScriptEngineProvider}.
+ */
+class ScriptCondition implements Condition {
+
+    private static Logger logger = LoggerFactory.getLogger(ScriptCondition.class);
+
+    private final String text;
+
+    private final Expression.Template template;
+
+    private final ScriptEngineProvider provider;
+
+    /**
+     * Package Constructor.
+     *
+     * @param text the condition text
+     * @param provider the ScriptEngineProvider to use
+     */
+    ScriptCondition(String text, ScriptEngineProvider provider) {
+        this.text = text;
+        this.provider = provider;
+        template = ExpressionParser.parseTemplate(text);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A condition that doesn't evaluate to a boolean value or fails to evaluate is considered true.
+     */
+    @Override
+    public boolean evaluate(ConfigGroup group) {
+        boolean result = true;
+        try {
+            Object resultObject = provider.eval(template.expand(group));
+            if (resultObject instanceof Boolean) {
+                result = ((Boolean) resultObject).booleanValue();
+            }
+        } catch (ScriptException e) {
+            logger.info("Unable to evaluate condition: " + text, e);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ScriptCondition [text=" + text + "]";
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * Provides a shared JavaScript ScriptEngine and caches compiled scripts.
+ * <p>
+ * The engine is created on first use and each distinct script is compiled once, provided that the engine implements
+ * {@link Compilable}. Compiled scripts are kept in a bounded cache where the least recently used script is evicted
+ * first. All evaluations are serialized since a ScriptEngine isn't required to be thread-safe.
+ */
+public final class ScriptEngineProvider {
+
+    /**
+     * The default maximum number of compiled scripts to cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static final ScriptEngineProvider INSTANCE = new ScriptEngineProvider(DEFAULT_CACHE_SIZE);
+
+    private final int cacheSize;
+
+    private final Map<String, CompiledScript> cache;
+
+    private ScriptEngine engine;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Public Constructor.
+     *
+     * @param cacheSize the maximum number of compiled scripts to cache
+     */
+    public ScriptEngineProvider(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        cache = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                return size() > ScriptEngineProvider.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the shared ScriptEngineProvider instance.
+     *
+     * @return the shared ScriptEngineProvider
+     */
+    public static ScriptEngineProvider getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the ScriptEngine to use, creating it on first use.
+     *
+     * @return a ScriptEngine instance
+     * @throws IllegalStateException indicating that no JavaScript engine is available
+     */
+    public synchronized ScriptEngine getEngine() {
+        if (engine == null) {
+            ScriptEngineManager factory = new ScriptEngineManager();
+            engine = factory.getEngineByName("JavaScript");
+            if (engine == null) {
+                throw new IllegalStateException("No JavaScript ScriptEngine available");
+            }
+        }
+
+        return engine;
+    }
+
+    /**
+     * Evaluate a script, compiling it the first time it is used.
+     *
+     * @param script the script to evaluate
+     * @return the script result
+     * @throws ScriptException indicating script failure
+     */
+    public synchronized Object eval(String script) throws ScriptException {
+        ScriptEngine e = getEngine();
+        if (!(e instanceof Compilable)) {
+            misses++;
+            return e.eval(script);
+        }
+
+        CompiledScript compiled = cache.get(script);
+        if (compiled == null) {
+            misses++;
+            compiled = ((Compilable) e).compile(script);
+            cache.put(script, compiled);
+        } else {
+            hits++;
+        }
+
+        return compiled.eval();
+    }
+
+    /**
+     * Gets the number of evaluations that used an already compiled script.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of evaluations that required the script to be compiled or interpreted.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of compiled scripts currently in the cache.
+     *
+     * @return the number of cached scripts
+     */
+    public synchronized int getCachedScripts() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the maximum number of compiled scripts to cache.
+     *
+     * @return the cache size
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Remove all compiled scripts and reset the hit and miss counters.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "ScriptEngineProvider [cacheSize=" + cacheSize + ", cachedScripts=" + cache.size() + ", hits=" + hits
+            + ", misses=" + misses + "]";
+    }
+
+}
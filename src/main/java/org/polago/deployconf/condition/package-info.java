@@ -0,0 +1,7 @@
+/**
+ * <p>
+ * Provides classes for parsing and evaluating Task conditions.
+ * </p>
+ */
+
+package org.polago.deployconf.condition;
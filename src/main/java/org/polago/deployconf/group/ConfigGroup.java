@@ -25,6 +25,7 @@
 package org.polago.deployconf.group;
 
 import java.io.IOException;
+import java.util.SortedSet;
 
 /**
  * Describes a configuration group used to share common configuration properties between multiple artifacts.
@@ -46,4 +47,15 @@ public interface ConfigGroup {
      * @throws IOException indicating IO error when storing a property
      */
     void setProperty(String name, String value) throws IOException;
+
+    /**
+     * Gets the names of all properties in this config group.
+     * <p>
+     * The default implementation returns null, which prevents outputs using this config group from being cached.
+     *
+     * @return a sorted Set of property names or null if the property names can't be listed
+     */
+    default SortedSet<String> getPropertyNames() {
+        return null;
+    }
 }
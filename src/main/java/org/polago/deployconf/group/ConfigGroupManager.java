@@ -39,4 +39,25 @@ public interface ConfigGroupManager {
      * @throws IOException indicating failure to lookup group
      */
     ConfigGroup lookupGroup(String name) throws IOException;
+
+    /**
+     * Store all modified ConfigGroups to persistent storage.
+     * <p>
+     * The default implementation does nothing, for managers that store each property when it is set.
+     *
+     * @throws IOException indicating failure to store a group
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Flush all modified ConfigGroups and release any resources held by this manager.
+     * <p>
+     * The default implementation calls {@link #flush()}.
+     *
+     * @throws IOException indicating failure to store a group
+     */
+    default void close() throws IOException {
+        flush();
+    }
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.group;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * ConfigGroup used for properties that doesn't belong to a named config group.
+ * <p>
+ * The group is always empty and properties set in the group are ignored, so using it doesn't perform any IO and the
+ * values of one artifact never affect another artifact sharing the same ConfigGroupManager. Instances are immutable.
+ */
+public class EmptyConfigGroup implements ConfigGroup {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getProperty(String name) {
+        return null;
+    }
+
+    /**
+     * Ignores the property since the group is always empty.
+     *
+     * @param name the property name
+     * @param value the property value
+     */
+    @Override
+    public void setProperty(String name, String value) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<String> getPropertyNames() {
+        return new TreeSet<String>();
+    }
+}
@@ -27,46 +27,148 @@ package org.polago.deployconf.group;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.polago.deployconf.stats.RunStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * ConfigGroup that uses the file system for storing.
+ * <p>
+ * The group file is loaded when the group is first used, and a group file that doesn't exist is remembered as an empty
+ * group, so creating a group doesn't perform any IO.
+ * <p>
+ * Modified properties are kept in memory until {@link #flush()} is called. The group file is then written to a
+ * temporary file that replaces the group file atomically.
+ * <p>
+ * Instances are thread-safe. Properties are read under a shared lock and modified under an exclusive lock, and a flush
+ * stores a consistent snapshot of the properties without blocking readers while the file is written.
+ * <p>
+ * The group file may be shared by several processes. It is read while holding a shared {@link RepositoryLock} and
+ * a flush holds an exclusive RepositoryLock while it merges the modified properties into the current group file, so
+ * properties modified by other processes are kept.
  */
 public class FileSystemConfigGroup implements ConfigGroup {
 
     private static Logger logger = LoggerFactory.getLogger(FileSystemConfigGroup.class);
 
-    private static final String SUFFIX_CONFIG_GROUP = "-config-group.properties";
+    /**
+     * Suffix of the group file name.
+     */
+    static final String SUFFIX_CONFIG_GROUP = "-config-group.properties";
 
     private final Path path;
 
-    private final Properties properties;
+    private volatile Properties properties;
+
+    private final Map<String, String> changes;
+
+    private final ReadWriteLock lock;
+
+    private final Object flushLock;
 
     /**
      * Public Constructor.
      *
      * @param name the config group name
      * @param dir the repository where to store config groups
-     * @throws IOException indicating IO error
      */
-    public FileSystemConfigGroup(String name, Path dir) throws IOException {
+    public FileSystemConfigGroup(String name, Path dir) {
         path = dir.resolve(name + SUFFIX_CONFIG_GROUP);
         logger.debug("Creating Config Group '{}' using path: {}", name, path);
-        properties = new Properties();
+        changes = new LinkedHashMap<String, String>();
+        lock = new ReentrantReadWriteLock();
+        flushLock = new Object();
+    }
 
-        if (Files.exists(path)) {
-            InputStream is = Files.newInputStream(path);
+    /**
+     * Package Constructor for a group whose group file has already been loaded.
+     *
+     * @param name the config group name
+     * @param dir the repository where to store config groups
+     * @param loaded the properties of the group file, empty if the group file doesn't exist
+     */
+    FileSystemConfigGroup(String name, Path dir, Properties loaded) {
+        this(name, dir);
+        properties = loaded;
+    }
+
+    /**
+     * Replace the properties of this group with a newer version of the group file.
+     * <p>
+     * Modifications that hasn't been flushed are kept.
+     *
+     * @param loaded the properties of the group file, empty if the group file doesn't exist
+     */
+    void reload(Properties loaded) {
+        lock.writeLock().lock();
+        try {
+            Properties result = new Properties();
+            result.putAll(loaded);
+            for (Map.Entry<String, String> e : changes.entrySet()) {
+                if (e.getValue() == null) {
+                    result.remove(e.getKey());
+                } else {
+                    result.setProperty(e.getKey(), e.getValue());
+                }
+            }
+            properties = result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Reloaded Config Group from: {}", path);
+    }
+
+    /**
+     * Load the group file unless it has already been loaded.
+     * <p>
+     * Must not be called while holding the read lock.
+     *
+     * @throws UncheckedIOException indicating IO error
+     */
+    private void ensureLoaded() {
+        if (properties != null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (properties != null) {
+                return;
+            }
+            RunStatistics stats = RunStatistics.current();
+            long start = stats.start();
             try {
-                properties.load(is);
+                if (Files.exists(path)) {
+                    RepositoryLock repositoryLock = RepositoryLock.acquireShared(path);
+                    try {
+                        properties = load();
+                    } finally {
+                        repositoryLock.close();
+                    }
+                } else {
+                    logger.debug("Config Group file doesn't exist: {}", path);
+                    properties = new Properties();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             } finally {
-                is.close();
+                stats.stopAndCount(RunStatistics.GROUP_LOAD, start);
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -75,7 +177,14 @@ public class FileSystemConfigGroup implements ConfigGroup {
      */
     @Override
     public String getProperty(String name) {
-        String value = properties.getProperty(name);
+        ensureLoaded();
+        String value;
+        lock.readLock().lock();
+        try {
+            value = properties.getProperty(name);
+        } finally {
+            lock.readLock().unlock();
+        }
         logger.debug("Returning property value for '{}': {}", name, value);
         return value;
     }
@@ -85,17 +194,166 @@ public class FileSystemConfigGroup implements ConfigGroup {
      */
     @Override
     public void setProperty(String name, String value) throws IOException {
-        if (value == null) {
-            properties.remove(name);
-        } else {
-            properties.setProperty(name, value);
-            logger.debug("Storing property '{}': {}", name, value);
-            OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE);
+        try {
+            ensureLoaded();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        lock.writeLock().lock();
+        try {
+            if (value == null) {
+                if (properties.remove(name) != null) {
+                    changes.put(name, null);
+                }
+            } else {
+                logger.debug("Storing property '{}': {}", name, value);
+                if (!value.equals(properties.setProperty(name, value))) {
+                    changes.put(name, value);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<String> getPropertyNames() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return new TreeSet<String>(properties.stringPropertyNames());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Determine if this group has modifications that hasn't been flushed.
+     *
+     * @return true if this group needs to be flushed
+     */
+    public boolean isDirty() {
+        lock.readLock().lock();
+        try {
+            return !changes.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store the modifications of this group to the file system.
+     * <p>
+     * The modifications are merged into the current group file, which may have been modified by another process, and
+     * the properties of this group are updated with the merged result.
+     *
+     * @throws IOException indicating IO error
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            Map<String, String> snapshot;
+            lock.readLock().lock();
+            try {
+                if (changes.isEmpty()) {
+                    return;
+                }
+                snapshot = new LinkedHashMap<String, String>(changes);
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Properties merged;
+            RepositoryLock repositoryLock = RepositoryLock.acquireExclusive(path);
+            try {
+                merged = load();
+                for (Map.Entry<String, String> e : snapshot.entrySet()) {
+                    if (e.getValue() == null) {
+                        merged.remove(e.getKey());
+                    } else {
+                        merged.setProperty(e.getKey(), e.getValue());
+                    }
+                }
+                store(merged);
+            } finally {
+                repositoryLock.close();
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<String, String> e : snapshot.entrySet()) {
+                    String current = changes.get(e.getKey());
+                    if (current == null ? e.getValue() == null : current.equals(e.getValue())) {
+                        changes.remove(e.getKey());
+                    }
+                }
+                for (String name : merged.stringPropertyNames()) {
+                    if (!changes.containsKey(name)) {
+                        properties.setProperty(name, merged.getProperty(name));
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Load the group file.
+     *
+     * @return the loaded properties, empty if the group file doesn't exist
+     * @throws IOException indicating IO error
+     */
+    private Properties load() throws IOException {
+        return load(path);
+    }
+
+    /**
+     * Load a group file.
+     *
+     * @param path the group file to load
+     * @return the loaded properties, empty if the group file doesn't exist
+     * @throws IOException indicating IO error
+     */
+    static Properties load(Path path) throws IOException {
+        Properties result = new Properties();
+        if (Files.exists(path)) {
+            InputStream is = Files.newInputStream(path);
             try {
-                properties.store(os, null);
+                result.load(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Store the given properties to the group file atomically.
+     *
+     * @param snapshot the properties to store
+     * @throws IOException indicating IO error
+     */
+    private void store(Properties snapshot) throws IOException {
+        logger.debug("Saving Config Group to: {}", path);
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            OutputStream os = Files.newOutputStream(tmp);
+            try {
+                snapshot.store(os, null);
             } finally {
                 os.close();
             }
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
@@ -25,19 +25,27 @@
 package org.polago.deployconf.group;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 /**
  * ConfigGroupManager that stores config groups in a file system.
+ * <p>
+ * Instances are thread-safe and may be shared by artifacts processed concurrently. Each group is created at most once,
+ * without blocking lookups of other groups, and its file is loaded on first use. The group without a name is an
+ * immutable {@link EmptyConfigGroup}.
  */
 public class FileSystemConfigGroupManager implements ConfigGroupManager {
 
     private final Path dir;
 
-    private final Map<String, ConfigGroup> groups;
+    private final ConcurrentMap<String, ConfigGroup> groups;
+
+    private final ConfigGroup emptyGroup = new EmptyConfigGroup();
 
     /**
      * Public Constructor.
@@ -54,7 +62,7 @@ public class FileSystemConfigGroupManager implements ConfigGroupManager {
         }
 
         this.dir = dir;
-        groups = new HashMap<String, ConfigGroup>();
+        groups = new ConcurrentHashMap<String, ConfigGroup>();
     }
 
     /**
@@ -62,14 +70,48 @@ public class FileSystemConfigGroupManager implements ConfigGroupManager {
      */
     @Override
     public ConfigGroup lookupGroup(String name) throws IOException {
+        if (name == null) {
+            return emptyGroup;
+        }
         ConfigGroup result = groups.get(name);
         if (result == null) {
-            result = newGroup(name);
-            groups.put(name, result);
+            try {
+                result = groups.computeIfAbsent(name, new Function<String, ConfigGroup>() {
+                    @Override
+                    public ConfigGroup apply(String k) {
+                        try {
+                            return newGroup(k);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
         }
 
         return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        for (ConfigGroup group : groups.values()) {
+            if (group instanceof FileSystemConfigGroup) {
+                ((FileSystemConfigGroup) group).flush();
+            }
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
     }
 
     /**
@@ -0,0 +1,491 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.group;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.polago.deployconf.stats.RunStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ConfigGroupManager that keeps an in-memory index of all config groups in a file system.
+ * <p>
+ * All group files in the directory are indexed when the instance is created, so looking up a group never opens a
+ * file. The index is also stored in a single index file in the directory. When the index file is loaded, only the group
+ * files whose modification time or size differ from the index are read again. A group file modified too close to the
+ * time the index file was written is read again as well, since it may have been changed again within the same
+ * timestamp tick without changing its size. The group files remain the source of truth and modified groups are
+ * stored in their group files, just like {@link FileSystemConfigGroupManager} does.
+ * <p>
+ * The index is refreshed by {@link #refresh()}, after each {@link #flush()} and, when {@link #watch()} has been
+ * called, whenever a lookup finds that a group file has been changed by another process.
+ */
+public class IndexedConfigGroupManager extends FileSystemConfigGroupManager {
+
+    private static Logger logger = LoggerFactory.getLogger(IndexedConfigGroupManager.class);
+
+    /**
+     * Name of the index file.
+     */
+    public static final String INDEX_FILE = "config-group.index";
+
+    private static final int MAGIC = 0x44434749;
+
+    private static final int VERSION = 1;
+
+    private static final int BUF_SIZE = 65536;
+
+    /**
+     * The time in milliseconds a group file must have been modified before the index file was written for the indexed
+     * modification time to be trusted. Covers the coarsest timestamp granularity of common file systems.
+     */
+    private static final long RACY_INTERVAL = 2000;
+
+    /**
+     * An indexed group file.
+     */
+    private static final class IndexEntry {
+
+        private final long modified;
+
+        private final long size;
+
+        private final Properties properties;
+
+        /**
+         * Private Constructor.
+         *
+         * @param modified the group file modification time in milliseconds
+         * @param size the group file size
+         * @param properties the group file properties
+         */
+        private IndexEntry(long modified, long size, Properties properties) {
+            this.modified = modified;
+            this.size = size;
+            this.properties = properties;
+        }
+    }
+
+    private final Path dir;
+
+    private final Path indexFile;
+
+    private final Map<String, IndexEntry> index;
+
+    private final ConcurrentMap<String, FileSystemConfigGroup> created;
+
+    private final Object refreshLock;
+
+    private volatile WatchService watcher;
+
+    private long indexModified;
+
+    /**
+     * Public Constructor.
+     *
+     * @param dir the directory use for storing config groups.
+     * @throws IOException indicating IO error
+     */
+    public IndexedConfigGroupManager(Path dir) throws IOException {
+        super(dir);
+        this.dir = dir;
+        indexFile = dir.resolve(INDEX_FILE);
+        index = new ConcurrentHashMap<String, IndexEntry>();
+        created = new ConcurrentHashMap<String, FileSystemConfigGroup>();
+        refreshLock = new Object();
+        indexModified = Long.MIN_VALUE;
+
+        readIndex();
+        refresh();
+    }
+
+    /**
+     * Gets the names of all indexed config groups.
+     *
+     * @return a sorted Set of group names
+     */
+    public SortedSet<String> getGroupNames() {
+        return new TreeSet<String>(index.keySet());
+    }
+
+    /**
+     * Update the index with the group files that have been created, modified or deleted since the last refresh.
+     * <p>
+     * Groups that have already been looked up are updated with the new properties, keeping any modifications that
+     * hasn't been flushed.
+     *
+     * @throws IOException indicating IO error
+     */
+    public void refresh() throws IOException {
+        synchronized (refreshLock) {
+            if (scan()) {
+                writeIndex();
+            }
+        }
+    }
+
+    /**
+     * Watch the directory for group files changed by other processes and refresh the index before a lookup when
+     * needed.
+     *
+     * @throws IOException indicating IO error
+     */
+    public synchronized void watch() throws IOException {
+        if (watcher == null) {
+            WatchService w = dir.getFileSystem().newWatchService();
+            dir.register(w, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            watcher = w;
+            logger.debug("Watching config groups in: {}", dir);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ConfigGroup lookupGroup(String name) throws IOException {
+        WatchService w = watcher;
+        if (w != null && isModified(w)) {
+            refresh();
+        }
+
+        return super.lookupGroup(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        super.flush();
+        refresh();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        WatchService w = watcher;
+        if (w != null) {
+            watcher = null;
+            w.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ConfigGroup newGroup(String name) throws IOException {
+        synchronized (refreshLock) {
+            Properties properties = new Properties();
+            IndexEntry e = index.get(name);
+            if (e != null) {
+                properties.putAll(e.properties);
+            }
+            FileSystemConfigGroup result = new FileSystemConfigGroup(name, dir, properties);
+            created.put(name, result);
+
+            return result;
+        }
+    }
+
+    /**
+     * Determine if any group file has been changed according to the watcher.
+     *
+     * @param w the WatchService to use
+     * @return true if any group file has been changed
+     */
+    private static boolean isModified(WatchService w) {
+        boolean result = false;
+        WatchKey key = w.poll();
+        while (key != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object context = event.context();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || context != null
+                    && context.toString().endsWith(FileSystemConfigGroup.SUFFIX_CONFIG_GROUP)) {
+                    result = true;
+                }
+            }
+            key.reset();
+            key = w.poll();
+        }
+
+        return result;
+    }
+
+    /**
+     * Update the index from the group files in the directory.
+     * <p>
+     * Must be called while holding the refresh lock.
+     *
+     * @return true if the index was modified
+     * @throws IOException indicating IO error
+     */
+    private boolean scan() throws IOException {
+        boolean result = false;
+        Set<String> found = new HashSet<String>();
+        String suffix = FileSystemConfigGroup.SUFFIX_CONFIG_GROUP;
+
+        DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + suffix);
+        try {
+            for (Path file : files) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - suffix.length());
+                found.add(name);
+
+                long modified = attributes.lastModifiedTime().toMillis();
+                IndexEntry e = index.get(name);
+                if (e == null || e.modified != modified || e.size != attributes.size() || isRacy(e)) {
+                    update(name, new IndexEntry(modified, attributes.size(), loadGroupFile(file)));
+                    result = true;
+                }
+            }
+        } finally {
+            files.close();
+        }
+
+        for (String name : index.keySet()) {
+            if (!found.contains(name)) {
+                logger.debug("Config Group file has been removed: {}", name);
+                update(name, null);
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Determine if an index entry can't be trusted since its group file was modified too close to the time the index
+     * file was written.
+     * <p>
+     * Must be called while holding the refresh lock.
+     *
+     * @param entry the IndexEntry to check
+     * @return true if the group file must be read again
+     */
+    private boolean isRacy(IndexEntry entry) {
+        boolean result = entry.modified + RACY_INTERVAL > indexModified;
+        if (result) {
+            logger.debug("Config Group file modified too close to the index to be trusted: {}", entry.modified);
+        }
+
+        return result;
+    }
+
+    /**
+     * Update the index entry of a group and the group itself if it has been looked up.
+     *
+     * @param name the group name
+     * @param entry the new IndexEntry or null if the group file has been removed
+     */
+    private void update(String name, IndexEntry entry) {
+        Properties properties;
+        if (entry == null) {
+            index.remove(name);
+            properties = new Properties();
+        } else {
+            index.put(name, entry);
+            properties = entry.properties;
+        }
+
+        FileSystemConfigGroup group = created.get(name);
+        if (group != null) {
+            group.reload(properties);
+        }
+    }
+
+    /**
+     * Load a group file while holding a shared RepositoryLock.
+     *
+     * @param file the group file to load
+     * @return the loaded properties
+     * @throws IOException indicating IO error
+     */
+    private static Properties loadGroupFile(Path file) throws IOException {
+        RunStatistics stats = RunStatistics.current();
+        long start = stats.start();
+        RepositoryLock lock = RepositoryLock.acquireShared(file);
+        try {
+            logger.debug("Indexing Config Group file: {}", file);
+            return FileSystemConfigGroup.load(file);
+        } finally {
+            lock.close();
+            stats.stopAndCount(RunStatistics.GROUP_LOAD, start);
+        }
+    }
+
+    /**
+     * Read the index file into the index, if it exists and is valid.
+     */
+    private void readIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        try {
+            indexModified = Files.getLastModifiedTime(indexFile).toMillis();
+            DataInputStream is =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), BUF_SIZE));
+            try {
+                if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                    logger.debug("Ignoring config group index of unknown version: {}", indexFile);
+                    return;
+                }
+                int groups = is.readInt();
+                for (int i = 0; i < groups; i++) {
+                    String name = readString(is);
+                    long modified = is.readLong();
+                    long size = is.readLong();
+                    Properties properties = new Properties();
+                    int count = is.readInt();
+                    for (int j = 0; j < count; j++) {
+                        String key = readString(is);
+                        properties.setProperty(key, readString(is));
+                    }
+                    index.put(name, new IndexEntry(modified, size, properties));
+                }
+            } finally {
+                is.close();
+            }
+            logger.debug("Loaded config group index with {} groups: {}", index.size(), indexFile);
+        } catch (IOException e) {
+            logger.debug("Ignoring invalid config group index: " + indexFile, e);
+            index.clear();
+            indexModified = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Write the index to the index file atomically.
+     * <p>
+     * Must be called while holding the refresh lock.
+     *
+     * @throws IOException indicating IO error
+     */
+    private void writeIndex() throws IOException {
+        Path tmp = Files.createTempFile(dir, INDEX_FILE, ".tmp");
+        try {
+            DataOutputStream os =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUF_SIZE));
+            try {
+                os.writeInt(MAGIC);
+                os.writeInt(VERSION);
+                os.writeInt(index.size());
+                for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+                    writeString(os, e.getKey());
+                    os.writeLong(e.getValue().modified);
+                    os.writeLong(e.getValue().size);
+                    Set<String> names = e.getValue().properties.stringPropertyNames();
+                    os.writeInt(names.size());
+                    for (String name : names) {
+                        writeString(os, name);
+                        writeString(os, e.getValue().properties.getProperty(name));
+                    }
+                }
+            } finally {
+                os.close();
+            }
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            indexModified = Files.getLastModifiedTime(indexFile).toMillis();
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        logger.debug("Saved config group index with {} groups: {}", index.size(), indexFile);
+    }
+
+    /**
+     * Write a length-prefixed UTF-8 String.
+     *
+     * @param os the stream to write to
+     * @param s the String to write
+     * @throws IOException indicating IO error
+     */
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(data.length);
+        os.write(data);
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 String.
+     *
+     * @param is the stream to read from
+     * @return the String read
+     * @throws IOException indicating IO error or an invalid length
+     */
+    private static String readString(DataInputStream is) throws IOException {
+        int length = is.readInt();
+        if (length < 0 || length > BUF_SIZE * 16) {
+            throw new IOException("Invalid config group index string length: " + length);
+        }
+        byte[] data = new byte[length];
+        is.readFully(data);
+
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
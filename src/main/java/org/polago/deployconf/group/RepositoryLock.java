@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.group;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock protecting a file in a repository shared by multiple processes.
+ * <p>
+ * The lock is held on a separate lock file next to the protected file, allowing the protected file to be replaced
+ * while the lock is held. Shared locks may be held by several processes at once while an exclusive lock excludes all
+ * other processes. Since a FileChannel lock is held on behalf of the whole JVM, threads in the same JVM are serialized
+ * using an additional in-process lock. Locks are not reentrant. A shared lock for a file in a location where the lock
+ * file can't be created is granted without locking the file.
+ */
+public final class RepositoryLock implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(RepositoryLock.class);
+
+    private static final String SUFFIX_LOCK = ".lock";
+
+    private static final ConcurrentMap<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<Path, ReentrantLock>();
+
+    private final ReentrantLock localLock;
+
+    private final FileChannel channel;
+
+    private final FileLock fileLock;
+
+    /**
+     * Private Constructor.
+     *
+     * @param localLock the in-process lock
+     * @param channel the lock file channel, null if the lock file couldn't be created
+     * @param fileLock the lock file lock, null if the lock file couldn't be created
+     */
+    private RepositoryLock(ReentrantLock localLock, FileChannel channel, FileLock fileLock) {
+        this.localLock = localLock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }
+
+    /**
+     * Acquire a shared lock for reading a file, waiting until the lock is available.
+     *
+     * @param path the file to protect
+     * @return a RepositoryLock that must be closed to release the lock
+     * @throws IOException indicating IO error
+     */
+    public static RepositoryLock acquireShared(Path path) throws IOException {
+        return acquire(path, true);
+    }
+
+    /**
+     * Acquire an exclusive lock for writing a file, waiting until the lock is available.
+     *
+     * @param path the file to protect
+     * @return a RepositoryLock that must be closed to release the lock
+     * @throws IOException indicating IO error
+     */
+    public static RepositoryLock acquireExclusive(Path path) throws IOException {
+        return acquire(path, false);
+    }
+
+    /**
+     * Gets the lock file used for protecting a file.
+     *
+     * @param path the file to protect
+     * @return the lock file Path
+     */
+    public static Path getLockFile(Path path) {
+        Path p = path.toAbsolutePath().normalize();
+        return p.resolveSibling(p.getFileName() + SUFFIX_LOCK);
+    }
+
+    /**
+     * Acquire a lock.
+     *
+     * @param path the file to protect
+     * @param shared true if a shared lock should be acquired
+     * @return a RepositoryLock
+     * @throws IOException indicating IO error
+     */
+    private static RepositoryLock acquire(Path path, boolean shared) throws IOException {
+        Path lockFile = getLockFile(path);
+        ReentrantLock localLock = LOCAL_LOCKS.computeIfAbsent(lockFile, new Function<Path, ReentrantLock>() {
+            @Override
+            public ReentrantLock apply(Path p) {
+                return new ReentrantLock();
+            }
+        });
+
+        localLock.lock();
+        try {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            } catch (AccessDeniedException e) {
+                if (!shared) {
+                    throw e;
+                }
+                // Reading from a read-only location is still allowed without locking
+                logger.debug("Unable to create lock file, reading without lock: {}", lockFile);
+                return new RepositoryLock(localLock, null, null);
+            }
+            try {
+                logger.debug("Acquiring {} lock: {}", shared ? "shared" : "exclusive", lockFile);
+                FileLock fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                return new RepositoryLock(localLock, channel, fileLock);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            localLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Release this lock.
+     *
+     * @throws IOException indicating IO error
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel != null) {
+                try {
+                    fileLock.release();
+                } finally {
+                    channel.close();
+                }
+            }
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.stats;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-phase timings and counters for one or more runs.
+ * <p>
+ * Instrumented code uses {@link #current()} to find the RunStatistics for the current thread. When no RunStatistics is
+ * active, a disabled instance that ignores all updates is returned so instrumentation is cheap when statistics aren't
+ * requested. The same RunStatistics may be active in several threads at once, for example when processing artifacts
+ * in batch mode, and all updates are thread-safe.
+ */
+public final class RunStatistics {
+
+    /**
+     * Time spent extracting and parsing the deployment template.
+     */
+    public static final String TEMPLATE = "template";
+
+    /**
+     * Time spent parsing the deployment config from the repository.
+     */
+    public static final String PARSE = "parse";
+
+    /**
+     * Time spent merging the deployment template into the deployment config.
+     */
+    public static final String MERGE = "merge";
+
+    /**
+     * Time spent saving the deployment config to the repository.
+     */
+    public static final String SAVE = "save";
+
+    /**
+     * Time spent applying the deployment config to the input.
+     */
+    public static final String APPLY = "apply";
+
+    /**
+     * Time spent and number of config groups loaded.
+     */
+    public static final String GROUP_LOAD = "groupLoad";
+
+    /**
+     * Time spent and number of conditions evaluated.
+     */
+    public static final String CONDITIONS = "conditions";
+
+    /**
+     * Total time spent and number of artifacts processed.
+     */
+    public static final String ARTIFACTS = "artifacts";
+
+    /**
+     * Total size in bytes of the input files. Entries are read using random access and copied entries are never
+     * inflated, so this is not the number of bytes actually read.
+     */
+    public static final String INPUT_SIZE = "inputSize";
+
+    /**
+     * Number of bytes written to output files.
+     */
+    public static final String BYTES_WRITTEN = "bytesWritten";
+
+    /**
+     * Number of entries copied without applying any tasks.
+     */
+    public static final String ENTRIES_COPIED = "entriesCopied";
+
+    /**
+     * Number of entries that tasks were applied to and that were compressed again.
+     */
+    public static final String ENTRIES_FILTERED = "entriesFiltered";
+
+    /**
+     * Number of entries with tasks that reused the data of a previous output instead of being compressed again. The
+     * sum of copied, filtered and reused entries is the number of entries written.
+     */
+    public static final String ENTRIES_REUSED = "entriesReused";
+
+    private static final RunStatistics DISABLED = new RunStatistics(false);
+
+    private static final ThreadLocal<RunStatistics> CURRENT = new ThreadLocal<RunStatistics>();
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final boolean enabled;
+
+    private final ConcurrentMap<String, LongAdder> times = new ConcurrentHashMap<String, LongAdder>();
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    private final ConcurrentMap<String, LongAdder> taskTimes = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Public Constructor.
+     */
+    public RunStatistics() {
+        this(true);
+    }
+
+    /**
+     * Private Constructor.
+     *
+     * @param enabled true if updates should be recorded
+     */
+    private RunStatistics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the RunStatistics active in the current thread.
+     *
+     * @return the active RunStatistics or a disabled RunStatistics if none is active
+     */
+    public static RunStatistics current() {
+        RunStatistics result = CURRENT.get();
+        if (result == null) {
+            result = DISABLED;
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the RunStatistics active in the current thread.
+     *
+     * @param statistics the RunStatistics to activate or null to deactivate
+     * @return the previously active RunStatistics or null if none was active
+     */
+    public static RunStatistics setCurrent(RunStatistics statistics) {
+        RunStatistics result = CURRENT.get();
+        if (statistics == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(statistics);
+        }
+
+        return result;
+    }
+
+    /**
+     * Determine if this RunStatistics records updates.
+     *
+     * @return true if updates are recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets a timestamp to use for measuring elapsed time.
+     *
+     * @return the current timestamp or zero if this RunStatistics is disabled
+     */
+    public long start() {
+        if (!enabled) {
+            return 0;
+        }
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Add the time elapsed since the given timestamp to a timing.
+     *
+     * @param name the timing name
+     * @param start the timestamp returned by {@link #start()}
+     */
+    public void stop(String name, long start) {
+        if (enabled) {
+            add(times, name, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Add the time elapsed since the given timestamp to a timing and increment the counter with the same name.
+     *
+     * @param name the timing and counter name
+     * @param start the timestamp returned by {@link #start()}
+     */
+    public void stopAndCount(String name, long start) {
+        if (enabled) {
+            add(times, name, System.nanoTime() - start);
+            add(counters, name, 1);
+        }
+    }
+
+    /**
+     * Add the time elapsed since the given timestamp to the apply time of a task.
+     *
+     * @param task the task description
+     * @param start the timestamp returned by {@link #start()}
+     */
+    public void stopTask(String task, long start) {
+        if (enabled) {
+            add(taskTimes, task, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Add a value to a counter.
+     *
+     * @param name the counter name
+     * @param value the value to add
+     */
+    public void count(String name, long value) {
+        if (enabled) {
+            add(counters, name, value);
+        }
+    }
+
+    /**
+     * Add a value to a named LongAdder in a Map.
+     *
+     * @param map the Map to use
+     * @param name the name to use
+     * @param value the value to add
+     */
+    private static void add(ConcurrentMap<String, LongAdder> map, String name, long value) {
+        LongAdder adder = map.get(name);
+        if (adder == null) {
+            LongAdder newAdder = new LongAdder();
+            adder = map.putIfAbsent(name, newAdder);
+            if (adder == null) {
+                adder = newAdder;
+            }
+        }
+        adder.add(value);
+    }
+
+    /**
+     * Gets the recorded timings.
+     *
+     * @return a Map with the timing name as key and the time in nanoseconds as value
+     */
+    public SortedMap<String, Long> getTimes() {
+        return snapshot(times);
+    }
+
+    /**
+     * Gets the recorded counters.
+     *
+     * @return a Map with the counter name as key and the counter value as value
+     */
+    public SortedMap<String, Long> getCounters() {
+        return snapshot(counters);
+    }
+
+    /**
+     * Gets the recorded task apply times.
+     *
+     * @return a Map with the task description as key and the time in nanoseconds as value
+     */
+    public SortedMap<String, Long> getTaskTimes() {
+        return snapshot(taskTimes);
+    }
+
+    /**
+     * Create a sorted snapshot of a Map of LongAdders.
+     *
+     * @param map the Map to use
+     * @return a sorted Map with the current values
+     */
+    private static SortedMap<String, Long> snapshot(Map<String, LongAdder> map) {
+        SortedMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : map.entrySet()) {
+            result.put(e.getKey(), e.getValue().sum());
+        }
+
+        return result;
+    }
+
+    /**
+     * Create a human readable summary of the recorded statistics.
+     *
+     * @return a multi-line summary
+     */
+    public String toSummary() {
+        StringBuilder result = new StringBuilder();
+        result.append("Timings (ms):\n");
+        for (Map.Entry<String, Long> e : getTimes().entrySet()) {
+            result.append(String.format(Locale.ROOT, "  %-20s %12.3f%n", e.getKey(), toMillis(e.getValue())));
+        }
+        result.append("Counters:\n");
+        for (Map.Entry<String, Long> e : getCounters().entrySet()) {
+            result.append(String.format(Locale.ROOT, "  %-20s %12d%n", e.getKey(), e.getValue()));
+        }
+        SortedMap<String, Long> tasks = getTaskTimes();
+        if (!tasks.isEmpty()) {
+            result.append("Task apply times (ms):\n");
+            for (Map.Entry<String, Long> e : tasks.entrySet()) {
+                result.append(String.format(Locale.ROOT, "  %12.3f %s%n", toMillis(e.getValue()), e.getKey()));
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Create a JSON document with the recorded statistics.
+     * <p>
+     * The document has the objects "times", "counters" and "tasks" where all times are in milliseconds.
+     *
+     * @return a JSON document
+     */
+    public String toJson() {
+        StringBuilder result = new StringBuilder();
+        result.append("{\n  \"times\": ");
+        appendJson(result, getTimes(), true);
+        result.append(",\n  \"counters\": ");
+        appendJson(result, getCounters(), false);
+        result.append(",\n  \"tasks\": ");
+        appendJson(result, getTaskTimes(), true);
+        result.append("\n}\n");
+
+        return result.toString();
+    }
+
+    /**
+     * Append a JSON object to a StringBuilder.
+     *
+     * @param sb the StringBuilder to use
+     * @param map the values to append
+     * @param nanos true if the values are nanoseconds that should be converted to milliseconds
+     */
+    private static void appendJson(StringBuilder sb, SortedMap<String, Long> map, boolean nanos) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> e : map.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("\n    ");
+            appendJsonString(sb, e.getKey());
+            sb.append(": ");
+            if (nanos) {
+                sb.append(String.format(Locale.ROOT, "%.3f", toMillis(e.getValue())));
+            } else {
+                sb.append(e.getValue());
+            }
+        }
+        if (!first) {
+            sb.append("\n  ");
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Append a quoted and escaped JSON String to a StringBuilder.
+     *
+     * @param sb the StringBuilder to use
+     * @param value the String to append
+     */
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds.
+     *
+     * @param nanos the value to convert
+     * @return the value in milliseconds
+     */
+    private static double toMillis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "RunStatistics [times=" + getTimes() + ", counters=" + getCounters() + "]";
+    }
+
+}
@@ -0,0 +1,7 @@
+/**
+ * <p>
+ * Provides classes for collecting timings and metrics when running deployconf.
+ * </p>
+ */
+
+package org.polago.deployconf.stats;
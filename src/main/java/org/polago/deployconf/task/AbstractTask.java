@@ -25,28 +25,30 @@
 package org.polago.deployconf.task;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom2.CDATA;
 import org.jdom2.Element;
 import org.jdom2.Text;
+import org.polago.deployconf.condition.Condition;
+import org.polago.deployconf.condition.ConditionCompiler;
 import org.polago.deployconf.group.ConfigGroup;
 import org.polago.deployconf.group.ConfigGroupManager;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.polago.deployconf.stats.RunStatistics;
 
 /**
  * Common implementation of a deployment Task.
  */
 public abstract class AbstractTask implements Task {
 
-    private static Logger logger = LoggerFactory.getLogger(AbstractTask.class);
-
     // Matches a property expression like ${propertyName}
     private static final Pattern EXPANSION_PATTERN = Pattern.compile("(\\$\\{([^}]+?)\\})");
 
@@ -66,8 +68,6 @@ public abstract class AbstractTask implements Task {
 
     private String path;
 
-    private final ScriptEngine scriptEngine;
-
     private final ConfigGroupManager groupManager;
 
     /**
@@ -79,9 +79,6 @@ public abstract class AbstractTask implements Task {
         super();
 
         this.groupManager = groupManager;
-
-        ScriptEngineManager factory = new ScriptEngineManager();
-        scriptEngine = factory.getEngineByName("JavaScript");
     }
 
     /**
@@ -117,13 +114,84 @@ public abstract class AbstractTask implements Task {
      */
     @Override
     public void deserialize(Element root) throws IOException {
-        String attribute = root.getAttributeValue(DOM_ATTRIBUTE_PATH);
+        deserializePath(root.getAttributeValue(DOM_ATTRIBUTE_PATH));
+    }
+
+    /**
+     * Sets the path from the required path attribute.
+     *
+     * @param attribute the path attribute value or null if missing
+     */
+    protected void deserializePath(String attribute) {
         if (attribute == null) {
             throw new IllegalStateException("path attribute is required");
         }
         setPath(attribute);
     }
 
+    /**
+     * Gets the trimmed text of each child of a JDOM Element.
+     *
+     * @param node the JDOM Element to use
+     * @return a Map with the child element name as key and the trimmed text of the first child with that name as
+     *         value
+     */
+    protected static Map<String, String> getChildTexts(Element node) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Element e : node.getChildren()) {
+            if (!result.containsKey(e.getName())) {
+                result.put(e.getName(), e.getTextTrim());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the trimmed text of each child of the current element from a StAX XMLStreamReader.
+     * <p>
+     * The reader must be positioned at a START_ELEMENT event and is positioned at the matching END_ELEMENT event when
+     * returning.
+     *
+     * @param reader the XMLStreamReader to use
+     * @return a Map with the child element name as key and the trimmed text of the first child with that name as
+     *         value
+     * @throws XMLStreamException indicating XML parse error
+     */
+    protected static Map<String, String> readChildTexts(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> result = new HashMap<String, String>();
+        int event = reader.next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String text = reader.getElementText().trim();
+                if (!result.containsKey(name)) {
+                    result.put(name, text);
+                }
+            }
+            event = reader.next();
+        }
+
+        return result;
+    }
+
+    /**
+     * Advances a StAX XMLStreamReader to the next child element of the current element.
+     *
+     * @param reader the XMLStreamReader to use
+     * @return true if the reader is positioned at the START_ELEMENT event of a child element or false if the reader is
+     *         positioned at the END_ELEMENT event of the current element
+     * @throws XMLStreamException indicating XML parse error
+     */
+    protected static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.next();
+        while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            event = reader.next();
+        }
+
+        return event == XMLStreamConstants.START_ELEMENT;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -162,23 +230,32 @@ public abstract class AbstractTask implements Task {
 
     /**
      * Evaluate the task condition.
+     * <p>
+     * The condition is parsed on every call so callers evaluating the same condition repeatedly should use
+     * {@link #evaluateCondition(Condition, ConfigGroup)} with a parsed condition instead.
      *
      * @param text the condition to evaluate
      * @param group the ConfigGroup to use as source for expanding property expressions before evaluation
      * @return the evaluation result
      */
     public boolean evaluateCondition(String text, ConfigGroup group) {
+        return evaluateCondition(ConditionCompiler.compile(text), group);
+    }
+
+    /**
+     * Evaluate a parsed task condition.
+     *
+     * @param condition the condition to evaluate or null indicating no condition
+     * @param group the ConfigGroup to use as source for expanding property expressions
+     * @return the evaluation result
+     */
+    public boolean evaluateCondition(Condition condition, ConfigGroup group) {
         boolean result = true;
-        try {
-            if (text != null) {
-                Object resultObject = scriptEngine.eval(expandPropertyExpression(text, group));
-                if (resultObject instanceof Boolean) {
-                    Boolean boolResult = (Boolean) resultObject;
-                    return boolResult.booleanValue();
-                }
-            }
-        } catch (ScriptException e) {
-            logger.info("Unable to evaluate condition: " + text, e);
+        if (condition != null) {
+            RunStatistics stats = RunStatistics.current();
+            long start = stats.start();
+            result = condition.evaluate(group);
+            stats.stopAndCount(RunStatistics.CONDITIONS, start);
         }
 
         return result;
@@ -228,6 +305,40 @@ public abstract class AbstractTask implements Task {
         return result;
     }
 
+    /**
+     * Write an element with the given name and possibly text to a StAX XMLStreamWriter.
+     *
+     * @param writer the XMLStreamWriter to use
+     * @param name the element name
+     * @param text the element text or null
+     * @throws XMLStreamException indicating XML write error
+     */
+    protected static void writeTextElement(XMLStreamWriter writer, String name, String text)
+        throws XMLStreamException {
+        writer.writeStartElement(name);
+        if (text != null) {
+            writer.writeCharacters(text);
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write an element with the given name and possibly CDATA text to a StAX XMLStreamWriter.
+     *
+     * @param writer the XMLStreamWriter to use
+     * @param name the element name
+     * @param text the element text or null
+     * @throws XMLStreamException indicating XML write error
+     */
+    protected static void writeCDATAElement(XMLStreamWriter writer, String name, String text)
+        throws XMLStreamException {
+        writer.writeStartElement(name);
+        if (text != null) {
+            writer.writeCData(text);
+        }
+        writer.writeEndElement();
+    }
+
     /**
      * {@inheritDoc}
      */
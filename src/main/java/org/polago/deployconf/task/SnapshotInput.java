@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the body of a binary deployment config snapshot written by {@link SnapshotOutput}.
+ */
+public class SnapshotInput {
+
+    private final String[] strings;
+
+    private final DataInputStream body;
+
+    /**
+     * Public Constructor.
+     *
+     * @param strings the string table
+     * @param body the body bytes
+     */
+    public SnapshotInput(String[] strings, byte[] body) {
+        this.strings = strings;
+        this.body = new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Read an int value.
+     *
+     * @return the value
+     * @throws IOException indicating IO Error or the end of the body
+     */
+    public int readInt() throws IOException {
+        return body.readInt();
+    }
+
+    /**
+     * Read a String value.
+     *
+     * @return the value, may be null
+     * @throws IOException indicating IO Error or an invalid string index
+     */
+    public String readString() throws IOException {
+        int index = body.readInt();
+        if (index == -1) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid snapshot string index: " + index);
+        }
+
+        return strings[index];
+    }
+
+    /**
+     * Determine if the whole body has been read.
+     *
+     * @return true if there is nothing more to read
+     * @throws IOException indicating IO Error
+     */
+    public boolean isDone() throws IOException {
+        return body.available() == 0;
+    }
+}
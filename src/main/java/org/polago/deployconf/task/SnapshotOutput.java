@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the body of a binary deployment config snapshot.
+ * <p>
+ * Each distinct String is stored once in a string table and referred to by its index in the body.
+ */
+public class SnapshotOutput {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream body = new DataOutputStream(bytes);
+
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Write an int value.
+     *
+     * @param value the value to write
+     * @throws IOException indicating IO Error
+     */
+    public void writeInt(int value) throws IOException {
+        body.writeInt(value);
+    }
+
+    /**
+     * Write a String value.
+     *
+     * @param value the value to write, may be null
+     * @throws IOException indicating IO Error
+     */
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            body.writeInt(-1);
+            return;
+        }
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            indexes.put(value, index);
+        }
+        body.writeInt(index);
+    }
+
+    /**
+     * Gets the string table.
+     *
+     * @return the distinct Strings written so far, in index order
+     */
+    public List<String> getStrings() {
+        return strings;
+    }
+
+    /**
+     * Gets the body.
+     *
+     * @return the bytes written so far
+     */
+    public byte[] getBody() {
+        return bytes.toByteArray();
+    }
+}
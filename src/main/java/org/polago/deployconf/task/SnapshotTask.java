@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task;
+
+import java.io.IOException;
+
+/**
+ * A deployment Task that can be loaded from and saved to a binary deployment config snapshot.
+ */
+public interface SnapshotTask extends Task {
+
+    /**
+     * Load the task from a snapshot.
+     *
+     * @param input the SnapshotInput to read from
+     * @throws IOException indicating IO Error or an invalid snapshot
+     */
+    void readSnapshot(SnapshotInput input) throws IOException;
+
+    /**
+     * Save the task to a snapshot.
+     * <p>
+     * The task must write the same values in the same order as read by {@link #readSnapshot(SnapshotInput)}.
+     *
+     * @param output the SnapshotOutput to write to
+     * @throws IOException indicating IO Error
+     */
+    void writeSnapshot(SnapshotOutput output) throws IOException;
+}
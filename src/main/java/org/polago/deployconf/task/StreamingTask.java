@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A deployment Task that can be loaded from StAX events and saved as StAX events without building a JDOM Element.
+ */
+public interface StreamingTask extends Task {
+
+    /**
+     * Load the task from a StAX XMLStreamReader.
+     * <p>
+     * The reader is positioned at the START_ELEMENT event of the task element when called and must be positioned at
+     * the matching END_ELEMENT event when returning.
+     *
+     * @param reader the XMLStreamReader to use for configuring this instance
+     * @throws IOException indicating IO Error
+     * @throws XMLStreamException indicating XML parse error
+     */
+    void deserialize(XMLStreamReader reader) throws IOException, XMLStreamException;
+
+    /**
+     * Serialize this Task to a StAX XMLStreamWriter.
+     * <p>
+     * The start element of the task element has been written when called and the caller writes the end element
+     * after returning, so this method writes the attributes and the content of the task element.
+     *
+     * @param writer the XMLStreamWriter to serialize to
+     * @throws IOException indicating IO Error
+     * @throws XMLStreamException indicating XML write error
+     */
+    void serialize(XMLStreamWriter writer) throws IOException, XMLStreamException;
+
+}
@@ -31,15 +31,31 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom2.Element;
 import org.polago.deployconf.InteractiveConfigurer;
+import org.polago.deployconf.condition.InvalidCondition;
 import org.polago.deployconf.group.ConfigGroup;
 import org.polago.deployconf.group.ConfigGroupManager;
 import org.polago.deployconf.task.AbstractTask;
+import org.polago.deployconf.task.SnapshotInput;
+import org.polago.deployconf.task.SnapshotOutput;
+import org.polago.deployconf.task.SnapshotTask;
+import org.polago.deployconf.task.StreamingTask;
 import org.polago.deployconf.task.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +63,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Deployment Task for filtering tokens in a file.
  */
-public class FilterTask extends AbstractTask {
+public class FilterTask extends AbstractTask implements StreamingTask, SnapshotTask {
 
     private static Logger logger = LoggerFactory.getLogger(FilterTask.class);
 
@@ -64,10 +80,55 @@ public class FilterTask extends AbstractTask {
 
     private static final String ATTRIBUTE_ENCODING = "encoding";
 
+    private static final String ATTRIBUTE_MATCHING = "matching";
+
+    private static final String ATTRIBUTE_WINDOW = "window";
+
+    private static final int BUF_SIZE = 8192;
+
+    /**
+     * Available MatchingModes.
+     */
+    public enum MatchingMode {
+        // Apply each token to the whole text in token order
+        SEQUENTIAL,
+        // Scan the text once for all tokens
+        SINGLE_PASS;
+
+        /**
+         * Gets the name used for this MatchingMode in the config file.
+         *
+         * @return the serialized name
+         */
+        public String getSerializedName() {
+            return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        }
+
+        /**
+         * Gets the MatchingMode for a name used in the config file.
+         *
+         * @param name the serialized name
+         * @return the corresponding MatchingMode
+         */
+        public static MatchingMode fromSerializedName(String name) {
+            for (MatchingMode m : values()) {
+                if (m.getSerializedName().equals(name)) {
+                    return m;
+                }
+            }
+            throw new IllegalStateException("Unknown filter matching mode: " + name);
+        }
+    }
+
     private Set<FilterToken> tokens;
 
     private String encoding = "UTF-8";
 
+    private MatchingMode matchingMode = MatchingMode.SEQUENTIAL;
+
+    // The maximum match length when filtering as a stream, 0 means filter line by line
+    private int window;
+
     /**
      * Public Constructor.
      *
@@ -84,52 +145,124 @@ public class FilterTask extends AbstractTask {
     @Override
     public void deserialize(Element root) throws IOException {
         super.deserialize(root);
-        String enc = root.getAttributeValue(ATTRIBUTE_ENCODING);
+        deserializeAttributes(root.getAttributeValue(ATTRIBUTE_ENCODING), root.getAttributeValue(ATTRIBUTE_MATCHING),
+            root.getAttributeValue(ATTRIBUTE_WINDOW));
+        for (Element e : root.getChildren()) {
+            deserializeToken(getChildTexts(e), e.getAttributeValue(DOM_ATTRIBUTE_GROUP));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deserialize(XMLStreamReader reader) throws IOException, XMLStreamException {
+        deserializePath(reader.getAttributeValue(null, DOM_ATTRIBUTE_PATH));
+        deserializeAttributes(reader.getAttributeValue(null, ATTRIBUTE_ENCODING),
+            reader.getAttributeValue(null, ATTRIBUTE_MATCHING), reader.getAttributeValue(null, ATTRIBUTE_WINDOW));
+        while (nextChildElement(reader)) {
+            String group = reader.getAttributeValue(null, DOM_ATTRIBUTE_GROUP);
+            deserializeToken(readChildTexts(reader), group);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readSnapshot(SnapshotInput input) throws IOException {
+        deserializePath(input.readString());
+        String enc = input.readString();
+        String matching = input.readString();
+        int w = input.readInt();
+        deserializeAttributes(enc, matching, w > 0 ? String.valueOf(w) : null);
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String group = input.readString();
+            Map<String, String> children = new HashMap<String, String>();
+            children.put(DOM_ELEMENT_NAME, input.readString());
+            children.put(DOM_ELEMENT_REGEX, input.readString());
+            children.put(DOM_ELEMENT_DESCRIPTION, input.readString());
+            children.put(DOM_ELEMENT_DEFAULT, input.readString());
+            children.put(DOM_ELEMENT_CONDITION, input.readString());
+            children.put(DOM_ELEMENT_VALUE, input.readString());
+            deserializeToken(children, group);
+        }
+    }
+
+    /**
+     * Load the filter attributes.
+     *
+     * @param enc the encoding attribute value or null
+     * @param matching the matching attribute value or null
+     * @param w the window attribute value or null
+     */
+    private void deserializeAttributes(String enc, String matching, String w) {
         if (enc != null) {
             encoding = enc;
         }
-        for (Element e : root.getChildren()) {
-            String name = e.getChildTextTrim(DOM_ELEMENT_NAME);
-            if (name.length() == 0) {
-                throw new IllegalStateException("Filter name element does not exists");
-            }
-            String regex = e.getChildTextTrim(DOM_ELEMENT_REGEX);
-            if (regex.length() == 0) {
-                throw new IllegalStateException("Filter regex element does not exists");
+        if (matching != null) {
+            matchingMode = MatchingMode.fromSerializedName(matching);
+        }
+        if (w != null) {
+            try {
+                window = Integer.parseInt(w.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Filter window attribute is not a number: " + w);
             }
-            String description = e.getChildTextTrim(DOM_ELEMENT_DESCRIPTION);
-            if (description.length() == 0) {
-                throw new IllegalStateException("Filter description element does not exists");
+            if (window <= 0) {
+                throw new IllegalStateException("Filter window attribute must be positive: " + w);
             }
-            String defaultValue = e.getChildTextTrim(DOM_ELEMENT_DEFAULT);
+        }
+    }
+
+    /**
+     * Load a FilterToken and add it to this task.
+     *
+     * @param children the trimmed text of each child element of the token element
+     * @param group the group attribute value or null
+     * @throws IOException indicating IO Error
+     */
+    private void deserializeToken(Map<String, String> children, String group) throws IOException {
+        String name = children.get(DOM_ELEMENT_NAME);
+        if (name == null || name.length() == 0) {
+            throw new IllegalStateException("Filter name element does not exists");
+        }
+        String regex = children.get(DOM_ELEMENT_REGEX);
+        if (regex == null || regex.length() == 0) {
+            throw new IllegalStateException("Filter regex element does not exists");
+        }
+        String description = children.get(DOM_ELEMENT_DESCRIPTION);
+        if (description == null || description.length() == 0) {
+            throw new IllegalStateException("Filter description element does not exists");
+        }
+        String defaultValue = children.get(DOM_ELEMENT_DEFAULT);
 
-            String group = e.getAttributeValue(DOM_ATTRIBUTE_GROUP);
-            String value = null;
+        String value = null;
 
-            if (group != null) {
-                value = getGroupManager().lookupGroup(group).getProperty(name);
-            }
+        if (group != null) {
+            value = getGroupManager().lookupGroup(group).getProperty(name);
+        }
 
-            if (value == null) {
-                value = e.getChildTextTrim(DOM_ELEMENT_VALUE);
-                if (group != null && value != null) {
-                    logger.debug("Populating group {} with value of name {}: {}", group, name, value);
-                    getGroupManager().lookupGroup(group).setProperty(name, value);
-                }
+        if (value == null) {
+            value = children.get(DOM_ELEMENT_VALUE);
+            if (group != null && value != null) {
+                logger.debug("Populating group {} with value of name {}: {}", group, name, value);
+                getGroupManager().lookupGroup(group).setProperty(name, value);
             }
+        }
 
-            FilterToken t = new FilterToken(name, regex, description, defaultValue, value);
+        FilterToken t = new FilterToken(name, regex, description, defaultValue, value);
 
-            if (group != null) {
-                t.setGroup(group);
-            }
+        if (group != null) {
+            t.setGroup(group);
+        }
 
-            t.setCondition(e.getChildTextTrim(DOM_ELEMENT_CONDITION));
+        t.setCondition(children.get(DOM_ELEMENT_CONDITION));
 
-            logger.debug("Deserializing FilterToken: {}", t);
+        logger.debug("Deserializing FilterToken: {}", t);
 
-            tokens.add(t);
-        }
+        tokens.add(t);
     }
 
     /**
@@ -139,6 +272,12 @@ public class FilterTask extends AbstractTask {
     public void serialize(Element node) throws IOException {
         super.serialize(node);
         node.setAttribute(ATTRIBUTE_ENCODING, getEncoding());
+        if (matchingMode != MatchingMode.SEQUENTIAL) {
+            node.setAttribute(ATTRIBUTE_MATCHING, matchingMode.getSerializedName());
+        }
+        if (window > 0) {
+            node.setAttribute(ATTRIBUTE_WINDOW, String.valueOf(window));
+        }
         for (FilterToken t : tokens) {
             logger.debug("Serializing FilterToken: {}", t);
             Element e = createJDOMElement(DOM_ELEMENT_TOKEN);
@@ -159,6 +298,60 @@ public class FilterTask extends AbstractTask {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serialize(XMLStreamWriter writer) throws IOException, XMLStreamException {
+        writer.writeAttribute(DOM_ATTRIBUTE_PATH, getPath());
+        writer.writeAttribute(ATTRIBUTE_ENCODING, getEncoding());
+        if (matchingMode != MatchingMode.SEQUENTIAL) {
+            writer.writeAttribute(ATTRIBUTE_MATCHING, matchingMode.getSerializedName());
+        }
+        if (window > 0) {
+            writer.writeAttribute(ATTRIBUTE_WINDOW, String.valueOf(window));
+        }
+        for (FilterToken t : tokens) {
+            logger.debug("Serializing FilterToken: {}", t);
+            writer.writeStartElement(DOM_ELEMENT_TOKEN);
+            String group = t.getGroup();
+            if (group != null) {
+                writer.writeAttribute(DOM_ATTRIBUTE_GROUP, group);
+            }
+            writeTextElement(writer, DOM_ELEMENT_NAME, t.getName());
+            writeTextElement(writer, DOM_ELEMENT_REGEX, t.getRegex().toString());
+            writeCDATAElement(writer, DOM_ELEMENT_DESCRIPTION, t.getDescription());
+            writeTextElement(writer, DOM_ELEMENT_DEFAULT, t.getDefaultValue());
+            writeTextElement(writer, DOM_ELEMENT_CONDITION, t.getCondition());
+            if (group == null) {
+                writeTextElement(writer, DOM_ELEMENT_VALUE, t.getValue());
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeSnapshot(SnapshotOutput output) throws IOException {
+        output.writeString(getPath());
+        output.writeString(getEncoding());
+        output.writeString(matchingMode.getSerializedName());
+        output.writeInt(window);
+        output.writeInt(tokens.size());
+        for (FilterToken t : tokens) {
+            String group = t.getGroup();
+            output.writeString(group);
+            output.writeString(t.getName());
+            output.writeString(t.getRegex().toString());
+            output.writeString(t.getDescription());
+            output.writeString(t.getDefaultValue());
+            output.writeString(t.getCondition());
+            output.writeString(group == null ? t.getValue() : null);
+        }
+    }
+
     /**
      * Gets the tokens property value.
      *
@@ -186,6 +379,42 @@ public class FilterTask extends AbstractTask {
         return encoding;
     }
 
+    /**
+     * Gets the matchingMode property value.
+     *
+     * @return the current value of the matchingMode property
+     */
+    public MatchingMode getMatchingMode() {
+        return matchingMode;
+    }
+
+    /**
+     * Sets the matchingMode property.
+     *
+     * @param matchingMode the new property value
+     */
+    public void setMatchingMode(MatchingMode matchingMode) {
+        this.matchingMode = matchingMode;
+    }
+
+    /**
+     * Gets the window property value.
+     *
+     * @return the maximum match length when filtering as a stream or 0 if filtering line by line
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the window property.
+     *
+     * @param window the maximum match length when filtering as a stream or 0 to filter line by line
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -193,23 +422,34 @@ public class FilterTask extends AbstractTask {
     public void merge(Task other) {
         if (other instanceof FilterTask) {
             FilterTask oft = (FilterTask) other;
-            tokens.retainAll(oft.getTokens());
-
+            matchingMode = oft.getMatchingMode();
+            window = oft.getWindow();
+            Set<String> names = new HashSet<String>();
             for (FilterToken ot : oft.getTokens()) {
-                boolean exists = false;
-                for (FilterToken t : tokens) {
-                    if (t.equals(ot)) {
-                        exists = true;
-                        t.setRegex(ot.getRegex());
-                        t.setDescription(ot.getDescription());
-                        t.setDefaultValue(ot.getDefaultValue());
-                        t.setGroup(ot.getGroup());
-                        t.setCondition(ot.getCondition());
-                        logger.debug("Merging existing FilterToken: {}", t);
-                        break;
-                    }
+                names.add(ot.getName());
+            }
+
+            // Keep the existing tokens that are still used in their current order
+            Map<String, FilterToken> existing = new HashMap<String, FilterToken>();
+            for (Iterator<FilterToken> i = tokens.iterator(); i.hasNext();) {
+                FilterToken t = i.next();
+                if (names.contains(t.getName())) {
+                    existing.put(t.getName(), t);
+                } else {
+                    i.remove();
                 }
-                if (!exists) {
+            }
+
+            for (FilterToken ot : oft.getTokens()) {
+                FilterToken t = existing.get(ot.getName());
+                if (t != null) {
+                    t.setRegex(ot.getRegex());
+                    t.setDescription(ot.getDescription());
+                    t.setDefaultValue(ot.getDefaultValue());
+                    t.setGroup(ot.getGroup());
+                    t.setCondition(ot.getCondition());
+                    logger.debug("Merging existing FilterToken: {}", t);
+                } else {
                     logger.debug("Adding new FilterToken: {}", ot);
                     tokens.add(ot);
                 }
@@ -223,7 +463,11 @@ public class FilterTask extends AbstractTask {
     @Override
     public boolean isConfigured() throws IOException {
         for (FilterToken t : tokens) {
-            if (evaluateCondition(t.getCondition(), getGroupManager().lookupGroup(t.getGroup()))) {
+            if (t.getParsedCondition() instanceof InvalidCondition) {
+                logger.debug("FilterToken has an invalid condition: {}", t);
+                return false;
+            }
+            if (evaluateCondition(t.getParsedCondition(), getGroupManager().lookupGroup(t.getGroup()))) {
                 if (t.getValue() == null || t.getValue().length() == 0) {
                     logger.debug("FilterToken is not configured: {}", t);
                     return false;
@@ -244,7 +488,7 @@ public class FilterTask extends AbstractTask {
 
         for (FilterToken t : tokens) {
             ConfigGroup group = getGroupManager().lookupGroup(t.getGroup());
-            if (evaluateCondition(t.getCondition(), group)
+            if (evaluateCondition(t.getParsedCondition(), group)
                 && (force || t.getValue() == null || t.getValue().length() == 0)) {
                 configured = configureTokenInteractively(t, configurer);
                 if (configured) {
@@ -272,6 +516,31 @@ public class FilterTask extends AbstractTask {
     @Override
     public void apply(InputStream source, OutputStream destination) throws Exception {
 
+        List<ResolvedFilterToken> plan = resolveTokens();
+        logger.debug("Using resolved tokens: {}", plan);
+
+        if (window > 0) {
+            applyStream(plan, source, destination);
+        } else {
+            applyLines(plan, source, destination);
+        }
+    }
+
+    /**
+     * Apply the resolved tokens line by line.
+     * <p>
+     * Each line is terminated by the platform line separator in the destination.
+     *
+     * @param plan the resolved tokens to apply
+     * @param source the Input stream
+     * @param destination the Output stream
+     * @throws IOException indicating IO Error
+     */
+    private void applyLines(List<ResolvedFilterToken> plan, InputStream source, OutputStream destination)
+        throws IOException {
+
+        LineFilter filter = TokenMatcher.newInstance(plan, matchingMode);
+
         InputStreamReader in = new InputStreamReader(source, getEncoding());
         BufferedReader reader = new BufferedReader(in);
 
@@ -280,7 +549,7 @@ public class FilterTask extends AbstractTask {
 
         String line = reader.readLine();
         while (line != null) {
-            line = filterLine(line);
+            line = filter.filter(line);
             writer.write(line);
             line = reader.readLine();
             writer.newLine();
@@ -289,24 +558,68 @@ public class FilterTask extends AbstractTask {
     }
 
     /**
-     * Filter the given line.
+     * Apply the resolved tokens to the source as a stream of characters.
+     * <p>
+     * Only a bounded window of the source is kept in memory and all line terminators are preserved. In sequential
+     * mode, one filter stage per token is chained so each token sees the output of the previous token.
      *
-     * @param line the line to process
-     * @return the filtered line
+     * @param plan the resolved tokens to apply
+     * @param source the Input stream
+     * @param destination the Output stream
      * @throws IOException indicating IO Error
      */
-    private String filterLine(String line) throws IOException {
+    private void applyStream(List<ResolvedFilterToken> plan, InputStream source, OutputStream destination)
+        throws IOException {
+
+        InputStreamReader reader = new InputStreamReader(source, getEncoding());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(destination, getEncoding()));
+
+        if (!plan.isEmpty()) {
+            if (matchingMode == MatchingMode.SINGLE_PASS) {
+                writer = new TokenFilterWriter(writer, TokenMatcher.newSinglePassInstance(plan), window);
+            } else {
+                for (int i = plan.size() - 1; i >= 0; i--) {
+                    TokenMatcher matcher = TokenMatcher.newSinglePassInstance(plan.subList(i, i + 1));
+                    writer = new TokenFilterWriter(writer, matcher, window);
+                }
+            }
+        }
+
+        char[] buf = new char[BUF_SIZE];
+        int i = reader.read(buf);
+        while (i != -1) {
+            writer.write(buf, 0, i);
+            i = reader.read(buf);
+        }
+
+        if (writer instanceof TokenFilterWriter) {
+            ((TokenFilterWriter) writer).finish();
+        } else {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Resolve the tokens that are active for an apply run.
+     * <p>
+     * Each token condition is evaluated and each token value is expanded exactly once so the per line processing only
+     * needs to run the token regex.
+     *
+     * @return the list of active tokens in token order
+     * @throws IOException indicating IO Error
+     */
+    List<ResolvedFilterToken> resolveTokens() throws IOException {
+        List<ResolvedFilterToken> result = new ArrayList<ResolvedFilterToken>(getTokens().size());
+
         for (FilterToken t : getTokens()) {
             ConfigGroup group = getGroupManager().lookupGroup(t.getGroup());
-            if (evaluateCondition(t.getCondition(), group)) {
-                Matcher matcher = t.getRegex().matcher(line);
+            if (evaluateCondition(t.getParsedCondition(), group)) {
                 String value = expandPropertyExpression(t.getValue(), group);
-                line = matcher.replaceAll(value);
+                result.add(new ResolvedFilterToken(t, value));
             }
         }
 
-        return line;
-
+        return result;
     }
 
     /**
@@ -343,7 +656,8 @@ public class FilterTask extends AbstractTask {
      */
     @Override
     public String toString() {
-        return "FilterTask [path=" + getPath() + ", tokens=" + tokens + ", encoding=" + encoding + "]";
+        return "FilterTask [path=" + getPath() + ", tokens=" + tokens + ", encoding=" + encoding + ", matchingMode="
+            + matchingMode + ", window=" + window + "]";
     }
 
 }
@@ -26,6 +26,10 @@ package org.polago.deployconf.task.filter;
 
 import java.util.regex.Pattern;
 
+import org.polago.deployconf.condition.Condition;
+import org.polago.deployconf.condition.ConditionCompiler;
+import org.polago.deployconf.condition.ConditionLanguage;
+
 /**
  * A single Token in a Filter Task.
  */
@@ -45,6 +49,10 @@ public class FilterToken {
 
     private String condition;
 
+    private Condition parsedCondition;
+
+    private ConditionLanguage parsedLanguage;
+
     /**
      * Public Constructor.
      *
@@ -187,6 +195,22 @@ public class FilterToken {
      */
     public void setCondition(String condition) {
         this.condition = condition;
+        parsedCondition = null;
+    }
+
+    /**
+     * Gets the parsed condition, parsing it on first use in each condition language.
+     *
+     * @return the parsed condition or null if there is no condition
+     */
+    public Condition getParsedCondition() {
+        ConditionLanguage language = ConditionCompiler.getLanguage();
+        if (condition != null && (parsedCondition == null || parsedLanguage != language)) {
+            parsedCondition = ConditionCompiler.compile(condition);
+            parsedLanguage = language;
+        }
+
+        return parsedCondition;
     }
 
     /**
@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * TokenMatcher that uses an Aho-Corasick automaton for tokens that are plain literals.
+ */
+class LiteralTokenMatcher extends TokenMatcher {
+
+    // Characters that makes a regex something else than a plain literal
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private static final String QUOTE_START = "\\Q";
+
+    private static final String QUOTE_END = "\\E";
+
+    private final String[] literals;
+
+    private final String[] replacements;
+
+    private final int maxLength;
+
+    private final char[][] edges;
+
+    private final int[][] targets;
+
+    private final int[] fail;
+
+    private final int[][] outputs;
+
+    private int start;
+
+    private int end;
+
+    private int token;
+
+    /**
+     * Private Constructor.
+     *
+     * @param literals the token literals
+     * @param replacements the replacement for each literal
+     */
+    private LiteralTokenMatcher(String[] literals, String[] replacements) {
+        this.literals = literals;
+        this.replacements = replacements;
+
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+        trie.add(new TreeMap<Character, Integer>());
+        trieOutputs.add(new ArrayList<Integer>());
+
+        int max = 0;
+        for (int i = 0; i < literals.length; i++) {
+            int state = 0;
+            for (char c : literals[i].toCharArray()) {
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<Character, Integer>());
+                    trieOutputs.add(new ArrayList<Integer>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            trieOutputs.get(state).add(i);
+            max = Math.max(max, literals[i].length());
+        }
+        maxLength = max;
+
+        int size = trie.size();
+        edges = new char[size][];
+        targets = new int[size][];
+        for (int s = 0; s < size; s++) {
+            Map<Character, Integer> m = trie.get(s);
+            edges[s] = new char[m.size()];
+            targets[s] = new int[m.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> e : m.entrySet()) {
+                edges[s][i] = e.getKey();
+                targets[s][i] = e.getValue();
+                i++;
+            }
+        }
+
+        fail = new int[size];
+        outputs = new int[size][];
+        outputs[0] = toArray(trieOutputs.get(0));
+        Queue<Integer> queue = new ArrayDeque<Integer>();
+        for (int t : targets[0]) {
+            queue.add(t);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.remove();
+            List<Integer> out = trieOutputs.get(s);
+            for (int o : outputs[fail[s]]) {
+                out.add(o);
+            }
+            outputs[s] = toArray(out);
+            for (int i = 0; i < edges[s].length; i++) {
+                int t = targets[s][i];
+                if (s != 0) {
+                    fail[t] = next(fail[s], edges[s][i]);
+                }
+                queue.add(t);
+            }
+        }
+    }
+
+    /**
+     * Create a LiteralTokenMatcher if all tokens are plain literals.
+     *
+     * @param plan the resolved tokens to match
+     * @return a LiteralTokenMatcher or null if any token isn't a plain literal
+     * @throws IllegalArgumentException if a replacement isn't valid
+     */
+    static LiteralTokenMatcher newInstance(List<ResolvedFilterToken> plan) {
+        String[] literals = new String[plan.size()];
+        String[] replacements = new String[plan.size()];
+
+        for (int i = 0; i < plan.size(); i++) {
+            ResolvedFilterToken t = plan.get(i);
+            literals[i] = getLiteral(t.getRegex());
+            if (literals[i] == null || t.getReplacement() == null) {
+                return null;
+            }
+            replacements[i] = TokenReplacement.compile(t.getReplacement(), 0).expand(literals[i]);
+        }
+
+        return new LiteralTokenMatcher(literals, replacements);
+    }
+
+    /**
+     * Gets the literal text matched by a Pattern.
+     *
+     * @param p the Pattern to examine
+     * @return the literal text or null if the Pattern isn't a non empty plain literal
+     */
+    static String getLiteral(Pattern p) {
+        if (p.flags() != 0) {
+            return null;
+        }
+
+        String result = p.pattern();
+        if (result.startsWith(QUOTE_START) && result.endsWith(QUOTE_END)
+            && result.indexOf(QUOTE_END) == result.length() - QUOTE_END.length()) {
+            result = result.substring(QUOTE_START.length(), result.length() - QUOTE_END.length());
+        } else {
+            for (int i = 0; i < result.length(); i++) {
+                if (META_CHARACTERS.indexOf(result.charAt(i)) >= 0) {
+                    return null;
+                }
+            }
+        }
+
+        if (result.length() == 0) {
+            return null;
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean find(CharSequence text, int from) {
+        int bestStart = -1;
+        int bestToken = -1;
+        int state = 0;
+
+        for (int i = from; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            for (int o : outputs[state]) {
+                int s = i + 1 - literals[o].length();
+                if (bestStart < 0 || s < bestStart || (s == bestStart && o < bestToken)) {
+                    bestStart = s;
+                    bestToken = o;
+                }
+            }
+            // No match ending later can start before the best match
+            if (bestStart >= 0 && i + 1 >= bestStart + maxLength) {
+                break;
+            }
+        }
+
+        if (bestStart < 0) {
+            return false;
+        }
+
+        start = bestStart;
+        token = bestToken;
+        end = bestStart + literals[bestToken].length();
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int start() {
+        return start;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int end() {
+        return end;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    String replacement() {
+        return replacements[token];
+    }
+
+    /**
+     * Compute the next automaton state.
+     *
+     * @param state the current state
+     * @param c the next character
+     * @return the next state
+     */
+    private int next(int state, char c) {
+        int s = state;
+        while (true) {
+            int i = Arrays.binarySearch(edges[s], c);
+            if (i >= 0) {
+                return targets[s][i];
+            }
+            if (s == 0) {
+                return 0;
+            }
+            s = fail[s];
+        }
+    }
+
+    /**
+     * Convert a List of Integers to an array.
+     *
+     * @param list the List to convert
+     * @return an int array
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "LiteralTokenMatcher [literals=" + Arrays.toString(literals) + "]";
+    }
+
+}
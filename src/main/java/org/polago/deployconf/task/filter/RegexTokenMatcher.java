@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TokenMatcher that combines all token regexes into a single alternation Pattern.
+ * <p>
+ * A single token is matched using its own Pattern.
+ */
+class RegexTokenMatcher extends TokenMatcher {
+
+    // Numbered back references can't be used since the groups are renumbered when combined
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+
+    private final Pattern pattern;
+
+    private final int[] offsets;
+
+    private final TokenReplacement[] replacements;
+
+    private final String[] literalReplacements;
+
+    private Matcher matcher;
+
+    private int token;
+
+    /**
+     * Private Constructor.
+     *
+     * @param pattern the combined Pattern
+     * @param offsets the group number of each token in the combined Pattern
+     * @param replacements the compiled replacement of each token
+     */
+    private RegexTokenMatcher(Pattern pattern, int[] offsets, TokenReplacement[] replacements) {
+        this.pattern = pattern;
+        this.offsets = offsets;
+        this.replacements = replacements;
+
+        literalReplacements = new String[replacements.length];
+        for (int i = 0; i < replacements.length; i++) {
+            if (replacements[i].isLiteral()) {
+                literalReplacements[i] = replacements[i].expand("");
+            }
+        }
+    }
+
+    /**
+     * Create a RegexTokenMatcher for the given tokens.
+     *
+     * @param plan the resolved tokens to combine
+     * @return a RegexTokenMatcher instance
+     * @throws IllegalArgumentException if the tokens can't be combined
+     */
+    static RegexTokenMatcher newInstance(List<ResolvedFilterToken> plan) {
+        if (plan.size() == 1) {
+            ResolvedFilterToken t = plan.get(0);
+            if (t.getReplacement() == null) {
+                throw new IllegalArgumentException("Token has no value: " + t);
+            }
+            Pattern p = t.getRegex();
+            TokenReplacement replacement = TokenReplacement.compile(t.getReplacement(), p.matcher("").groupCount());
+            return new RegexTokenMatcher(p, new int[] {0}, new TokenReplacement[] {replacement});
+        }
+
+        StringBuilder regex = new StringBuilder();
+        int[] offsets = new int[plan.size()];
+        TokenReplacement[] replacements = new TokenReplacement[plan.size()];
+
+        int group = 1;
+        for (int i = 0; i < plan.size(); i++) {
+            ResolvedFilterToken t = plan.get(i);
+            Pattern p = t.getRegex();
+            if (p.flags() != 0) {
+                throw new IllegalArgumentException("Pattern flags can't be combined: " + p);
+            }
+            if (BACK_REFERENCE.matcher(p.pattern()).find()) {
+                throw new IllegalArgumentException("Back references can't be combined: " + p);
+            }
+            if (t.getReplacement() == null) {
+                throw new IllegalArgumentException("Token has no value: " + t);
+            }
+
+            int groupCount = p.matcher("").groupCount();
+            offsets[i] = group;
+            replacements[i] = TokenReplacement.compile(t.getReplacement(), groupCount);
+            group += groupCount + 1;
+
+            if (i > 0) {
+                regex.append('|');
+            }
+            regex.append('(').append(p.pattern()).append(')');
+        }
+
+        return new RegexTokenMatcher(Pattern.compile(regex.toString()), offsets, replacements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    boolean find(CharSequence text, int from) {
+        if (matcher == null) {
+            matcher = pattern.matcher(text);
+        } else {
+            matcher.reset(text);
+        }
+
+        if (!matcher.find(from)) {
+            return false;
+        }
+
+        token = 0;
+        while (matcher.start(offsets[token]) < 0) {
+            token++;
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int start() {
+        return matcher.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int end() {
+        return matcher.end();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    String replacement() {
+        String result = literalReplacements[token];
+        if (result == null) {
+            result = replacements[token].expand(matcher, offsets[token]);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "RegexTokenMatcher [pattern=" + pattern + "]";
+    }
+
+}
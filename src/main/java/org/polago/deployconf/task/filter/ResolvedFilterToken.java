@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.regex.Pattern;
+
+/**
+ * A FilterToken resolved for a single apply run.
+ * <p>
+ * The condition of the token has already been evaluated and the value has been expanded so filtering a line only
+ * involves running the precompiled regex.
+ */
+class ResolvedFilterToken {
+
+    private final FilterToken token;
+
+    private final String replacement;
+
+    /**
+     * Package Constructor.
+     *
+     * @param token the FilterToken that was resolved
+     * @param replacement the expanded replacement value
+     */
+    ResolvedFilterToken(FilterToken token, String replacement) {
+        this.token = token;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Gets the token property value.
+     *
+     * @return the current value of the token property
+     */
+    FilterToken getToken() {
+        return token;
+    }
+
+    /**
+     * Gets the regex of the resolved token.
+     *
+     * @return the token Pattern
+     */
+    Pattern getRegex() {
+        return token.getRegex();
+    }
+
+    /**
+     * Gets the replacement property value.
+     *
+     * @return the current value of the replacement property
+     */
+    String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Replace all matches of this token in the given line.
+     *
+     * @param line the line to filter
+     * @return the filtered line
+     */
+    String replaceAll(String line) {
+        return getRegex().matcher(line).replaceAll(replacement);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ResolvedFilterToken [name=" + token.getName() + ", regex=" + getRegex() + ", replacement="
+            + replacement + "]";
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.List;
+
+/**
+ * LineFilter that applies each token to the whole text in token order.
+ * <p>
+ * A token may match text produced by the replacement of a previous token.
+ */
+class SequentialLineFilter implements LineFilter {
+
+    private final List<ResolvedFilterToken> plan;
+
+    /**
+     * Package Constructor.
+     *
+     * @param plan the resolved tokens to apply
+     */
+    SequentialLineFilter(List<ResolvedFilterToken> plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String filter(String line) {
+        for (ResolvedFilterToken t : plan) {
+            line = t.replaceAll(line);
+        }
+
+        return line;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "SequentialLineFilter [tokens=" + plan.size() + "]";
+    }
+
+}
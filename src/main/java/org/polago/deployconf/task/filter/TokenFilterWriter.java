@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that replaces token matches in a stream of characters using a bounded buffer.
+ * <p>
+ * Text is only written when it's at least one window away from the end of the buffered input, so a match may be at most
+ * window characters long. Up to window characters of already written text is kept as context for look-behind
+ * constructs. The buffer is never split on line terminators and all characters that aren't part of a match are written
+ * unchanged.
+ */
+class TokenFilterWriter extends Writer {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Writer out;
+
+    private final TokenMatcher matcher;
+
+    private final int window;
+
+    private final StringBuilder buffer;
+
+    // Index in buffer of the first character not written yet
+    private int written;
+
+    // Index in buffer to start the next search from
+    private int from;
+
+    /**
+     * Package Constructor.
+     *
+     * @param out the Writer to write filtered text to
+     * @param matcher the single pass TokenMatcher to use
+     * @param window the maximum length of a match
+     */
+    TokenFilterWriter(Writer out, TokenMatcher matcher, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.out = out;
+        this.matcher = matcher;
+        this.window = window;
+        buffer = new StringBuilder(2 * window + CHUNK_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int pos = off;
+        int end = off + len;
+        while (pos < end) {
+            int n = Math.min(CHUNK_SIZE, end - pos);
+            buffer.append(cbuf, pos, n);
+            pos += n;
+            if (buffer.length() - written >= window + CHUNK_SIZE) {
+                process(false);
+            }
+        }
+    }
+
+    /**
+     * Write all remaining buffered text, including any chained TokenFilterWriters, without closing the underlying
+     * Writer.
+     *
+     * @throws IOException indicating IO Error
+     */
+    void finish() throws IOException {
+        process(true);
+        if (out instanceof TokenFilterWriter) {
+            ((TokenFilterWriter) out).finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Flush the underlying Writer.
+     * <p>
+     * Buffered text that may still be part of a match is not written until {@link #finish()} is called.
+     *
+     * @throws IOException indicating IO Error
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Replace matches in the buffer and write text that can't be part of a later match.
+     *
+     * @param endOfInput true if no more text will be written
+     * @throws IOException indicating IO Error
+     */
+    private void process(boolean endOfInput) throws IOException {
+        int limit = buffer.length();
+        if (!endOfInput) {
+            limit -= window;
+        }
+
+        boolean found = from <= buffer.length() && matcher.find(buffer, from);
+        while (found && (endOfInput || matcher.start() < limit)) {
+            out.append(buffer, written, matcher.start());
+            out.write(matcher.replacement());
+            written = matcher.end();
+            from = matcher.end();
+            if (matcher.end() == matcher.start()) {
+                from++;
+            }
+            found = from <= buffer.length() && matcher.find(buffer, from);
+        }
+
+        if (written < limit) {
+            out.append(buffer, written, limit);
+            written = limit;
+            from = Math.max(from, written);
+        }
+
+        int discard = written - window;
+        if (discard > 0) {
+            buffer.delete(0, discard);
+            written -= discard;
+            from -= discard;
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single pass engine used by the FilterTask for replacing tokens in text.
+ * <p>
+ * The text is scanned once and the leftmost match of any token is replaced. When several tokens match at the same
+ * position the first token wins. Replaced text is never scanned again.
+ */
+abstract class TokenMatcher implements LineFilter {
+
+    private static Logger logger = LoggerFactory.getLogger(TokenMatcher.class);
+
+    /**
+     * Create a LineFilter for the given tokens.
+     * <p>
+     * If all tokens are plain literals an Aho-Corasick automaton is used in single pass mode. Otherwise the tokens are
+     * combined into one alternation Pattern. If the tokens can't be combined, the sequential engine is used.
+     *
+     * @param plan the resolved tokens to match
+     * @param mode the matching mode to use
+     * @return a LineFilter instance
+     */
+    static LineFilter newInstance(List<ResolvedFilterToken> plan, FilterTask.MatchingMode mode) {
+        LineFilter result = null;
+
+        if (mode == FilterTask.MatchingMode.SINGLE_PASS && !plan.isEmpty()) {
+            try {
+                result = newSinglePassInstance(plan);
+            } catch (IllegalArgumentException e) {
+                logger.debug("Unable to combine tokens, using sequential matching: {}", e.toString());
+            } catch (IndexOutOfBoundsException e) {
+                logger.debug("Unable to combine tokens, using sequential matching: {}", e.toString());
+            }
+        }
+
+        if (result == null) {
+            result = new SequentialLineFilter(plan);
+        }
+        logger.debug("Using LineFilter: {}", result);
+
+        return result;
+    }
+
+    /**
+     * Create a single pass TokenMatcher for the given tokens.
+     *
+     * @param plan the resolved tokens to match, must not be empty
+     * @return a TokenMatcher instance
+     * @throws IllegalArgumentException if the tokens can't be combined
+     * @throws IndexOutOfBoundsException if a value refers to a non existing group
+     */
+    static TokenMatcher newSinglePassInstance(List<ResolvedFilterToken> plan) {
+        TokenMatcher result = LiteralTokenMatcher.newInstance(plan);
+        if (result == null) {
+            result = RegexTokenMatcher.newInstance(plan);
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the next token match in the given text.
+     *
+     * @param text the text to search
+     * @param from the position to start searching from
+     * @return true if a match was found
+     */
+    abstract boolean find(CharSequence text, int from);
+
+    /**
+     * Gets the start of the last match.
+     *
+     * @return the start index of the last match
+     */
+    abstract int start();
+
+    /**
+     * Gets the end of the last match.
+     *
+     * @return the end index, exclusive, of the last match
+     */
+    abstract int end();
+
+    /**
+     * Gets the replacement for the last match.
+     *
+     * @return the replacement text
+     */
+    abstract String replacement();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String filter(String line) {
+        int from = 0;
+        if (!find(line, from)) {
+            return line;
+        }
+
+        StringBuilder result = new StringBuilder(line.length());
+        int pos = 0;
+        boolean found = true;
+        while (found) {
+            result.append(line, pos, start());
+            result.append(replacement());
+            pos = end();
+            from = end();
+            if (end() == start()) {
+                from++;
+            }
+            found = from <= line.length() && find(line, from);
+        }
+        result.append(line, pos, line.length());
+
+        return result.toString();
+    }
+
+}
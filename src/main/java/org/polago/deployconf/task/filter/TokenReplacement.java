@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * A precompiled replacement string using the {@link java.util.regex.Matcher#replaceAll(String)} syntax.
+ * <p>
+ * The replacement is parsed once so that group references can be resolved against a combined Pattern where the groups
+ * of the token are shifted by an offset.
+ */
+final class TokenReplacement {
+
+    private static final int RADIX = 10;
+
+    // Marks a literal part
+    private static final int LITERAL = -1;
+
+    // Marks a named group reference
+    private static final int NAMED = -2;
+
+    private final String[] texts;
+
+    private final int[] groups;
+
+    /**
+     * Private Constructor.
+     *
+     * @param texts the literal parts or group names
+     * @param groups the group references, LITERAL for literal parts or NAMED for named references
+     */
+    private TokenReplacement(String[] texts, int[] groups) {
+        this.texts = texts;
+        this.groups = groups;
+    }
+
+    /**
+     * Compile a replacement string.
+     *
+     * @param replacement the replacement string to compile
+     * @param groupCount the number of capturing groups in the Pattern the replacement is used with
+     * @return a TokenReplacement instance
+     * @throws IllegalArgumentException if the replacement isn't valid
+     */
+    static TokenReplacement compile(String replacement, int groupCount) {
+        List<String> texts = new ArrayList<String>();
+        List<Integer> groups = new ArrayList<Integer>();
+        StringBuilder text = new StringBuilder();
+
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                text.append(replacement.charAt(i++));
+            } else if (c == '$') {
+                if (i == replacement.length()) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                if (text.length() > 0) {
+                    texts.add(text.toString());
+                    groups.add(LITERAL);
+                    text.setLength(0);
+                }
+                if (replacement.charAt(i) == '{') {
+                    int close = replacement.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    String name = replacement.substring(i + 1, close);
+                    if (!isGroupName(name)) {
+                        throw new IllegalArgumentException("Illegal group reference: " + name);
+                    }
+                    texts.add(name);
+                    groups.add(NAMED);
+                    i = close + 1;
+                } else {
+                    int ref = Character.digit(replacement.charAt(i++), RADIX);
+                    if (ref < 0) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    while (i < replacement.length()) {
+                        int digit = Character.digit(replacement.charAt(i), RADIX);
+                        if (digit < 0 || ref * RADIX + digit > groupCount) {
+                            break;
+                        }
+                        ref = ref * RADIX + digit;
+                        i++;
+                    }
+                    if (ref > groupCount) {
+                        throw new IndexOutOfBoundsException("No group " + ref);
+                    }
+                    texts.add(null);
+                    groups.add(ref);
+                }
+            } else {
+                text.append(c);
+            }
+        }
+        if (text.length() > 0) {
+            texts.add(text.toString());
+            groups.add(LITERAL);
+        }
+
+        int[] groupArray = new int[groups.size()];
+        for (int j = 0; j < groupArray.length; j++) {
+            groupArray[j] = groups.get(j);
+        }
+
+        return new TokenReplacement(texts.toArray(new String[texts.size()]), groupArray);
+    }
+
+    /**
+     * Determine if a group name is valid.
+     *
+     * @param name the name to check
+     * @return true if the name is a valid group name
+     */
+    private static boolean isGroupName(String name) {
+        if (name.length() == 0 || !isAsciiLetter(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!isAsciiLetter(c) && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Determine if a character is an ASCII letter.
+     *
+     * @param c the character to check
+     * @return true if c is an ASCII letter
+     */
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Determine if this replacement has any group references.
+     *
+     * @return true if the replacement is a plain text
+     */
+    boolean isLiteral() {
+        for (int g : groups) {
+            if (g != LITERAL) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Expand this replacement for a match.
+     *
+     * @param match the match to use for resolving group references
+     * @param offset the group number in match that corresponds to group 0 of the token
+     * @return the expanded replacement
+     */
+    String expand(Matcher match, int offset) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < groups.length; i++) {
+            String value;
+            if (groups[i] == LITERAL) {
+                value = texts[i];
+            } else if (groups[i] == NAMED) {
+                value = match.group(texts[i]);
+            } else {
+                value = match.group(offset + groups[i]);
+            }
+            if (value != null) {
+                result.append(value);
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Expand this replacement when the whole match is a known text and there are no other groups.
+     *
+     * @param matched the matched text
+     * @return the expanded replacement
+     * @throws IllegalArgumentException if the replacement uses a named group reference
+     */
+    String expand(String matched) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i] == LITERAL) {
+                result.append(texts[i]);
+            } else if (groups[i] == NAMED) {
+                throw new IllegalArgumentException("No group with name {" + texts[i] + "}");
+            } else {
+                result.append(matched);
+            }
+        }
+
+        return result.toString();
+    }
+
+}
@@ -29,14 +29,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.jdom2.Element;
 import org.polago.deployconf.InteractiveConfigurer;
+import org.polago.deployconf.condition.InvalidCondition;
 import org.polago.deployconf.group.ConfigGroup;
 import org.polago.deployconf.group.ConfigGroupManager;
 import org.polago.deployconf.task.AbstractTask;
+import org.polago.deployconf.task.SnapshotInput;
+import org.polago.deployconf.task.SnapshotOutput;
+import org.polago.deployconf.task.SnapshotTask;
+import org.polago.deployconf.task.StreamingTask;
 import org.polago.deployconf.task.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +57,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Deployment Task for creating properties in a file.
  */
-public class PropertiesTask extends AbstractTask {
+public class PropertiesTask extends AbstractTask implements StreamingTask, SnapshotTask {
 
     private static Logger logger = LoggerFactory.getLogger(PropertiesTask.class);
 
@@ -79,50 +92,102 @@ public class PropertiesTask extends AbstractTask {
      */
     @Override
     public void deserialize(Element node) throws IOException {
-        String attribute = node.getAttributeValue(DOM_ATTRIBUTE_PATH);
+        deserializePath(node.getAttributeValue(DOM_ATTRIBUTE_PATH));
+
+        for (Element e : node.getChildren()) {
+            deserializeProperty(getChildTexts(e), e.getAttributeValue(DOM_ATTRIBUTE_GROUP));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deserialize(XMLStreamReader reader) throws IOException, XMLStreamException {
+        deserializePath(reader.getAttributeValue(null, DOM_ATTRIBUTE_PATH));
+
+        while (nextChildElement(reader)) {
+            String group = reader.getAttributeValue(null, DOM_ATTRIBUTE_GROUP);
+            deserializeProperty(readChildTexts(reader), group);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readSnapshot(SnapshotInput input) throws IOException {
+        deserializePath(input.readString());
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String group = input.readString();
+            Map<String, String> children = new HashMap<String, String>();
+            children.put(DOM_ELEMENT_NAME, input.readString());
+            children.put(DOM_ELEMENT_DESCRIPTION, input.readString());
+            children.put(DOM_ELEMENT_DEFAULT, input.readString());
+            children.put(DOM_ELEMENT_CONDITION, input.readString());
+            children.put(DOM_ELEMENT_VALUE, input.readString());
+            deserializeProperty(children, group);
+        }
+    }
+
+    /**
+     * Sets the path from the optional path attribute.
+     *
+     * @param attribute the path attribute value or null if missing
+     */
+    @Override
+    protected void deserializePath(String attribute) {
         if (attribute == null) {
-            attribute = PATH_IGNORE;
+            setPath(PATH_IGNORE);
+        } else {
+            setPath(attribute);
         }
-        setPath(attribute);
+    }
 
-        for (Element e : node.getChildren()) {
-            String name = e.getChildTextTrim(DOM_ELEMENT_NAME);
-            if (name.length() == 0) {
-                throw new IllegalStateException("Property name element does not exists");
-            }
-            String description = e.getChildTextTrim(DOM_ELEMENT_DESCRIPTION);
-            if (description.length() == 0) {
-                throw new IllegalStateException("Property description element does not exists");
-            }
-            String defaultValue = e.getChildTextTrim(DOM_ELEMENT_DEFAULT);
+    /**
+     * Load a Property and add it to this task.
+     *
+     * @param children the trimmed text of each child element of the property element
+     * @param group the group attribute value or null
+     * @throws IOException indicating IO Error
+     */
+    private void deserializeProperty(Map<String, String> children, String group) throws IOException {
+        String name = children.get(DOM_ELEMENT_NAME);
+        if (name == null || name.length() == 0) {
+            throw new IllegalStateException("Property name element does not exists");
+        }
+        String description = children.get(DOM_ELEMENT_DESCRIPTION);
+        if (description == null || description.length() == 0) {
+            throw new IllegalStateException("Property description element does not exists");
+        }
+        String defaultValue = children.get(DOM_ELEMENT_DEFAULT);
 
-            String group = e.getAttributeValue(DOM_ATTRIBUTE_GROUP);
-            String value = null;
+        String value = null;
 
-            if (group != null) {
-                value = getGroupManager().lookupGroup(group).getProperty(name);
-            }
+        if (group != null) {
+            value = getGroupManager().lookupGroup(group).getProperty(name);
+        }
 
-            if (value == null) {
-                value = e.getChildTextTrim(DOM_ELEMENT_VALUE);
-                if (group != null && value != null) {
-                    logger.debug("Populating group {} with value of name {}: {}", group, name, value);
-                    getGroupManager().lookupGroup(group).setProperty(name, value);
-                }
+        if (value == null) {
+            value = children.get(DOM_ELEMENT_VALUE);
+            if (group != null && value != null) {
+                logger.debug("Populating group {} with value of name {}: {}", group, name, value);
+                getGroupManager().lookupGroup(group).setProperty(name, value);
             }
+        }
 
-            Property p = new Property(name, description, defaultValue, value);
+        Property p = new Property(name, description, defaultValue, value);
 
-            if (group != null) {
-                p.setGroup(group);
-            }
+        if (group != null) {
+            p.setGroup(group);
+        }
 
-            p.setCondition(e.getChildTextTrim(DOM_ELEMENT_CONDITION));
+        p.setCondition(children.get(DOM_ELEMENT_CONDITION));
 
-            logger.debug("Deserializing property: {}", p);
+        logger.debug("Deserializing property: {}", p);
 
-            properties.add(p);
-        }
+        properties.add(p);
     }
 
     /**
@@ -153,6 +218,51 @@ public class PropertiesTask extends AbstractTask {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void serialize(XMLStreamWriter writer) throws IOException, XMLStreamException {
+        if (!PATH_IGNORE.equals(getPath())) {
+            writer.writeAttribute(DOM_ATTRIBUTE_PATH, getPath());
+        }
+
+        for (Property p : properties) {
+            logger.debug("Serializing property: {}", p);
+            writer.writeStartElement(DOM_ELEMENT_PROPERTY);
+            String group = p.getGroup();
+            if (group != null) {
+                writer.writeAttribute(DOM_ATTRIBUTE_GROUP, group);
+            }
+            writeTextElement(writer, DOM_ELEMENT_NAME, p.getName());
+            writeCDATAElement(writer, DOM_ELEMENT_DESCRIPTION, p.getDescription());
+            writeTextElement(writer, DOM_ELEMENT_DEFAULT, p.getDefaultValue());
+            writeTextElement(writer, DOM_ELEMENT_CONDITION, p.getCondition());
+            if (group == null) {
+                writeTextElement(writer, DOM_ELEMENT_VALUE, p.getValue());
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeSnapshot(SnapshotOutput output) throws IOException {
+        output.writeString(getPath());
+        output.writeInt(properties.size());
+        for (Property p : properties) {
+            String group = p.getGroup();
+            output.writeString(group);
+            output.writeString(p.getName());
+            output.writeString(p.getDescription());
+            output.writeString(p.getDefaultValue());
+            output.writeString(p.getCondition());
+            output.writeString(group == null ? p.getValue() : null);
+        }
+    }
+
     /**
      * Gets the properties property value.
      *
@@ -178,22 +288,31 @@ public class PropertiesTask extends AbstractTask {
     public void merge(Task other) {
         if (other instanceof PropertiesTask) {
             PropertiesTask opt = (PropertiesTask) other;
-            properties.retainAll(opt.getProperties());
-
+            Set<String> names = new HashSet<String>();
             for (Property op : opt.getProperties()) {
-                boolean exists = false;
-                for (Property p : properties) {
-                    if (p.equals(op)) {
-                        exists = true;
-                        p.setDescription(op.getDescription());
-                        p.setDefaultValue(op.getDefaultValue());
-                        p.setGroup(op.getGroup());
-                        p.setCondition(op.getCondition());
-                        logger.debug("Merging existing Property: {}", p);
-                        break;
-                    }
+                names.add(op.getName());
+            }
+
+            // Keep the existing properties that are still used in their current order
+            Map<String, Property> existing = new HashMap<String, Property>();
+            for (Iterator<Property> i = properties.iterator(); i.hasNext();) {
+                Property p = i.next();
+                if (names.contains(p.getName())) {
+                    existing.put(p.getName(), p);
+                } else {
+                    i.remove();
                 }
-                if (!exists) {
+            }
+
+            for (Property op : opt.getProperties()) {
+                Property p = existing.get(op.getName());
+                if (p != null) {
+                    p.setDescription(op.getDescription());
+                    p.setDefaultValue(op.getDefaultValue());
+                    p.setGroup(op.getGroup());
+                    p.setCondition(op.getCondition());
+                    logger.debug("Merging existing Property: {}", p);
+                } else {
                     logger.debug("Adding new Property: {}", op);
                     properties.add(op);
                 }
@@ -207,7 +326,11 @@ public class PropertiesTask extends AbstractTask {
     @Override
     public boolean isConfigured() throws IOException {
         for (Property p : properties) {
-            if (evaluateCondition(p.getCondition(), getGroupManager().lookupGroup(p.getGroup()))) {
+            if (p.getParsedCondition() instanceof InvalidCondition) {
+                logger.debug("Property has an invalid condition: {}", p);
+                return false;
+            }
+            if (evaluateCondition(p.getParsedCondition(), getGroupManager().lookupGroup(p.getGroup()))) {
                 if (p.getValue() == null || p.getValue().length() == 0) {
                     logger.debug("Property is not configured: {}", p);
                     return false;
@@ -228,7 +351,7 @@ public class PropertiesTask extends AbstractTask {
 
         for (Property p : properties) {
             ConfigGroup group = getGroupManager().lookupGroup(p.getGroup());
-            if (evaluateCondition(p.getCondition(), group)
+            if (evaluateCondition(p.getParsedCondition(), group)
                 && (force || p.getValue() == null || p.getValue().length() == 0)) {
                 configured = configurePropertyInteractively(p, configurer);
                 if (configured) {
@@ -266,7 +389,7 @@ public class PropertiesTask extends AbstractTask {
 
         for (Property p : getProperties()) {
             ConfigGroup group = getGroupManager().lookupGroup(p.getGroup());
-            if (evaluateCondition(p.getCondition(), group)) {
+            if (evaluateCondition(p.getParsedCondition(), group)) {
                 writer.newLine();
                 String description = p.getDescription();
                 if (description != null) {
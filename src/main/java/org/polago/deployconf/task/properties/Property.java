@@ -24,6 +24,10 @@
 
 package org.polago.deployconf.task.properties;
 
+import org.polago.deployconf.condition.Condition;
+import org.polago.deployconf.condition.ConditionCompiler;
+import org.polago.deployconf.condition.ConditionLanguage;
+
 /**
  * A single Property value in a Properties Task.
  */
@@ -40,6 +44,10 @@ public class Property {
 
     private String condition;
 
+    private Condition parsedCondition;
+
+    private ConditionLanguage parsedLanguage;
+
     /**
      * Public Constructor.
      *
@@ -161,6 +169,22 @@ public class Property {
      */
     public void setCondition(String condition) {
         this.condition = condition;
+        parsedCondition = null;
+    }
+
+    /**
+     * Gets the parsed condition, parsing it on first use in each condition language.
+     *
+     * @return the parsed condition or null if there is no condition
+     */
+    public Condition getParsedCondition() {
+        ConditionLanguage language = ConditionCompiler.getLanguage();
+        if (condition != null && (parsedCondition == null || parsedLanguage != language)) {
+            parsedCondition = ConditionCompiler.compile(condition);
+            parsedLanguage = language;
+        }
+
+        return parsedCondition;
     }
 
     /**
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.zip.ZipEntry;
+
+/**
+ * Describes a Zip archive entry whose CRC and sizes are known before it is written.
+ */
+public class ZipArchiveEntry {
+
+    private final String name;
+
+    private String comment;
+
+    private byte[] extra;
+
+    private long dosTime;
+
+    private int method = ZipEntry.DEFLATED;
+
+    private long crc;
+
+    private long size;
+
+    private long compressedSize;
+
+    private long offset = -1;
+
+    private boolean dataDescriptor;
+
+    /**
+     * Public Constructor.
+     *
+     * @param name the entry name
+     */
+    public ZipArchiveEntry(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
+        this.name = name;
+        setTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the name property value.
+     *
+     * @return the current value of the name property
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the comment property value.
+     *
+     * @return the current value of the comment property
+     */
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * Sets the comment property.
+     *
+     * @param comment the new property value
+     */
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    /**
+     * Gets the extra property value.
+     *
+     * @return the current value of the extra property
+     */
+    public byte[] getExtra() {
+        return extra;
+    }
+
+    /**
+     * Sets the extra property.
+     *
+     * @param extra the new property value
+     */
+    public void setExtra(byte[] extra) {
+        this.extra = extra;
+    }
+
+    /**
+     * Gets the data of a field in the extra property.
+     *
+     * @param id the header id of the field
+     * @return the data of the first field with the header id or null if not found
+     */
+    public byte[] getExtraField(int id) {
+        if (extra == null) {
+            return null;
+        }
+        int pos = 0;
+        while (pos + 4 <= extra.length) {
+            int fieldId = getShort(extra, pos);
+            int len = getShort(extra, pos + 2);
+            if (pos + 4 + len > extra.length) {
+                break;
+            }
+            if (fieldId == id) {
+                return Arrays.copyOfRange(extra, pos + 4, pos + 4 + len);
+            }
+            pos += 4 + len;
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets a field in the extra property, replacing any existing fields with the same header id.
+     *
+     * @param id the header id of the field
+     * @param data the data of the field or null to only remove existing fields
+     */
+    public void setExtraField(int id, byte[] data) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        if (extra != null) {
+            int pos = 0;
+            while (pos + 4 <= extra.length) {
+                int len = getShort(extra, pos + 2);
+                if (pos + 4 + len > extra.length) {
+                    break;
+                }
+                if (getShort(extra, pos) != id) {
+                    result.write(extra, pos, 4 + len);
+                }
+                pos += 4 + len;
+            }
+        }
+        if (data != null) {
+            result.write(id & 0xff);
+            result.write((id >> 8) & 0xff);
+            result.write(data.length & 0xff);
+            result.write((data.length >> 8) & 0xff);
+            result.write(data, 0, data.length);
+        }
+        extra = result.toByteArray();
+    }
+
+    /**
+     * Gets the modification time in MS-DOS format.
+     *
+     * @return the current value of the dosTime property
+     */
+    public long getDosTime() {
+        return dosTime;
+    }
+
+    /**
+     * Sets the modification time in MS-DOS format.
+     *
+     * @param dosTime the new property value
+     */
+    public void setDosTime(long dosTime) {
+        this.dosTime = dosTime;
+    }
+
+    /**
+     * Sets the modification time.
+     *
+     * @param time the modification time in milliseconds since the epoch, -1 if unknown
+     */
+    public void setTime(long time) {
+        Calendar c = Calendar.getInstance();
+        if (time != -1) {
+            c.setTimeInMillis(time);
+        }
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) {
+            dosTime = (1 << 21) | (1 << 16);
+        } else {
+            dosTime = (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+                | c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+        }
+    }
+
+    /**
+     * Gets the compression method.
+     *
+     * @return ZipEntry.DEFLATED or ZipEntry.STORED
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * Sets the compression method.
+     *
+     * @param method ZipEntry.DEFLATED or ZipEntry.STORED
+     */
+    public void setMethod(int method) {
+        if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED) {
+            throw new IllegalArgumentException("Unsupported compression method: " + method);
+        }
+        this.method = method;
+    }
+
+    /**
+     * Gets the CRC-32 checksum of the uncompressed data.
+     *
+     * @return the current value of the crc property
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * Sets the CRC-32 checksum of the uncompressed data.
+     *
+     * @param crc the new property value
+     */
+    public void setCrc(long crc) {
+        this.crc = crc;
+    }
+
+    /**
+     * Gets the uncompressed size.
+     *
+     * @return the current value of the size property
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the uncompressed size.
+     *
+     * @param size the new property value
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the compressed size.
+     *
+     * @return the current value of the compressedSize property
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Sets the compressed size.
+     *
+     * @param compressedSize the new property value
+     */
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+
+    /**
+     * Gets the dataDescriptor property value.
+     *
+     * @return true if the CRC and sizes of a DEFLATED entry are written in a data descriptor after its data
+     */
+    public boolean isDataDescriptor() {
+        return dataDescriptor;
+    }
+
+    /**
+     * Sets the dataDescriptor property.
+     *
+     * @param dataDescriptor the new property value
+     */
+    public void setDataDescriptor(boolean dataDescriptor) {
+        this.dataDescriptor = dataDescriptor;
+    }
+
+    /**
+     * Gets the offset of the local header in the archive this entry was read from.
+     *
+     * @return the local header offset or -1 if this entry wasn't read from an archive
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the offset of the local header in the archive this entry was read from.
+     *
+     * @param offset the new property value
+     */
+    void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Create a copy of this entry without the compression specific fields.
+     * <p>
+     * The method, CRC and sizes must be set before the copy is written.
+     *
+     * @return a new ZipArchiveEntry
+     */
+    public ZipArchiveEntry copyHeader() {
+        ZipArchiveEntry result = new ZipArchiveEntry(name);
+        result.setComment(comment);
+        if (extra != null) {
+            result.setExtra(extra.clone());
+        }
+        result.setDosTime(dosTime);
+        result.setMethod(method);
+
+        return result;
+    }
+
+    /**
+     * Read a little-endian unsigned short.
+     *
+     * @param b the bytes to read from
+     * @param pos the position to read at
+     * @return the value
+     */
+    private static int getShort(byte[] b, int pos) {
+        return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ZipArchiveEntry [name=" + name + ", method=" + method + ", size=" + size + ", compressedSize="
+            + compressedSize + "]";
+    }
+
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a Zip archive using random access.
+ * <p>
+ * The archive is memory-mapped and the central directory is read once when the archive is opened. The data of each
+ * entry may then be read either as is using {@link #getRawData(ZipArchiveEntry)}, suitable for
+ * {@link ZipArchiveWriter#writeEntry}, or uncompressed using {@link #getInputStream(ZipArchiveEntry)}. Archives larger
+ * than 2 GB are read using the FileChannel instead. Instances are safe for use by multiple threads. ZIP64 and encrypted
+ * archives are not supported and are reported as a ZipException when opened.
+ */
+public class ZipArchiveReader implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int FLAG_ENCRYPTED = 0x1;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer mapped;
+
+    private final List<ZipArchiveEntry> entries;
+
+    private final Map<String, ZipArchiveEntry> entryMap;
+
+    /**
+     * Public Constructor.
+     *
+     * @param path the archive to read
+     * @throws IOException indicating IO error or an unsupported archive
+     */
+    public ZipArchiveReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                mapped = null;
+            }
+            entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        entryMap = new HashMap<String, ZipArchiveEntry>();
+        for (ZipArchiveEntry e : entries) {
+            if (!entryMap.containsKey(e.getName())) {
+                entryMap.put(e.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets the entries in central directory order.
+     *
+     * @return an unmodifiable List of entries
+     */
+    public List<ZipArchiveEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets an entry by name.
+     *
+     * @param name the entry name
+     * @return the entry or null if not found
+     */
+    public ZipArchiveEntry getEntry(String name) {
+        return entryMap.get(name);
+    }
+
+    /**
+     * Gets the data of an entry as stored in the archive.
+     * <p>
+     * The returned ByteBuffer is a read-only view of the mapped archive and is only valid until this reader is closed.
+     *
+     * @param entry the entry to use
+     * @return a ByteBuffer containing the compressed data
+     * @throws IOException indicating IO error
+     */
+    public ByteBuffer getRawData(ZipArchiveEntry entry) throws IOException {
+        long offset = entry.getOffset();
+        ByteBuffer header = read(offset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry: " + entry.getName());
+        }
+        long dataOffset = offset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        if (entry.getCompressedSize() > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.getName());
+        }
+
+        return read(dataOffset, (int) entry.getCompressedSize());
+    }
+
+    /**
+     * Gets an InputStream for reading the uncompressed data of an entry.
+     *
+     * @param entry the entry to use
+     * @return an InputStream
+     * @throws IOException indicating IO error
+     */
+    public InputStream getInputStream(ZipArchiveEntry entry) throws IOException {
+        InputStream result = new ByteBufferInputStream(getRawData(entry));
+        if (entry.getMethod() == ZipEntry.DEFLATED) {
+            // The Inflater needs an extra dummy byte when using the nowrap option
+            InputStream is = new SequenceInputStream(result, new ByteArrayInputStream(new byte[1]));
+            final Inflater inflater = new Inflater(true);
+            result = new InflaterInputStream(is, inflater) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        super.close();
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Gets the path property value.
+     *
+     * @return the current value of the path property
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Read a region of the archive.
+     *
+     * @param offset the start position
+     * @param len the number of bytes to read
+     * @return a little endian ByteBuffer containing the data
+     * @throws IOException indicating IO error
+     */
+    private ByteBuffer read(long offset, int len) throws IOException {
+        if (mapped != null) {
+            if (offset < 0 || offset + len > mapped.capacity()) {
+                throw new EOFException("Unexpected end of archive: " + path);
+            }
+            ByteBuffer dup = mapped.duplicate();
+            dup.position((int) offset);
+            dup.limit((int) offset + len);
+            return dup.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = offset;
+        while (result.hasRemaining()) {
+            int n = channel.read(result, pos);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of archive: " + path);
+            }
+            pos += n;
+        }
+        result.flip();
+
+        return result;
+    }
+
+    /**
+     * Read all entries from the central directory.
+     *
+     * @return a List of entries
+     * @throws IOException indicating IO error
+     */
+    private List<ZipArchiveEntry> readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("No central directory found in: " + path);
+        }
+        if (end >= 20 && tail.getInt(end - 20) == ZIP64_END_LOCATOR_SIGNATURE) {
+            throw new ZipException("ZIP64 is not supported: " + path);
+        }
+
+        int count = tail.getShort(end + 10) & 0xffff;
+        int cdSize = tail.getInt(end + 12);
+        long cdOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (cdSize < 0 || cdOffset + cdSize > size) {
+            throw new ZipException("Invalid central directory in: " + path);
+        }
+
+        ByteBuffer cd = read(cdOffset, cdSize);
+        List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>(count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > cdSize || cd.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in: " + path);
+            }
+            int flags = cd.getShort(pos + 8) & 0xffff;
+            int method = cd.getShort(pos + 10) & 0xffff;
+            int nameLen = cd.getShort(pos + 28) & 0xffff;
+            int extraLen = cd.getShort(pos + 30) & 0xffff;
+            int commentLen = cd.getShort(pos + 32) & 0xffff;
+
+            String name = getString(cd, pos + CENTRAL_HEADER_SIZE, nameLen);
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                throw new ZipException("Encrypted entries are not supported: " + name);
+            }
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new ZipException("Unsupported compression method " + method + " for entry: " + name);
+            }
+
+            ZipArchiveEntry e = new ZipArchiveEntry(name);
+            e.setMethod(method);
+            e.setDosTime(cd.getInt(pos + 12) & 0xffffffffL);
+            e.setCrc(cd.getInt(pos + 16) & 0xffffffffL);
+            e.setCompressedSize(cd.getInt(pos + 20) & 0xffffffffL);
+            e.setSize(cd.getInt(pos + 24) & 0xffffffffL);
+            e.setOffset(cd.getInt(pos + 42) & 0xffffffffL);
+            e.setDataDescriptor((flags & FLAG_DATA_DESCRIPTOR) != 0);
+            if (extraLen > 0) {
+                byte[] extra = new byte[extraLen];
+                cd.position(pos + CENTRAL_HEADER_SIZE + nameLen);
+                cd.get(extra);
+                e.setExtra(extra);
+            }
+            if (commentLen > 0) {
+                e.setComment(getString(cd, pos + CENTRAL_HEADER_SIZE + nameLen + extraLen, commentLen));
+            }
+            result.add(e);
+
+            pos += CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+        }
+
+        return result;
+    }
+
+    /**
+     * Decode a UTF-8 string from a buffer.
+     *
+     * @param buf the buffer to use
+     * @param offset the string offset
+     * @param len the string length in bytes
+     * @return the decoded String
+     */
+    private static String getString(ByteBuffer buf, int offset, int len) {
+        byte[] b = new byte[len];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.get(b);
+
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,484 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a Zip archive from entries whose data is already compressed.
+ * <p>
+ * Unlike {@link java.util.zip.ZipOutputStream}, the entry data is written as is, allowing entries to be compressed in
+ * parallel or copied from another archive without being inflated and deflated again. Entries too large to be kept in
+ * memory may instead be deflated while they are written using {@link #startEntry(ZipArchiveEntry, int)}. ZIP64
+ * archives are not supported.
+ */
+public class ZipArchiveWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+
+    private static final int FLAG_UTF8 = 0x800;
+
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final int BUF_SIZE = 8192;
+
+    private final OutputStream out;
+
+    private final ByteArrayOutputStream central;
+
+    private final Set<String> names;
+
+    private final byte[] buf;
+
+    private long written;
+
+    private int entries;
+
+    private boolean finished;
+
+    private EntryOutputStream current;
+
+    /**
+     * Public Constructor.
+     *
+     * @param out the OutputStream to write the archive to
+     */
+    public ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+        central = new ByteArrayOutputStream();
+        names = new HashSet<String>();
+        buf = new byte[BUF_SIZE];
+    }
+
+    /**
+     * Write an entry to the archive.
+     *
+     * @param entry the entry describing the data
+     * @param data the data, compressed according to the entry method
+     * @throws IOException indicating IO error
+     */
+    public void writeEntry(ZipArchiveEntry entry, ByteBuffer data) throws IOException {
+        checkEntry(entry);
+        if (data.remaining() != entry.getCompressedSize()) {
+            throw new ZipException("Compressed size mismatch for entry " + entry.getName() + ": "
+                + entry.getCompressedSize() + " != " + data.remaining());
+        }
+        if (entry.getSize() > MAX_SIZE || entry.getCompressedSize() > MAX_SIZE) {
+            throw new ZipException("Entry too large, ZIP64 is not supported: " + entry.getName());
+        }
+
+        int flags = FLAG_UTF8;
+        if (entry.isDataDescriptor() && entry.getMethod() == ZipEntry.DEFLATED) {
+            flags |= FLAG_DATA_DESCRIPTOR;
+        }
+        long offset = writeLocalHeader(entry, flags);
+        writeData(data);
+        if ((flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            writeDataDescriptor(entry);
+        }
+        writeCentralHeader(entry, flags, offset);
+    }
+
+    /**
+     * Start writing a deflated entry whose data is written to the returned OutputStream.
+     * <p>
+     * The data is deflated while it is written, so neither the uncompressed nor the compressed data is kept in memory.
+     * The CRC and sizes are written in a data descriptor after the data and set in the entry when the returned stream
+     * is closed. No other entry may be written until then.
+     *
+     * @param entry the entry to write, its method is set to DEFLATED and its dataDescriptor property to true
+     * @param level the deflate level to use
+     * @return an OutputStream for the uncompressed data that must be closed to finish the entry
+     * @throws IOException indicating IO error
+     */
+    public OutputStream startEntry(ZipArchiveEntry entry, int level) throws IOException {
+        checkEntry(entry);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setDataDescriptor(true);
+
+        long offset = writeLocalHeader(entry, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR);
+        current = new EntryOutputStream(entry, level, offset);
+
+        return current;
+    }
+
+    /**
+     * Check that an entry may be written to the archive.
+     *
+     * @param entry the entry to write
+     * @throws IOException indicating that the entry can't be written
+     */
+    private void checkEntry(ZipArchiveEntry entry) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Archive is already finished");
+        }
+        if (current != null) {
+            throw new IllegalStateException("Entry is still being written: " + current.entry.getName());
+        }
+        if (!names.add(entry.getName())) {
+            throw new ZipException("Duplicate entry: " + entry.getName());
+        }
+        if (entries == MAX_ENTRIES) {
+            throw new ZipException("Too many entries, ZIP64 is not supported");
+        }
+        if (written > MAX_SIZE) {
+            throw new ZipException("Entry too large, ZIP64 is not supported: " + entry.getName());
+        }
+    }
+
+    /**
+     * Gets the version needed to extract an entry.
+     *
+     * @param entry the entry to use
+     * @return the version needed to extract
+     */
+    private static int getVersion(ZipArchiveEntry entry) {
+        return entry.getMethod() == ZipEntry.STORED ? 10 : 20;
+    }
+
+    /**
+     * Write the local header of an entry.
+     *
+     * @param entry the entry to use
+     * @param flags the general purpose flags to use
+     * @return the offset of the local header
+     * @throws IOException indicating IO error
+     */
+    private long writeLocalHeader(ZipArchiveEntry entry, int flags) throws IOException {
+        byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] extra = getExtra(entry);
+        long offset = written;
+        // The CRC and sizes are left as zero when written in a data descriptor
+        boolean known = (flags & FLAG_DATA_DESCRIPTOR) == 0;
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(30 + name.length + extra.length);
+        writeInt(header, LOCAL_HEADER_SIGNATURE);
+        writeShort(header, getVersion(entry));
+        writeShort(header, flags);
+        writeShort(header, entry.getMethod());
+        writeInt(header, entry.getDosTime());
+        writeInt(header, known ? entry.getCrc() : 0);
+        writeInt(header, known ? entry.getCompressedSize() : 0);
+        writeInt(header, known ? entry.getSize() : 0);
+        writeShort(header, name.length);
+        writeShort(header, extra.length);
+        header.write(name);
+        header.write(extra);
+        header.writeTo(out);
+        written += header.size();
+
+        return offset;
+    }
+
+    /**
+     * Write the data descriptor of an entry.
+     *
+     * @param entry the entry to use
+     * @throws IOException indicating IO error
+     */
+    private void writeDataDescriptor(ZipArchiveEntry entry) throws IOException {
+        ByteArrayOutputStream descriptor = new ByteArrayOutputStream(16);
+        writeInt(descriptor, DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(descriptor, entry.getCrc());
+        writeInt(descriptor, entry.getCompressedSize());
+        writeInt(descriptor, entry.getSize());
+        descriptor.writeTo(out);
+        written += descriptor.size();
+    }
+
+    /**
+     * Add the central directory header of a written entry.
+     *
+     * @param entry the entry to use
+     * @param flags the general purpose flags used in the local header
+     * @param offset the offset of the local header
+     * @throws IOException indicating IO error
+     */
+    private void writeCentralHeader(ZipArchiveEntry entry, int flags, long offset) throws IOException {
+        byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] extra = getExtra(entry);
+        byte[] comment = new byte[0];
+        if (entry.getComment() != null) {
+            comment = entry.getComment().getBytes(StandardCharsets.UTF_8);
+        }
+        int version = getVersion(entry);
+
+        writeInt(central, CENTRAL_HEADER_SIGNATURE);
+        writeShort(central, version);
+        writeShort(central, version);
+        writeShort(central, flags);
+        writeShort(central, entry.getMethod());
+        writeInt(central, entry.getDosTime());
+        writeInt(central, entry.getCrc());
+        writeInt(central, entry.getCompressedSize());
+        writeInt(central, entry.getSize());
+        writeShort(central, name.length);
+        writeShort(central, extra.length);
+        writeShort(central, comment.length);
+        writeShort(central, 0);
+        writeShort(central, 0);
+        writeInt(central, 0);
+        writeInt(central, offset);
+        central.write(name);
+        central.write(extra);
+        central.write(comment);
+
+        entries++;
+    }
+
+    /**
+     * Gets the extra data of an entry.
+     *
+     * @param entry the entry to use
+     * @return the extra data, never null
+     */
+    private static byte[] getExtra(ZipArchiveEntry entry) {
+        byte[] result = entry.getExtra();
+        if (result == null) {
+            result = new byte[0];
+        }
+
+        return result;
+    }
+
+    /**
+     * Write the central directory and flush the underlying OutputStream without closing it.
+     *
+     * @throws IOException indicating IO error
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (current != null) {
+            throw new IllegalStateException("Entry is still being written: " + current.entry.getName());
+        }
+        if (written > MAX_SIZE) {
+            throw new ZipException("Archive too large, ZIP64 is not supported");
+        }
+        long offset = written;
+        central.writeTo(out);
+        written += central.size();
+
+        ByteArrayOutputStream end = new ByteArrayOutputStream(22);
+        writeInt(end, END_SIGNATURE);
+        writeShort(end, 0);
+        writeShort(end, 0);
+        writeShort(end, entries);
+        writeShort(end, entries);
+        writeInt(end, central.size());
+        writeInt(end, offset);
+        writeShort(end, 0);
+        end.writeTo(out);
+        written += end.size();
+
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Gets the number of entries written.
+     *
+     * @return the number of entries
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Write the entry data to the underlying OutputStream.
+     *
+     * @param data the data to write
+     * @throws IOException indicating IO error
+     */
+    private void writeData(ByteBuffer data) throws IOException {
+        ByteBuffer b = data.duplicate();
+        if (b.hasArray()) {
+            int len = b.remaining();
+            out.write(b.array(), b.arrayOffset() + b.position(), len);
+            written += len;
+        } else {
+            while (b.hasRemaining()) {
+                int len = Math.min(buf.length, b.remaining());
+                b.get(buf, 0, len);
+                out.write(buf, 0, len);
+                written += len;
+            }
+        }
+    }
+
+    /**
+     * Write a 16 bit little endian value.
+     *
+     * @param os the stream to write to
+     * @param v the value to write
+     */
+    private static void writeShort(ByteArrayOutputStream os, int v) {
+        os.write(v & 0xff);
+        os.write((v >>> 8) & 0xff);
+    }
+
+    /**
+     * Write a 32 bit little endian value.
+     *
+     * @param os the stream to write to
+     * @param v the value to write
+     */
+    private static void writeInt(ByteArrayOutputStream os, long v) {
+        writeShort(os, (int) (v & 0xffff));
+        writeShort(os, (int) ((v >>> 16) & 0xffff));
+    }
+
+    /**
+     * Deflates the data of an entry started by {@link ZipArchiveWriter#startEntry(ZipArchiveEntry, int)} directly to
+     * the archive.
+     */
+    private final class EntryOutputStream extends OutputStream {
+
+        private final ZipArchiveEntry entry;
+
+        private final long offset;
+
+        private final Deflater deflater;
+
+        private final CRC32 crc;
+
+        private final byte[] deflated;
+
+        private long size;
+
+        private long compressedSize;
+
+        private boolean closed;
+
+        /**
+         * Private Constructor.
+         *
+         * @param entry the entry being written
+         * @param level the deflate level to use
+         * @param offset the offset of the local header
+         */
+        private EntryOutputStream(ZipArchiveEntry entry, int level, long offset) {
+            this.entry = entry;
+            this.offset = offset;
+            deflater = new Deflater(level, true);
+            crc = new CRC32();
+            deflated = new byte[BUF_SIZE];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Entry is already closed: " + entry.getName());
+            }
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            size += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                writeDeflated();
+            }
+        }
+
+        /**
+         * Write the next block of deflated data to the archive.
+         *
+         * @throws IOException indicating IO error
+         */
+        private void writeDeflated() throws IOException {
+            int n = deflater.deflate(deflated);
+            if (n > 0) {
+                out.write(deflated, 0, n);
+                written += n;
+                compressedSize += n;
+            }
+        }
+
+        /**
+         * Finish the entry by writing the remaining deflated data and the data descriptor. The archive isn't closed.
+         *
+         * @throws IOException indicating IO error
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    writeDeflated();
+                }
+            } finally {
+                deflater.end();
+            }
+            if (size > MAX_SIZE || compressedSize > MAX_SIZE) {
+                throw new ZipException("Entry too large, ZIP64 is not supported: " + entry.getName());
+            }
+            entry.setCrc(crc.getValue());
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+
+            writeDataDescriptor(entry);
+            writeCentralHeader(entry, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, offset);
+            current = null;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compresses entry data in memory for use with a {@link ZipArchiveWriter}.
+ */
+public final class ZipCompressor {
+
+    private static final int BUF_SIZE = 8192;
+
+    /**
+     * Private Constructor.
+     */
+    private ZipCompressor() {
+    }
+
+    /**
+     * Deflate the given data and update the entry method, CRC and sizes.
+     *
+     * @param entry the entry to update
+     * @param data the uncompressed data
+     * @param len the number of bytes to use from data
+     * @param level the deflate level to use
+     * @return the compressed data
+     */
+    public static ByteBuffer deflate(ZipArchiveEntry entry, byte[] data, int len, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(len / 2 + 64);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, len);
+            deflater.finish();
+            byte[] buf = new byte[BUF_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                result.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setCrc(crc.getValue());
+        entry.setSize(len);
+        entry.setCompressedSize(result.size());
+
+        return ByteBuffer.wrap(result.toByteArray());
+    }
+
+    /**
+     * Store the given data without compression and update the entry method, CRC and sizes.
+     *
+     * @param entry the entry to update
+     * @param data the uncompressed data
+     * @param len the number of bytes to use from data
+     * @return the stored data
+     */
+    public static ByteBuffer store(ZipArchiveEntry entry, byte[] data, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+
+        entry.setMethod(ZipEntry.STORED);
+        entry.setCrc(crc.getValue());
+        entry.setSize(len);
+        entry.setCompressedSize(len);
+
+        return ByteBuffer.wrap(data, 0, len);
+    }
+
+}
@@ -0,0 +1,7 @@
+/**
+ * <p>
+ * Provides classes for reading and writing Zip archives entry by entry.
+ * </p>
+ */
+
+package org.polago.deployconf.zip;
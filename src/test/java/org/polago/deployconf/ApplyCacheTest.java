@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polago.deployconf.group.ConfigGroup;
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+
+/**
+ * Tests the {@link ApplyCache} class.
+ */
+public class ApplyCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DeploymentConfig loadConfig(ConfigGroupManager groupManager) throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream("testgroup-deployment-config.xml");
+        assertNotNull(is);
+        try {
+            return new DeploymentReader(is, groupManager).parse();
+        } finally {
+            is.close();
+        }
+    }
+
+    private Path newFile(String name, byte[] content) throws Exception {
+        Path result = folder.getRoot().toPath().resolve(name);
+        Files.write(result, content);
+        return result;
+    }
+
+    @Test
+    public void testSameInputGivesSameKey() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        Path source = newFile("input.zip", "input".getBytes());
+        ConfigGroupManager groupManager = new InMemoryConfigGroupManager();
+
+        String key = cache.computeKey(source, loadConfig(groupManager), "settings");
+        assertEquals(key, cache.computeKey(source, loadConfig(groupManager), "settings"));
+        assertEquals(64, key.length());
+    }
+
+    @Test
+    public void testChangedInputGivesNewKey() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        Path source = newFile("input.zip", "input".getBytes());
+        DeploymentConfig config = loadConfig(new InMemoryConfigGroupManager());
+
+        String key = cache.computeKey(source, config, "settings");
+        assertFalse(key.equals(cache.computeKey(source, config, "other settings")));
+
+        Files.write(source, "changed".getBytes());
+        assertFalse(key.equals(cache.computeKey(source, config, "settings")));
+    }
+
+    @Test
+    public void testChangedGroupGivesNewKey() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        Path source = newFile("input.zip", "input".getBytes());
+        ConfigGroupManager groupManager = new InMemoryConfigGroupManager();
+        DeploymentConfig config = loadConfig(groupManager);
+
+        String key = cache.computeKey(source, config, "settings");
+        groupManager.lookupGroup("testgroup").setProperty("ldap.server", "ldap://remote");
+        assertFalse(key.equals(cache.computeKey(source, config, "settings")));
+    }
+
+    @Test
+    public void testGroupWithoutPropertyNamesGivesNoKey() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        Path source = newFile("input.zip", "input".getBytes());
+        ConfigGroupManager groupManager = new InMemoryConfigGroupManager() {
+            @Override
+            protected ConfigGroup newGroup() {
+                return new ConfigGroup() {
+                    @Override
+                    public String getProperty(String name) {
+                        return null;
+                    }
+
+                    @Override
+                    public void setProperty(String name, String value) {
+                    }
+                };
+            }
+        };
+
+        assertNull(cache.computeKey(source, loadConfig(groupManager), "settings"));
+    }
+
+    @Test
+    public void testRestoreMiss() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        Path dest = folder.getRoot().toPath().resolve("output.zip");
+
+        assertFalse(cache.restore("missing", dest));
+        assertFalse(Files.exists(dest));
+    }
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        ApplyCache cache = new ApplyCache(folder.newFolder("cache").toPath(), 1024);
+        byte[] content = "output".getBytes();
+        Path output = newFile("output.zip", content);
+        Path dest = newFile("restored.zip", "old".getBytes());
+
+        cache.store("key", output);
+        assertTrue(cache.restore("key", dest));
+        assertTrue(Arrays.equals(content, Files.readAllBytes(dest)));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        Path dir = folder.newFolder("cache").toPath();
+        ApplyCache cache = new ApplyCache(dir, 25);
+        Path output = newFile("output.zip", "0123456789".getBytes());
+
+        cache.store("a", output);
+        Files.setLastModifiedTime(dir.resolve("a.zip"), FileTime.fromMillis(1000));
+        cache.store("b", output);
+        Files.setLastModifiedTime(dir.resolve("b.zip"), FileTime.fromMillis(2000));
+        cache.store("c", output);
+
+        assertFalse(Files.exists(dir.resolve("a.zip")));
+        assertTrue(Files.exists(dir.resolve("b.zip")));
+        assertTrue(Files.exists(dir.resolve("c.zip")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() throws Exception {
+        new ApplyCache(folder.newFolder("cache").toPath(), 0);
+    }
+
+}
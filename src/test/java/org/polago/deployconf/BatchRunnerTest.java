@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polago.deployconf.DeployConfRunner.RunMode;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+
+/**
+ * Tests the {@link BatchRunner} class.
+ */
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path createArtifact(String name) throws IOException {
+        Path result = folder.getRoot().toPath().resolve(name);
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(result));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                InputStream is = getClass().getClassLoader().getResourceAsStream("simple-test/" + r);
+                assertNotNull(is);
+                os.addStream(is, r);
+            }
+        } finally {
+            os.close();
+        }
+
+        return result;
+    }
+
+    private DeployConfRunner createRunner() throws IOException {
+        Path repo = folder.newFolder("repo").toPath();
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            repo.resolve("simple-" + DeployConfRunner.DEPLOYMENT_CONFIG_SUFFIX));
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        runner.setRepositoryDirectory(repo.toString());
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+
+        return runner;
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        DeployConfRunner runner = createRunner();
+        List<BatchRunner.Job> jobs = new ArrayList<BatchRunner.Job>();
+        for (int i = 0; i < 6; i++) {
+            Path src = createArtifact("input-" + i + ".zip");
+            jobs.add(new BatchRunner.Job(src.toString(), src.resolveSibling("output-" + i + ".zip").toString()));
+        }
+
+        assertEquals(0, new BatchRunner(runner, 3).run(jobs));
+        for (BatchRunner.Job job : jobs) {
+            assertEquals(0, job.getStatus());
+            assertTrue(Files.exists(folder.getRoot().toPath().resolve(job.getDestination())));
+        }
+    }
+
+    @Test
+    public void testRunWithFailingArtifact() throws Exception {
+        DeployConfRunner runner = createRunner();
+        Path src = createArtifact("input.zip");
+        List<BatchRunner.Job> jobs = BatchRunner.fromArguments(Arrays.asList(src.toString(),
+            src.resolveSibling("output.zip").toString(), src.resolveSibling("missing.zip").toString(),
+            src.resolveSibling("output-missing.zip").toString()));
+
+        assertEquals(BatchRunner.STATUS_ERROR, new BatchRunner(runner, 2).run(jobs));
+        assertEquals(0, jobs.get(0).getStatus());
+        assertEquals(BatchRunner.STATUS_ERROR, jobs.get(1).getStatus());
+        assertNotNull(jobs.get(1).getError());
+    }
+
+    @Test
+    public void testReadManifest() throws Exception {
+        Path manifest = folder.newFile("manifest.txt").toPath();
+        Files.write(manifest, "# comment\n\na.war  out/a.war\n b.war\tout/b.war \n".getBytes(StandardCharsets.UTF_8));
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+        assertEquals(2, jobs.size());
+        assertEquals("a.war", jobs.get(0).getSource());
+        assertEquals("out/a.war", jobs.get(0).getDestination());
+        assertEquals("b.war", jobs.get(1).getSource());
+        assertEquals("out/b.war", jobs.get(1).getDestination());
+        assertEquals(-1, jobs.get(1).getStatus());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidManifest() throws Exception {
+        Path manifest = folder.newFile("manifest.txt").toPath();
+        Files.write(manifest, "a.war\n".getBytes(StandardCharsets.UTF_8));
+        BatchRunner.readManifest(manifest);
+    }
+
+    @Test
+    public void testReadQuotedManifest() throws Exception {
+        Path manifest = folder.newFile("manifest.txt").toPath();
+        Files.write(manifest, "\"my app.war\" \"out dir/my app.war\"\n".getBytes(StandardCharsets.UTF_8));
+        List<BatchRunner.Job> jobs = BatchRunner.readManifest(manifest);
+        assertEquals(1, jobs.size());
+        assertEquals("my app.war", jobs.get(0).getSource());
+        assertEquals("out dir/my app.war", jobs.get(0).getDestination());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadUnterminatedQuoteManifest() throws Exception {
+        Path manifest = folder.newFile("manifest.txt").toPath();
+        Files.write(manifest, "\"my app.war out.war\n".getBytes(StandardCharsets.UTF_8));
+        BatchRunner.readManifest(manifest);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOddArguments() {
+        BatchRunner.fromArguments(Arrays.asList("a.war"));
+    }
+
+}
@@ -35,6 +35,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -44,6 +45,7 @@ import org.junit.rules.TemporaryFolder;
 import org.polago.deployconf.DeployConfRunner.RunMode;
 import org.polago.deployconf.group.FileSystemConfigGroupManager;
 import org.polago.deployconf.group.InMemoryConfigGroupManager;
+import org.polago.deployconf.stats.RunStatistics;
 
 /**
  * Tests the {@link DeployConfRunner} class.
@@ -322,6 +324,202 @@ public class DeployConfRunnerTest {
         }
     }
 
+    @Test
+    public void testRunWithApplyCache() throws Exception {
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path cachedFile = folder.getRoot().toPath().resolve("cached.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+        Path cacheDir = folder.getRoot().toPath().resolve("cache");
+
+        runner.setDeploymentConfigPath(configFile);
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+        runner.setApplyCache(new ApplyCache(cacheDir, 1024 * 1024));
+
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertEquals(1, cacheDir.toFile().list().length);
+
+        assertEquals(0, runner.run(srcFile.toString(), cachedFile.toString()));
+        assertEquals(1, cacheDir.toFile().list().length);
+        assertArrayEquals(Files.readAllBytes(destFile), Files.readAllBytes(cachedFile));
+    }
+
+    @Test
+    public void testRunWithoutApplyCacheKeepsCachedOutput() throws Exception {
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path otherFile = folder.getRoot().toPath().resolve("other.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+        Path otherConfigFile = folder.getRoot().toPath().resolve("other-config.xml");
+        Path cacheDir = folder.getRoot().toPath().resolve("cache");
+
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        runner.setDeploymentConfigPath(configFile);
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+        runner.setApplyCache(new ApplyCache(cacheDir, 1024 * 1024));
+
+        DeployConfRunner uncached = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        uncached.setDeploymentConfigPath(otherConfigFile);
+        uncached.setGroupManager(new InMemoryConfigGroupManager());
+
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+        String otherConfig = new String(Files.readAllBytes(configFile), "UTF-8");
+        Files.write(otherConfigFile, otherConfig.replace("/var/log", "/other/log").getBytes("UTF-8"));
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        assertEquals(0, runner.run(srcFile.toString(), otherFile.toString()));
+        byte[] expected = Files.readAllBytes(otherFile);
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertArrayEquals(expected, Files.readAllBytes(destFile));
+
+        assertEquals(0, uncached.run(srcFile.toString(), destFile.toString()));
+        assertFalse(Arrays.equals(expected, Files.readAllBytes(destFile)));
+
+        assertEquals(0, runner.run(srcFile.toString(), otherFile.toString()));
+        assertArrayEquals(expected, Files.readAllBytes(otherFile));
+    }
+
+    @Test
+    public void testRunIncremental() throws Exception {
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+
+        runner.setDeploymentConfigPath(configFile);
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+        runner.setIncremental(true);
+
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        byte[] expected = Files.readAllBytes(destFile);
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertArrayEquals(expected, Files.readAllBytes(destFile));
+        for (String name : folder.getRoot().list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void testRunWithStatistics() throws Exception {
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+
+        runner.setDeploymentConfigPath(configFile);
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+        RunStatistics statistics = new RunStatistics();
+        runner.setStatistics(statistics);
+
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertFalse(RunStatistics.current().isEnabled());
+
+        Map<String, Long> counters = statistics.getCounters();
+        assertEquals(Long.valueOf(1), counters.get(RunStatistics.ARTIFACTS));
+        assertEquals(Long.valueOf(2), counters.get(RunStatistics.ENTRIES_FILTERED));
+        assertEquals(Long.valueOf(1), counters.get(RunStatistics.ENTRIES_COPIED));
+        assertEquals(Long.valueOf(Files.size(srcFile)), counters.get(RunStatistics.INPUT_SIZE));
+        assertEquals(Long.valueOf(Files.size(destFile)), counters.get(RunStatistics.BYTES_WRITTEN));
+        Map<String, Long> times = statistics.getTimes();
+        assertTrue(times.containsKey(RunStatistics.TEMPLATE));
+        assertTrue(times.containsKey(RunStatistics.PARSE));
+        assertTrue(times.containsKey(RunStatistics.MERGE));
+        assertTrue(times.containsKey(RunStatistics.APPLY));
+        assertEquals(2, statistics.getTaskTimes().size());
+    }
+
+    @Test
+    public void testRunWithSnapshot() throws Exception {
+        DeployConfRunner runner = new DeployConfRunner(RunMode.NON_INTERACTIVE);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+        Path snapshotFile = folder.getRoot().toPath().resolve("config.xml.snapshot");
+
+        runner.setDeploymentConfigPath(configFile);
+        runner.setGroupManager(new InMemoryConfigGroupManager());
+        runner.setSnapshot(true);
+
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertTrue(Files.exists(snapshotFile));
+        byte[] expected = Files.readAllBytes(destFile);
+        byte[] snapshot = Files.readAllBytes(snapshotFile);
+
+        assertEquals(0, runner.run(srcFile.toString(), destFile.toString()));
+        assertArrayEquals(expected, Files.readAllBytes(destFile));
+        assertArrayEquals(snapshot, Files.readAllBytes(snapshotFile));
+    }
+
     private void assertEqualStreamContent(String msg, InputStream is1, InputStream is2) throws IOException {
 
         InputStreamReader r1 = new InputStreamReader(is1, "UTF-8");
@@ -344,4 +542,22 @@ public class DeployConfRunnerTest {
         assertEquals(msg, w1.getBuffer().toString(), w2.getBuffer().toString());
     }
 
+    @Test
+    public void testInvalidParallelismIsUsageError() throws Exception {
+        String repo = folder.newFolder("repo").toString();
+        assertEquals(1, DeployConfRunner.execute(new String[] {"-r", repo, "-p", "0", "a.war", "b.war"}, null, null,
+            null));
+        assertEquals(1, DeployConfRunner.execute(new String[] {"-r", repo, "-p", "abc", "a.war", "b.war"}, null, null,
+            null));
+    }
+
+    @Test
+    public void testInvalidConcurrencyIsUsageError() throws Exception {
+        String repo = folder.newFolder("repo").toString();
+        assertEquals(1, DeployConfRunner.execute(new String[] {"-r", repo, "-c", "abc", "a.war", "b.war", "c.war",
+            "d.war"}, null, null, null));
+        assertEquals(1, DeployConfRunner.execute(new String[] {"-r", repo, "-c", "-1", "a.war", "b.war", "c.war",
+            "d.war"}, null, null, null));
+    }
+
 }
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link DeployConfServer} and {@link DeployConfClient} classes.
+ */
+public class DeployConfServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path repo;
+
+    private DeployConfServer server;
+
+    private Thread serverThread;
+
+    @Before
+    public void setUp() throws Exception {
+        repo = folder.newFolder("repo").toPath();
+        server = new DeployConfServer(repo);
+        serverThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        serverThread.join();
+    }
+
+    @Test
+    public void testServerFile() throws Exception {
+        assertTrue(Files.exists(server.getServerFile()));
+        Properties properties = new Properties();
+        InputStream is = Files.newInputStream(server.getServerFile());
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        assertEquals(String.valueOf(server.getPort()), properties.getProperty(DeployConfServer.PROPERTY_PORT));
+        assertNotNull(properties.getProperty(DeployConfServer.PROPERTY_TOKEN));
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        Path srcFile = createInput();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = createConfig();
+
+        String[] args = {"-r", repo.toString(), "-f", configFile.toString(), srcFile.toString(),
+            destFile.toString()};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        assertEquals(0, DeployConfClient.execute(repo, args, null, out, err));
+        assertTrue(Files.exists(destFile));
+        byte[] expected = Files.readAllBytes(destFile);
+
+        Files.delete(destFile);
+        assertEquals(0, DeployConfClient.execute(repo, args, null, out, err));
+        assertArrayEquals(expected, Files.readAllBytes(destFile));
+        assertSame(server.getGroupManager(repo), server.getGroupManager(repo));
+    }
+
+    @Test
+    public void testExecuteWritesOutput() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        assertEquals(0, DeployConfClient.execute(repo, new String[] {"-v"}, null, out, err));
+        assertTrue(out.toString("UTF-8").contains(" version "));
+    }
+
+    @Test
+    public void testExecuteRejectsServerOption() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        String[] args = {"-r", repo.toString(), "--server"};
+        assertEquals(1, DeployConfClient.execute(repo, args, null, out, err));
+    }
+
+    @Test
+    public void testInvalidTokenIsRejected() throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+            os.writeUTF("invalid");
+            os.flush();
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testSilentClientTimesOut() throws Exception {
+        server.setHandshakeTimeout(100);
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(0, DeployConfClient.execute(repo, new String[] {"-v"}, null, out, out));
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidCommandDoesNotStopServer() throws Exception {
+        sendInvalidCommand("/tmp", -1);
+        sendInvalidCommand("/tmp", Integer.MAX_VALUE);
+        sendInvalidCommand("invalid\0path", 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, DeployConfClient.execute(repo, new String[] {"-v"}, null, out, out));
+    }
+
+    @Test
+    public void testExecuteWithoutServer() throws Exception {
+        Path other = folder.newFolder("other").toPath();
+        OutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(DeployConfClient.STATUS_NO_SERVER,
+            DeployConfClient.execute(other, new String[] {"-v"}, null, out, out));
+    }
+
+    @Test
+    public void testGetRepository() {
+        Path home = DeployConfClient.getRepository(new String[0], null);
+        assertTrue(home.toString().endsWith(".deployconf_repo"));
+        assertEquals(repo, DeployConfClient.getRepository(new String[] {"-r", repo.toString()}, null));
+        assertEquals(repo, DeployConfClient.getRepository(new String[] {"--repo=" + repo}, null));
+        assertEquals(repo, DeployConfClient.getRepository(new String[] {"-r" + repo}, null));
+        assertEquals(repo, DeployConfClient.getRepository(new String[0], repo.toString()));
+    }
+
+    @Test
+    public void testRunWithoutServer() throws Exception {
+        Path other = folder.newFolder("other").toPath();
+        Path srcFile = createInput();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = createConfig();
+
+        String[] args = {"-r", other.toString(), "-f", configFile.toString(), srcFile.toString(), destFile.toString()};
+        assertEquals(0, DeployConfClient.run(args, null));
+        assertTrue(Files.exists(destFile));
+    }
+
+    @Test
+    public void testRunDoesNotRepeatFailedCommand() throws Exception {
+        Path other = folder.newFolder("other").toPath();
+        Path srcFile = createInput();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = createConfig();
+
+        final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        try {
+            Properties properties = new Properties();
+            properties.setProperty(DeployConfServer.PROPERTY_PORT, String.valueOf(serverSocket.getLocalPort()));
+            properties.setProperty(DeployConfServer.PROPERTY_TOKEN, "token");
+            OutputStream os = Files.newOutputStream(other.resolve(DeployConfServer.SERVER_FILE));
+            try {
+                properties.store(os, null);
+            } finally {
+                os.close();
+            }
+            Thread brokenServer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        DataInputStream is = new DataInputStream(socket.getInputStream());
+                        is.readUTF();
+                        socket.close();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            brokenServer.start();
+
+            String[] args =
+                {"-r", other.toString(), "-f", configFile.toString(), srcFile.toString(), destFile.toString()};
+            assertEquals(DeployConfClient.STATUS_ERROR, DeployConfClient.run(args, null));
+            assertFalse(Files.exists(destFile));
+            brokenServer.join();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    private Path createInput() throws Exception {
+        Path result = folder.newFile("input.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(result));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        return result;
+    }
+
+    private void sendInvalidCommand(String workingDirectory, int count) throws IOException {
+        Properties properties = new Properties();
+        InputStream is = Files.newInputStream(server.getServerFile());
+        try {
+            properties.load(is);
+        } finally {
+            is.close();
+        }
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+            os.writeUTF(properties.getProperty(DeployConfServer.PROPERTY_TOKEN));
+            os.writeUTF(workingDirectory);
+            os.writeBoolean(false);
+            os.writeInt(count);
+            os.flush();
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Path createConfig() throws Exception {
+        Path result = folder.getRoot().toPath().resolve("config.xml");
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            result);
+
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+import org.polago.deployconf.stats.RunStatistics;
+
+/**
+ * Tests the {@link DeployConf} class.
+ */
+public class DeployConfTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testApply() throws Exception {
+        Path srcFile = createInput();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path configFile = folder.getRoot().toPath().resolve("config.xml");
+        Files.copy(getClass().getClassLoader().getResourceAsStream("simple-test-expected/deployment-config.xml"),
+            configFile);
+
+        DeployConf deployConf = DeployConf.builder().repository(folder.getRoot().toPath())
+            .groupManager(new InMemoryConfigGroupManager()).deploymentConfigPath(configFile).statistics(true).build();
+        DeployConfResult result = deployConf.apply(srcFile, destFile);
+
+        assertTrue(result.isComplete());
+        assertEquals(DeployConfResult.STATUS_OK, result.getStatus());
+        assertEquals(configFile, result.getDeploymentConfigPath());
+        assertTrue(Files.exists(destFile));
+        assertEquals(Long.valueOf(1), result.getStatistics().getCounters().get(RunStatistics.ARTIFACTS));
+    }
+
+    @Test
+    public void testApplyWithIncompleteConfig() throws Exception {
+        Path srcFile = createInput();
+        Path destFile = folder.getRoot().toPath().resolve("output.zip");
+        Path repo = folder.getRoot().toPath().resolve("repo");
+
+        DeployConf deployConf = DeployConf.builder().repository(repo).build();
+        assertTrue(Files.isDirectory(repo));
+        assertTrue(deployConf.getGroupManager() instanceof FileSystemConfigGroupManager);
+
+        DeployConfResult result = deployConf.apply(srcFile, destFile);
+
+        assertFalse(result.isComplete());
+        assertEquals(DeployConfResult.STATUS_INCOMPLETE, result.getStatus());
+        assertEquals(repo, result.getDeploymentConfigPath().getParent());
+        assertTrue(Files.exists(result.getDeploymentConfigPath()));
+        assertFalse(Files.exists(destFile));
+        assertNull(result.getStatistics());
+    }
+
+    private Path createInput() throws Exception {
+        Path result = folder.newFile("input.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(result));
+        String[] zipFiles =
+            {"deploy.properties", "logging.xml", "plain.properties", "META-INF/deployment-template.xml"};
+        try {
+            for (String r : zipFiles) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + r), r);
+            }
+        } finally {
+            os.close();
+        }
+
+        return result;
+    }
+}
@@ -26,16 +26,27 @@ package org.polago.deployconf;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.jdom2.Element;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.polago.deployconf.stats.RunStatistics;
+import org.polago.deployconf.zip.ZipArchiveReader;
 
 /**
  * Tests the {@link DeploymentConfig} class.
@@ -267,4 +278,366 @@ public class DeploymentConfigTest {
         destZipFile.close();
     }
 
+    @Test
+    public void testApplyParallel() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        config.setParallelism(4);
+        TestTask task = new TestTask();
+        String zipPath = "deploy.properties";
+        String ignorePath = "ignore.xml";
+        task.path = zipPath;
+        config.addTask(task);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.newFile("output.zip").toPath();
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            String name = "entry-" + i + ".xml";
+            os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/logging.xml"), name);
+            expected.add(name);
+            if (i == 10) {
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + zipPath), zipPath);
+                expected.add(zipPath);
+                os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/logging.xml"),
+                    ignorePath);
+            }
+        }
+        os.close();
+        OutputStream dest = Files.newOutputStream(destFile);
+        config.apply(srcFile, dest, ignorePath);
+        dest.close();
+        assertTrue(task.applied);
+
+        ZipFile srcZipFile = new ZipFile(srcFile.toFile());
+        ZipFile destZipFile = new ZipFile(destFile.toFile());
+        List<String> actual = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> entries = destZipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry e = entries.nextElement();
+            actual.add(e.getName());
+            if (!e.getName().equals(zipPath)) {
+                ZipEntry srcEntry = srcZipFile.getEntry(e.getName());
+                assertEquals(srcEntry.getCrc(), e.getCrc());
+                assertEquals(srcEntry.getSize(), e.getSize());
+            }
+        }
+        assertEquals(expected, actual);
+        assertEquals(0, destZipFile.getEntry(zipPath).getSize());
+        srcZipFile.close();
+        destZipFile.close();
+    }
+
+    @Test
+    public void testApplyCopiesUntouchedEntriesRaw() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        TestTask task = new TestTask();
+        String zipPath = "deploy.properties";
+        task.path = zipPath;
+        config.addTask(task);
+        Path srcFile = folder.newFile("input.zip").toPath();
+        Path destFile = folder.newFile("output.zip").toPath();
+
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        os.setLevel(Deflater.BEST_SPEED);
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/logging.xml"), "logging.xml");
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + zipPath), zipPath);
+        os.close();
+        OutputStream dest = Files.newOutputStream(destFile);
+        config.apply(srcFile, dest, null);
+        dest.close();
+        assertTrue(task.applied);
+
+        ZipFile srcZipFile = new ZipFile(srcFile.toFile());
+        ZipFile destZipFile = new ZipFile(destFile.toFile());
+        ZipEntry srcEntry = srcZipFile.getEntry("logging.xml");
+        ZipEntry destEntry = destZipFile.getEntry("logging.xml");
+        assertEquals(srcEntry.getCrc(), destEntry.getCrc());
+        assertEquals(srcEntry.getCompressedSize(), destEntry.getCompressedSize());
+        assertEquals(srcEntry.getTime(), destEntry.getTime());
+        assertNotNull(destZipFile.getEntry(zipPath));
+        srcZipFile.close();
+        destZipFile.close();
+    }
+
+    private Path createStoredZip(String... names) throws IOException {
+        Path srcFile = folder.newFile("stored.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        byte[] data = "a=b\n".getBytes(StandardCharsets.ISO_8859_1);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        for (String name : names) {
+            ZipEntry e = new ZipEntry(name);
+            e.setMethod(ZipEntry.STORED);
+            e.setSize(data.length);
+            e.setCrc(crc.getValue());
+            os.putNextEntry(e);
+            os.write(data);
+            os.closeEntry();
+        }
+        os.close();
+
+        return srcFile;
+    }
+
+    private void assertStored(Path file, String name, String expected) throws IOException {
+        ZipFile zipFile = new ZipFile(file.toFile());
+        ZipEntry e = zipFile.getEntry(name);
+        assertEquals(ZipEntry.STORED, e.getMethod());
+        byte[] b = new byte[(int) e.getSize()];
+        InputStream is = zipFile.getInputStream(e);
+        int len = 0;
+        while (len < b.length) {
+            len += is.read(b, len, b.length - len);
+        }
+        is.close();
+        assertEquals(expected, new String(b, StandardCharsets.ISO_8859_1));
+        zipFile.close();
+    }
+
+    private DeploymentConfig createRewritingConfig(String path) {
+        DeploymentConfig config = new DeploymentConfig();
+        TestTask task = new TestTask() {
+            @Override
+            public void apply(InputStream source, OutputStream destination) {
+                try {
+                    destination.write("a=c\n".getBytes(StandardCharsets.ISO_8859_1));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        task.path = path;
+        config.addTask(task);
+
+        return config;
+    }
+
+    @Test
+    public void testApplyStreamPreservesStoredEntries() throws Exception {
+        DeploymentConfig config = createRewritingConfig("deploy.properties");
+        Path srcFile = createStoredZip("deploy.properties", "nested.jar");
+        Path destFile = folder.newFile("output.zip").toPath();
+
+        InputStream src = Files.newInputStream(srcFile);
+        OutputStream dest = Files.newOutputStream(destFile);
+        config.apply(src, dest, null);
+        src.close();
+        dest.close();
+        assertStored(destFile, "deploy.properties", "a=c\n");
+        assertStored(destFile, "nested.jar", "a=b\n");
+    }
+
+    @Test
+    public void testApplyPathPreservesStoredEntries() throws Exception {
+        DeploymentConfig config = createRewritingConfig("deploy.properties");
+        config.setCompressionLevel(Deflater.BEST_COMPRESSION);
+        Path srcFile = createStoredZip("deploy.properties", "nested.jar");
+        Path destFile = folder.newFile("output.zip").toPath();
+
+        OutputStream dest = Files.newOutputStream(destFile);
+        config.apply(srcFile, dest, null);
+        dest.close();
+        assertStored(destFile, "deploy.properties", "a=c\n");
+        assertStored(destFile, "nested.jar", "a=b\n");
+    }
+
+    private DeploymentConfig createWritingConfig(String path, final String content) {
+        DeploymentConfig config = new DeploymentConfig();
+        TestTask task = new TestTask() {
+            @Override
+            public void serialize(Element node) {
+                node.setAttribute("content", content);
+            }
+
+            @Override
+            public void apply(InputStream source, OutputStream destination) {
+                applied = true;
+                try {
+                    for (int i = 0; i < 100; i++) {
+                        destination.write(content.getBytes(StandardCharsets.ISO_8859_1));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        task.path = path;
+        config.addTask(task);
+
+        return config;
+    }
+
+    private Path applyIncremental(DeploymentConfig config, Path srcFile, Path previousFile) throws Exception {
+        Path destFile = folder.newFile().toPath();
+        ZipArchiveReader reader = new ZipArchiveReader(srcFile);
+        ZipArchiveReader previous = previousFile != null ? new ZipArchiveReader(previousFile) : null;
+        OutputStream dest = Files.newOutputStream(destFile);
+        try {
+            config.apply(reader, previous, dest, null);
+        } finally {
+            dest.close();
+            reader.close();
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        return destFile;
+    }
+
+    @Test
+    public void testApplyIncremental() throws Exception {
+        String zipPath = "deploy.properties";
+        Path srcFile = folder.newFile("input.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/logging.xml"), "logging.xml");
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + zipPath), zipPath);
+        os.close();
+
+        DeploymentConfig config = createWritingConfig(zipPath, "a=b\n");
+        config.setCompressionLevel(Deflater.NO_COMPRESSION);
+        Path previousFile = applyIncremental(config, srcFile, null);
+
+        config.setCompressionLevel(Deflater.BEST_COMPRESSION);
+        Path unchangedFile = applyIncremental(config, srcFile, previousFile);
+
+        DeploymentConfig changed = createWritingConfig(zipPath, "a=c\n");
+        changed.setCompressionLevel(Deflater.BEST_COMPRESSION);
+        Path changedFile = applyIncremental(changed, srcFile, previousFile);
+
+        ZipFile previousZipFile = new ZipFile(previousFile.toFile());
+        ZipFile unchangedZipFile = new ZipFile(unchangedFile.toFile());
+        ZipFile changedZipFile = new ZipFile(changedFile.toFile());
+        try {
+            ZipEntry previousEntry = previousZipFile.getEntry(zipPath);
+            ZipEntry unchangedEntry = unchangedZipFile.getEntry(zipPath);
+            ZipEntry changedEntry = changedZipFile.getEntry(zipPath);
+            assertEquals(previousEntry.getCrc(), unchangedEntry.getCrc());
+            assertEquals(previousEntry.getCompressedSize(), unchangedEntry.getCompressedSize());
+            assertNotEquals(previousEntry.getCrc(), changedEntry.getCrc());
+            assertTrue(changedEntry.getCompressedSize() < previousEntry.getCompressedSize());
+            assertNotNull(unchangedZipFile.getEntry("logging.xml"));
+        } finally {
+            previousZipFile.close();
+            unchangedZipFile.close();
+            changedZipFile.close();
+        }
+    }
+
+    @Test
+    public void testApplyIncrementalSkipsTasksForUnchangedEntries() throws Exception {
+        String zipPath = "deploy.properties";
+        Path srcFile = folder.newFile("input.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + zipPath), zipPath);
+        os.close();
+
+        DeploymentConfig config = createWritingConfig(zipPath, "a=b\n");
+        Path previousFile = applyIncremental(config, srcFile, null);
+        TestTask task = (TestTask) config.getTasks().get(0);
+        assertTrue(task.applied);
+
+        task.applied = false;
+        RunStatistics stats = new RunStatistics();
+        RunStatistics previousStats = RunStatistics.setCurrent(stats);
+        Path unchangedFile;
+        try {
+            unchangedFile = applyIncremental(config, srcFile, previousFile);
+        } finally {
+            RunStatistics.setCurrent(previousStats);
+        }
+        assertFalse(task.applied);
+        assertEquals(Long.valueOf(1), stats.getCounters().get(RunStatistics.ENTRIES_REUSED));
+
+        DeploymentConfig changed = createWritingConfig(zipPath, "a=c\n");
+        Path changedFile = applyIncremental(changed, srcFile, unchangedFile);
+        assertTrue(((TestTask) changed.getTasks().get(0)).applied);
+
+        ZipFile unchangedZipFile = new ZipFile(unchangedFile.toFile());
+        ZipFile changedZipFile = new ZipFile(changedFile.toFile());
+        try {
+            assertEquals(repeat("a=b\n", 100), readEntry(unchangedZipFile, zipPath));
+            assertEquals(repeat("a=c\n", 100), readEntry(changedZipFile, zipPath));
+        } finally {
+            unchangedZipFile.close();
+            changedZipFile.close();
+        }
+    }
+
+    @Test
+    public void testApplyIncrementalCountsComparedEntriesOnce() throws Exception {
+        String zipPath = "deploy.properties";
+        Path srcFile = folder.newFile("input.zip").toPath();
+        TestZipOutputStream os = new TestZipOutputStream(Files.newOutputStream(srcFile));
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/logging.xml"), "logging.xml");
+        os.addStream(getClass().getClassLoader().getResourceAsStream("simple-test/" + zipPath), zipPath);
+        os.close();
+
+        // The stream path writes no digests, so the content is compared with the previous entry
+        DeploymentConfig config = createWritingConfig(zipPath, "a=b\n");
+        Path previousFile = folder.newFile().toPath();
+        InputStream src = Files.newInputStream(srcFile);
+        OutputStream dest = Files.newOutputStream(previousFile);
+        try {
+            config.apply(src, dest, null);
+        } finally {
+            src.close();
+            dest.close();
+        }
+
+        RunStatistics stats = new RunStatistics();
+        RunStatistics previousStats = RunStatistics.setCurrent(stats);
+        try {
+            applyIncremental(config, srcFile, previousFile);
+            assertEquals(Long.valueOf(1), stats.getCounters().get(RunStatistics.ENTRIES_COPIED));
+            assertEquals(Long.valueOf(1), stats.getCounters().get(RunStatistics.ENTRIES_REUSED));
+            assertNull(stats.getCounters().get(RunStatistics.ENTRIES_FILTERED));
+
+            stats = new RunStatistics();
+            RunStatistics.setCurrent(stats);
+            applyIncremental(createWritingConfig(zipPath, "a=c\n"), srcFile, previousFile);
+            assertEquals(Long.valueOf(1), stats.getCounters().get(RunStatistics.ENTRIES_FILTERED));
+            assertNull(stats.getCounters().get(RunStatistics.ENTRIES_REUSED));
+        } finally {
+            RunStatistics.setCurrent(previousStats);
+        }
+    }
+
+    private String readEntry(ZipFile zipFile, String name) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        InputStream is = zipFile.getInputStream(zipFile.getEntry(name));
+        try {
+            byte[] buf = new byte[1024];
+            int i = is.read(buf);
+            while (i != -1) {
+                result.write(buf, 0, i);
+                i = is.read(buf);
+            }
+        } finally {
+            is.close();
+        }
+
+        return result.toString("ISO-8859-1");
+    }
+
+    private String repeat(String s, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            result.append(s);
+        }
+
+        return result.toString();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCompressionLevel() {
+        new DeploymentConfig().setCompressionLevel(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalParallelism() {
+        new DeploymentConfig().setParallelism(0);
+    }
+
 }
@@ -27,9 +27,14 @@ package org.polago.deployconf;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
 import org.junit.Test;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+import org.polago.deployconf.task.filter.FilterTask;
+import org.polago.deployconf.task.properties.PropertiesTask;
+import org.polago.deployconf.task.properties.Property;
 
 /**
  * Tests the {@link DeploymentReader} class.
@@ -82,4 +87,65 @@ public class DeploymentReaderTest {
         assertEquals("simple", config.getName());
     }
 
+    private String parseAndSave(String resource, boolean streaming) throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(resource);
+        assertNotNull(is);
+        try {
+            DeploymentReader reader = new DeploymentReader(is, new InMemoryConfigGroupManager());
+            reader.setStreaming(streaming);
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            reader.parse().save(os);
+
+            return os.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testStreamingIsDefault() {
+        assertTrue(new DeploymentReader(new ByteArrayInputStream(new byte[0]), null).isStreaming());
+    }
+
+    @Test
+    public void testStreamingAndDocumentParseAreEqual() throws Exception {
+        String[] resources = {"empty-deployment-config.xml", "simple-deployment-config.xml",
+            "complete-deployment-config.xml", "condition-deployment-config.xml", "testgroup-deployment-config.xml",
+            "simple-test-expected/deployment-config.xml"};
+        for (String r : resources) {
+            assertEquals(r, parseAndSave(r, false), parseAndSave(r, true));
+        }
+    }
+
+    @Test
+    public void testStreamingWithCommentsAndCData() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n<!-- comment -->\n<deployconf name=\"test\">\n  <!-- comment -->\n"
+            + "  <properties path=\"a.properties\">\n    <property><!-- comment -->\n      <name> a </name>\n"
+            + "      <description><![CDATA[<b>text</b>]]></description>\n      <value>v</value>\n"
+            + "    </property>\n  </properties>\n  <filter path=\"web.xml\" window=\"10\">\n"
+            + "    <token><name>b</name><regex>@B@</regex><description>d</description></token>\n  </filter>\n"
+            + "</deployconf>\n";
+        DeploymentReader reader =
+            new DeploymentReader(new ByteArrayInputStream(xml.getBytes("UTF-8")), new InMemoryConfigGroupManager());
+        DeploymentConfig config = reader.parse();
+        assertEquals("test", config.getName());
+        assertEquals(2, config.getTasks().size());
+
+        PropertiesTask properties = (PropertiesTask) config.getTasks().get(0);
+        Property p = properties.getProperties().iterator().next();
+        assertEquals("a", p.getName());
+        assertEquals("<b>text</b>", p.getDescription());
+        assertEquals("v", p.getValue());
+
+        FilterTask filter = (FilterTask) config.getTasks().get(1);
+        assertEquals(10, filter.getWindow());
+        assertEquals("@B@", filter.getTokens().iterator().next().getRegex().pattern());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStreamingWithUnknownTask() throws Exception {
+        String xml = "<deployconf><unknown/></deployconf>";
+        new DeploymentReader(new ByteArrayInputStream(xml.getBytes("UTF-8")), null).parse();
+    }
+
 }
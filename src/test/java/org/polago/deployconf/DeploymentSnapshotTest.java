@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+
+/**
+ * Tests the {@link DeploymentSnapshot} class.
+ */
+public class DeploymentSnapshotTest {
+
+    private static final String[] RESOURCES = {"empty-deployment-config.xml", "simple-deployment-config.xml",
+        "complete-deployment-config.xml", "condition-deployment-config.xml", "testgroup-deployment-config.xml",
+        "simple-test-expected/deployment-config.xml"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DeploymentConfig parse(byte[] data, ConfigGroupManager groupManager) throws Exception {
+        return new DeploymentReader(new ByteArrayInputStream(data), groupManager).parse();
+    }
+
+    private byte[] read(String resource) throws Exception {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(resource);
+        assertNotNull(resource, is);
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                os.write(buf, 0, n);
+            }
+            return os.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private String save(DeploymentConfig config) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        config.save(os);
+
+        return os.toString("UTF-8");
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        for (String r : RESOURCES) {
+            byte[] data = read(r);
+            byte[] checksum = DeploymentSnapshot.checksum(data);
+            InMemoryConfigGroupManager groupManager = new InMemoryConfigGroupManager();
+            DeploymentConfig expected = parse(data, groupManager);
+
+            DeploymentSnapshot snapshot = new DeploymentSnapshot(folder.getRoot().toPath().resolve("config.xml"));
+            assertTrue(r, snapshot.store(expected, checksum));
+            DeploymentConfig loaded = snapshot.load(checksum, groupManager);
+            assertNotNull(r, loaded);
+            assertEquals(r, expected.getName(), loaded.getName());
+            assertEquals(r, save(expected), save(loaded));
+        }
+    }
+
+    @Test
+    public void testSnapshotPath() {
+        Path config = folder.getRoot().toPath().resolve("name-deployment-config.xml");
+        assertEquals(folder.getRoot().toPath().resolve("name-deployment-config.xml.snapshot"),
+            new DeploymentSnapshot(config).getPath());
+    }
+
+    @Test
+    public void testLoadMissing() throws Exception {
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(folder.getRoot().toPath().resolve("config.xml"));
+        assertNull(snapshot.load(DeploymentSnapshot.checksum(new byte[0]), new InMemoryConfigGroupManager()));
+    }
+
+    @Test
+    public void testLoadOutdated() throws Exception {
+        byte[] data = read("simple-deployment-config.xml");
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(folder.getRoot().toPath().resolve("config.xml"));
+        assertTrue(snapshot.store(parse(data, new InMemoryConfigGroupManager()), DeploymentSnapshot.checksum(data)));
+
+        data[data.length - 1] = ' ';
+        assertNull(snapshot.load(DeploymentSnapshot.checksum(data), new InMemoryConfigGroupManager()));
+    }
+
+    @Test
+    public void testLoadCorrupt() throws Exception {
+        byte[] data = read("complete-deployment-config.xml");
+        byte[] checksum = DeploymentSnapshot.checksum(data);
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(folder.getRoot().toPath().resolve("config.xml"));
+        assertTrue(snapshot.store(parse(data, new InMemoryConfigGroupManager()), checksum));
+
+        byte[] stored = Files.readAllBytes(snapshot.getPath());
+        Files.write(snapshot.getPath(), Arrays.copyOf(stored, stored.length - 3));
+        assertNull(snapshot.load(checksum, new InMemoryConfigGroupManager()));
+    }
+
+    @Test
+    public void testStoreUnsupportedTask() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        config.addTask(new TestTask());
+        DeploymentSnapshot snapshot = new DeploymentSnapshot(folder.getRoot().toPath().resolve("config.xml"));
+
+        assertFalse(snapshot.store(config, DeploymentSnapshot.checksum(new byte[0])));
+        assertFalse(Files.exists(snapshot.getPath()));
+    }
+}
@@ -28,10 +28,15 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 
 import org.jdom2.Document;
+import org.jdom2.IllegalDataException;
 import org.jdom2.input.SAXBuilder;
 import org.junit.Test;
+import org.polago.deployconf.group.InMemoryConfigGroupManager;
+import org.polago.deployconf.task.properties.PropertiesTask;
+import org.polago.deployconf.task.properties.Property;
 
 /**
  * Tests the {@link DeploymentWriter} class.
@@ -79,4 +84,107 @@ public class DeploymentWriterTest {
         assertNotNull(d.getRootElement().getChild(task.getSerializedName()));
     }
 
+    private String persist(DeploymentConfig config, boolean streaming) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DeploymentWriter writer = new DeploymentWriter(os);
+        writer.setStreaming(streaming);
+        writer.persist(config);
+
+        return os.toString("UTF-8");
+    }
+
+    @Test
+    public void testStreamingAndDocumentPersistAreEqual() throws Exception {
+        String[] resources = {"empty-deployment-config.xml", "simple-deployment-config.xml",
+            "complete-deployment-config.xml", "condition-deployment-config.xml", "testgroup-deployment-config.xml",
+            "simple-test-expected/deployment-config.xml"};
+        for (String r : resources) {
+            InputStream is = getClass().getClassLoader().getResourceAsStream(r);
+            assertNotNull(r, is);
+            DeploymentConfig config;
+            try {
+                config = new DeploymentReader(is, new InMemoryConfigGroupManager()).parse();
+            } finally {
+                is.close();
+            }
+            assertEquals(r, persist(config, false), persist(config, true));
+        }
+    }
+
+    @Test
+    public void testStreamingPersistFormatting() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        config.setName("a\"b<&>");
+        PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
+        task.setPath("deploy.properties");
+        task.getProperties().add(new Property(" name ", "<b>description</b>\n", "", "line1\r\nline2 & <3>"));
+        Property empty = new Property("empty", "  ", null, null);
+        empty.setGroup("group");
+        task.getProperties().add(empty);
+        config.addTask(task);
+
+        String expected = persist(config, false);
+        assertEquals(expected, persist(config, true));
+        assertTrue(expected, expected.contains("<default></default>"));
+        assertTrue(expected, expected.endsWith("</deployconf>\n"));
+    }
+
+    @Test
+    public void testStreamingPersistEscapesAttributeWhitespace() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
+        task.setPath("a\tb\r\nc.properties");
+        Property property = new Property("name", "description", "default", "value");
+        property.setGroup("group\t1\n");
+        task.getProperties().add(property);
+        config.addTask(task);
+
+        String expected = persist(config, false);
+        assertEquals(expected, persist(config, true));
+
+        DeploymentConfig parsed =
+            new DeploymentReader(new ByteArrayInputStream(expected.getBytes("UTF-8")), new InMemoryConfigGroupManager())
+                .parse();
+        PropertiesTask parsedTask = (PropertiesTask) parsed.getTasks().get(0);
+        assertEquals("a\tb\r\nc.properties", parsedTask.getPath());
+        assertEquals("group\t1\n", parsedTask.getProperties().iterator().next().getGroup());
+    }
+
+    @Test
+    public void testStreamingPersistRejectsIllegalCharacters() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
+        task.setPath("deploy.properties");
+        task.getProperties().add(new Property("name", "description", "default", "a\u0001b"));
+        config.addTask(task);
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            try {
+                persist(config, streaming);
+                fail("Expected IllegalDataException when streaming is " + streaming);
+            } catch (IllegalDataException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("a\u0001b"));
+            }
+        }
+
+        config.setName("a\u0001b");
+        task.getProperties().clear();
+        for (boolean streaming : new boolean[] {false, true}) {
+            try {
+                persist(config, streaming);
+                fail("Expected IllegalDataException when streaming is " + streaming);
+            } catch (IllegalDataException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("a\u0001b"));
+            }
+        }
+    }
+
+    @Test
+    public void testNonStreamingTaskUsesDocument() throws Exception {
+        DeploymentConfig config = new DeploymentConfig();
+        config.addTask(new TestTask());
+
+        assertEquals(persist(config, false), persist(config, true));
+    }
+
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.polago.deployconf.group.ConfigGroup;
+import org.polago.deployconf.group.InMemoryConfigGroup;
+
+/**
+ * Tests the {@link ConditionCompiler} class and the built-in expression language.
+ */
+public class ConditionCompilerTest {
+
+    private ConfigGroup group;
+
+    @Before
+    public void setUp() throws IOException {
+        group = new InMemoryConfigGroup();
+        group.setProperty("db", "oracle");
+        group.setProperty("enabled", "true");
+        group.setProperty("port", "8080");
+        group.setProperty("quote", "it's");
+    }
+
+    @After
+    public void tearDown() {
+        ConditionCompiler.setLanguage(ConditionLanguage.BUILTIN);
+    }
+
+    private boolean eval(String text) {
+        return ConditionCompiler.compile(text).evaluate(group);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertSame(ConditionCompiler.TRUE, ConditionCompiler.compile(null));
+        assertSame(ConditionCompiler.TRUE, ConditionCompiler.compile(" "));
+    }
+
+    @Test
+    public void testLiterals() {
+        assertTrue(eval("true"));
+        assertFalse(eval("false"));
+        assertFalse(eval("!true"));
+        assertTrue(eval("'text'"));
+        assertTrue(eval("null"));
+    }
+
+    @Test
+    public void testComparisons() {
+        assertTrue(eval("'v' == 'v'"));
+        assertFalse(eval("'v' == 's'"));
+        assertTrue(eval("\"v\" != 's'"));
+        assertTrue(eval("1 < 2 && 2 <= 2 && 3 > 2 && 3 >= 3"));
+        assertTrue(eval("'1' == 1"));
+        assertFalse(eval("'1' === 1"));
+        assertTrue(eval("'1' !== 1"));
+        assertTrue(eval("-1 < 0"));
+        assertTrue(eval("'a' < 'b'"));
+    }
+
+    @Test
+    public void testBooleanLogic() {
+        assertTrue(eval("false || true"));
+        assertFalse(eval("true && false"));
+        assertTrue(eval("!(true && false) && (false || !false)"));
+    }
+
+    @Test
+    public void testPropertyExpressions() {
+        assertTrue(eval("'${db}' == 'oracle'"));
+        assertTrue(eval("'jdbc:${db}:thin' == 'jdbc:oracle:thin'"));
+        assertTrue(eval("${enabled}"));
+        assertTrue(eval("${port} > 1024"));
+        assertTrue(eval("'${quote}' == \"it's\""));
+        assertFalse(eval("${port} > 9000"));
+        assertFalse(eval("'${missing}' == ''"));
+    }
+
+    @Test
+    public void testNullGroup() {
+        assertTrue(ConditionCompiler.compile("'${db}' != 'oracle'").evaluate(null));
+    }
+
+    @Test
+    public void testSyntaxErrorIsInvalid() {
+        Condition condition = ConditionCompiler.compile("'a'.length > 0");
+        assertTrue(condition instanceof InvalidCondition);
+        assertEquals("'a'.length > 0", ((InvalidCondition) condition).getText());
+        assertTrue(condition.evaluate(group));
+        assertTrue(ConditionCompiler.compile("('a' == 'a'") instanceof InvalidCondition);
+    }
+
+    @Test
+    public void testLanguageIsPerThread() throws Exception {
+        ConditionCompiler.setLanguage(ConditionLanguage.JAVASCRIPT);
+        final ConditionLanguage[] other = new ConditionLanguage[1];
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                other[0] = ConditionCompiler.getLanguage();
+            }
+        });
+        t.start();
+        t.join();
+        assertEquals(ConditionLanguage.BUILTIN, other[0]);
+        assertEquals(ConditionLanguage.JAVASCRIPT, ConditionCompiler.setLanguage(ConditionLanguage.BUILTIN));
+    }
+
+    @Test
+    public void testJavaScriptLanguage() {
+        ConditionCompiler.setLanguage(ConditionLanguage.JAVASCRIPT);
+        assertTrue(ConditionCompiler.compile("'a' == 'a'") instanceof ScriptCondition);
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.condition;
+
+import static org.junit.Assert.*;
+
+import javax.script.ScriptEngineManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.polago.deployconf.group.ConfigGroup;
+import org.polago.deployconf.group.InMemoryConfigGroup;
+
+/**
+ * Tests the {@link ScriptEngineProvider} class.
+ */
+public class ScriptEngineProviderTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("JavaScript"));
+    }
+
+    @Test
+    public void testSharedEngine() {
+        ScriptEngineProvider provider = new ScriptEngineProvider(2);
+        assertSame(provider.getEngine(), provider.getEngine());
+        assertSame(ScriptEngineProvider.getInstance(), ScriptEngineProvider.getInstance());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        ScriptEngineProvider provider = new ScriptEngineProvider(2);
+        assertEquals(Boolean.TRUE, provider.eval("'a' == 'a'"));
+        assertEquals(Boolean.TRUE, provider.eval("'a' == 'a'"));
+        assertEquals(Boolean.FALSE, provider.eval("'a' == 'b'"));
+        assertEquals(1, provider.getHits());
+        assertEquals(2, provider.getMisses());
+        assertEquals(2, provider.getCachedScripts());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ScriptEngineProvider provider = new ScriptEngineProvider(2);
+        provider.eval("1 == 1");
+        provider.eval("2 == 2");
+        provider.eval("1 == 1");
+        provider.eval("3 == 3");
+        assertEquals(2, provider.getCachedScripts());
+        provider.eval("1 == 1");
+        assertEquals(2, provider.getHits());
+        provider.eval("2 == 2");
+        assertEquals(4, provider.getMisses());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        ScriptEngineProvider provider = new ScriptEngineProvider(2);
+        provider.eval("true");
+        provider.clear();
+        assertEquals(0, provider.getMisses());
+        assertEquals(0, provider.getCachedScripts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCacheSize() {
+        new ScriptEngineProvider(0);
+    }
+
+    @Test
+    public void testScriptConditionUsesProvider() throws Exception {
+        ScriptEngineProvider provider = new ScriptEngineProvider(2);
+        ConfigGroup group = new InMemoryConfigGroup();
+        group.setProperty("db", "oracle");
+        ScriptCondition condition = new ScriptCondition("'${db}' == 'oracle'", provider);
+        assertTrue(condition.evaluate(group));
+        assertTrue(condition.evaluate(group));
+        assertEquals(1, provider.getHits());
+        assertEquals(1, provider.getMisses());
+    }
+
+}
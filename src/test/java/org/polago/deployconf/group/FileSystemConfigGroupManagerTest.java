@@ -26,10 +26,19 @@ package org.polago.deployconf.group;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -62,8 +71,9 @@ public class FileSystemConfigGroupManagerTest {
         protected ConfigGroup newGroup(String name) {
             Integer instances = groups.get(name);
             if (instances == null) {
-                groups.put(name, 1);
+                instances = 0;
             }
+            groups.put(name, instances + 1);
             return new InMemoryConfigGroup();
         }
 
@@ -74,6 +84,15 @@ public class FileSystemConfigGroupManagerTest {
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
 
+    private static int countGroupFiles(Path dir) {
+        return dir.toFile().list(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return !name.endsWith(".lock");
+            }
+        }).length;
+    }
+
     @Before
     public void setUp() throws IOException {
         manager = new TestFileSystemConfigGroupManager(folder.newFolder().toPath());
@@ -109,4 +128,115 @@ public class FileSystemConfigGroupManagerTest {
         assertEquals(1, manager.groups.size());
     }
 
+    @Test
+    public void testFlush() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        FileSystemConfigGroupManager fsManager = new FileSystemConfigGroupManager(dir);
+        fsManager.lookupGroup("test1").setProperty("name", "value");
+        fsManager.lookupGroup("test2");
+        assertEquals(0, countGroupFiles(dir));
+
+        fsManager.flush();
+        assertEquals(1, countGroupFiles(dir));
+        assertEquals("value", new FileSystemConfigGroupManager(dir).lookupGroup("test1").getProperty("name"));
+
+        fsManager.lookupGroup("test2").setProperty("name", "value");
+        fsManager.close();
+        assertEquals(2, countGroupFiles(dir));
+    }
+
+    @Test
+    public void testLookupNullGroup() throws IOException {
+        ConfigGroup group = manager.lookupGroup(null);
+        assertNotNull(group);
+        assertSame(group, manager.lookupGroup(null));
+        assertNotSame(group, manager.lookupGroup("null"));
+    }
+
+    @Test
+    public void testNullGroupIsNotStored() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        FileSystemConfigGroupManager fsManager = new FileSystemConfigGroupManager(dir);
+        ConfigGroup group = fsManager.lookupGroup(null);
+        assertTrue(group instanceof EmptyConfigGroup);
+        assertNull(group.getProperty("name"));
+
+        group.setProperty("name", "value");
+        assertNull(group.getProperty("name"));
+        assertTrue(group.getPropertyNames().isEmpty());
+        fsManager.flush();
+        assertEquals(0, countGroupFiles(dir));
+        assertNull(manager.groups.get(null));
+    }
+
+    @Test
+    public void testConcurrentLookupAndSetProperty() throws Exception {
+        final Path dir = folder.newFolder().toPath();
+        final FileSystemConfigGroupManager fsManager = new FileSystemConfigGroupManager(dir);
+        final int threads = 16;
+        final int properties = 200;
+        final String[] groupNames = {"group1", "group2", "group3"};
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < properties; i++) {
+                        String groupName = groupNames[(thread + i) % groupNames.length];
+                        ConfigGroup group = fsManager.lookupGroup(groupName);
+                        group.setProperty("t" + thread + ".p" + i, "v" + i);
+                        assertEquals("v" + i, group.getProperty("t" + thread + ".p" + i));
+                        if (i % 50 == 0) {
+                            fsManager.flush();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> f : futures) {
+            f.get();
+        }
+        executor.shutdown();
+        fsManager.flush();
+
+        FileSystemConfigGroupManager reloaded = new FileSystemConfigGroupManager(dir);
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < properties; i++) {
+                String groupName = groupNames[(t + i) % groupNames.length];
+                assertEquals("v" + i, reloaded.lookupGroup(groupName).getProperty("t" + t + ".p" + i));
+            }
+        }
+        assertEquals(groupNames.length, countGroupFiles(dir));
+    }
+
+    @Test
+    public void testConcurrentLookupLoadsGroupOnce() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<ConfigGroup>> futures = new ArrayList<Future<ConfigGroup>>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(new Callable<ConfigGroup>() {
+                @Override
+                public ConfigGroup call() throws Exception {
+                    start.await();
+                    return manager.lookupGroup("shared");
+                }
+            }));
+        }
+        start.countDown();
+        ConfigGroup first = futures.get(0).get();
+        for (Future<ConfigGroup> f : futures) {
+            assertSame(first, f.get());
+        }
+        executor.shutdown();
+        assertEquals(Integer.valueOf(1), manager.groups.get("shared"));
+    }
+
 }
@@ -26,7 +26,10 @@ package org.polago.deployconf.group;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.file.Path;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -49,11 +52,23 @@ public class FileSystemConfigGroupTest {
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
 
+    private static int countGroupFiles(Path dir) {
+        return dir.toFile().list(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return !name.endsWith(".lock");
+            }
+        }).length;
+    }
+
     private FileSystemConfigGroup group;
 
+    private Path dir;
+
     @Before
     public void setUp() throws IOException {
-        group = new FileSystemConfigGroup(NAME, folder.newFolder().toPath());
+        dir = folder.newFolder().toPath();
+        group = new FileSystemConfigGroup(NAME, dir);
         group.setProperty(EXISTING_NAME, EXISTING_VALUE);
     }
 
@@ -71,4 +86,70 @@ public class FileSystemConfigGroupTest {
     public void testSetNullValueProperty() throws IOException {
         group.setProperty(NON_EXISTING_NAME, null);
     }
+
+    @Test
+    public void testSetPropertyIsWrittenOnFlush() throws IOException {
+        assertTrue(group.isDirty());
+        assertNull(new FileSystemConfigGroup(NAME, dir).getProperty(EXISTING_NAME));
+
+        group.flush();
+        assertFalse(group.isDirty());
+        assertEquals(EXISTING_VALUE, new FileSystemConfigGroup(NAME, dir).getProperty(EXISTING_NAME));
+        assertEquals(1, countGroupFiles(dir));
+    }
+
+    @Test
+    public void testSetSameValueIsNotDirty() throws IOException {
+        group.flush();
+        group.setProperty(EXISTING_NAME, EXISTING_VALUE);
+        assertFalse(group.isDirty());
+        group.setProperty(NON_EXISTING_NAME, null);
+        assertFalse(group.isDirty());
+    }
+
+    @Test
+    public void testRemovePropertyIsWrittenOnFlush() throws IOException {
+        group.flush();
+        group.setProperty(EXISTING_NAME, null);
+        assertTrue(group.isDirty());
+        group.flush();
+        assertNull(new FileSystemConfigGroup(NAME, dir).getProperty(EXISTING_NAME));
+    }
+
+    @Test
+    public void testGroupFileIsLoadedOnFirstUse() throws IOException {
+        group.flush();
+        FileSystemConfigGroup lazy = new FileSystemConfigGroup(NAME, dir);
+        group.setProperty(EXISTING_NAME, "modified");
+        group.flush();
+
+        assertEquals("modified", lazy.getProperty(EXISTING_NAME));
+    }
+
+    @Test
+    public void testMissingGroupFileIsRemembered() throws IOException {
+        FileSystemConfigGroup missing = new FileSystemConfigGroup(NAME, dir);
+        assertNull(missing.getProperty(EXISTING_NAME));
+        group.flush();
+
+        assertNull(missing.getProperty(EXISTING_NAME));
+        assertTrue(missing.getPropertyNames().isEmpty());
+    }
+
+    @Test
+    public void testFlushMergesConcurrentModifications() throws IOException {
+        group.flush();
+        FileSystemConfigGroup other = new FileSystemConfigGroup(NAME, dir);
+        group.setProperty("first", "1");
+        other.setProperty("second", "2");
+        other.setProperty(EXISTING_NAME, null);
+        group.flush();
+        other.flush();
+
+        FileSystemConfigGroup reloaded = new FileSystemConfigGroup(NAME, dir);
+        assertEquals("1", reloaded.getProperty("first"));
+        assertEquals("2", reloaded.getProperty("second"));
+        assertNull(reloaded.getProperty(EXISTING_NAME));
+        assertEquals("1", other.getProperty("first"));
+    }
 }
@@ -25,6 +25,8 @@
 package org.polago.deployconf.group;
 
 import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * ConfigGroup that stores config properties in memory.
@@ -53,4 +55,12 @@ public class InMemoryConfigGroup implements ConfigGroup {
         store.setProperty(name, value);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<String> getPropertyNames() {
+        return new TreeSet<String>(store.stringPropertyNames());
+    }
+
 }
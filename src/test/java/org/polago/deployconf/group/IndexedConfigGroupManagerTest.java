@@ -0,0 +1,173 @@
+/**
+* Copyright (c) 2015 Polago AB
+* All rights reserved.
+*
+* Permission is hereby granted, free of charge, to any person obtaining
+* a copy of this software and associated documentation files (the
+* "Software"), to deal in the Software without restriction, including
+* without limitation the rights to use, copy, modify, merge, publish,
+* distribute, sublicense, and/or sell copies of the Software, and to
+* permit persons to whom the Software is furnished to do so, subject to
+* the following conditions:
+*
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+* LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+* OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+* WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.polago.deployconf.group;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link IndexedConfigGroupManager} class.
+ */
+public class IndexedConfigGroupManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+
+    private void setGroupProperty(String group, String name, String value) throws IOException {
+        FileSystemConfigGroup g = new FileSystemConfigGroup(group, dir);
+        g.setProperty(name, value);
+        g.flush();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder().toPath();
+        setGroupProperty("group1", "name", "value1");
+        setGroupProperty("group2", "name", "value2");
+    }
+
+    @Test
+    public void testIndexAllGroups() throws IOException {
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        assertEquals(new TreeSet<String>(Arrays.asList("group1", "group2")), manager.getGroupNames());
+        assertTrue(Files.exists(dir.resolve(IndexedConfigGroupManager.INDEX_FILE)));
+
+        assertEquals("value1", manager.lookupGroup("group1").getProperty("name"));
+        assertEquals("value2", manager.lookupGroup("group2").getProperty("name"));
+        assertNull(manager.lookupGroup("group3").getProperty("name"));
+        assertNull(manager.lookupGroup(null).getProperty("name"));
+    }
+
+    private static void replaceKeepingSizeAndTime(Path file, String from, String to) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+        Files.write(file, content.replace(from, to).getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(file, modified);
+    }
+
+    @Test
+    public void testUnmodifiedGroupFilesAreReadFromIndex() throws IOException {
+        Path file = dir.resolve("group1" + FileSystemConfigGroup.SUFFIX_CONFIG_GROUP);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+        new IndexedConfigGroupManager(dir);
+
+        // Modify a group file without changing its size or modification time
+        replaceKeepingSizeAndTime(file, "value1", "valueX");
+
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        assertEquals("value1", manager.lookupGroup("group1").getProperty("name"));
+    }
+
+    @Test
+    public void testRecentlyModifiedGroupFilesAreReadAgain() throws IOException {
+        new IndexedConfigGroupManager(dir);
+
+        // Modify a group file within the same timestamp tick as the index was written
+        Path file = dir.resolve("group1" + FileSystemConfigGroup.SUFFIX_CONFIG_GROUP);
+        replaceKeepingSizeAndTime(file, "value1", "valueX");
+
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        assertEquals("valueX", manager.lookupGroup("group1").getProperty("name"));
+
+        replaceKeepingSizeAndTime(file, "valueX", "valueY");
+        manager.refresh();
+        assertEquals("valueY", manager.lookupGroup("group1").getProperty("name"));
+    }
+
+    @Test
+    public void testInvalidIndexIsIgnored() throws IOException {
+        Files.write(dir.resolve(IndexedConfigGroupManager.INDEX_FILE), new byte[] {1, 2, 3});
+
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        assertEquals("value1", manager.lookupGroup("group1").getProperty("name"));
+        assertEquals(2, manager.getGroupNames().size());
+    }
+
+    @Test
+    public void testRefresh() throws IOException {
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        ConfigGroup group1 = manager.lookupGroup("group1");
+        ConfigGroup group2 = manager.lookupGroup("group2");
+        group1.setProperty("local", "unflushed");
+
+        setGroupProperty("group1", "name", "modified-value");
+        setGroupProperty("group3", "name", "value3");
+        Files.delete(dir.resolve("group2" + FileSystemConfigGroup.SUFFIX_CONFIG_GROUP));
+        manager.refresh();
+
+        assertEquals(new TreeSet<String>(Arrays.asList("group1", "group3")), manager.getGroupNames());
+        assertEquals("modified-value", group1.getProperty("name"));
+        assertEquals("unflushed", group1.getProperty("local"));
+        assertNull(group2.getProperty("name"));
+        assertEquals("value3", manager.lookupGroup("group3").getProperty("name"));
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        manager.lookupGroup("group1").setProperty("name", "flushed");
+        manager.lookupGroup("group4").setProperty("name", "value4");
+        manager.flush();
+
+        assertEquals("flushed", new FileSystemConfigGroup("group1", dir).getProperty("name"));
+        assertTrue(manager.getGroupNames().contains("group4"));
+
+        IndexedConfigGroupManager reloaded = new IndexedConfigGroupManager(dir);
+        assertEquals("flushed", reloaded.lookupGroup("group1").getProperty("name"));
+        assertEquals("value4", reloaded.lookupGroup("group4").getProperty("name"));
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        IndexedConfigGroupManager manager = new IndexedConfigGroupManager(dir);
+        manager.watch();
+        try {
+            setGroupProperty("group5", "name", "value5");
+
+            long timeout = System.currentTimeMillis() + 30000;
+            while (manager.lookupGroup("group5").getProperty("name") == null
+                && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertEquals("value5", manager.lookupGroup("group5").getProperty("name"));
+        } finally {
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.group;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link RepositoryLock} class.
+ */
+public class RepositoryLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLockFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("test.properties");
+        RepositoryLock lock = RepositoryLock.acquireExclusive(file);
+        assertTrue(Files.exists(RepositoryLock.getLockFile(file)));
+        assertEquals("test.properties.lock", RepositoryLock.getLockFile(file).getFileName().toString());
+        lock.close();
+
+        lock = RepositoryLock.acquireShared(file);
+        lock.close();
+    }
+
+    @Test
+    public void testExclusiveLockBlocksOtherThreads() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("test.properties");
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        RepositoryLock lock = RepositoryLock.acquireExclusive(file);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    RepositoryLock other = RepositoryLock.acquireShared(file);
+                    acquired.set(true);
+                    other.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        t.start();
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(acquired.get());
+        lock.close();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+    }
+
+}
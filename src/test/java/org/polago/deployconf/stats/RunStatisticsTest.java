@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.stats;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RunStatistics} class.
+ */
+public class RunStatisticsTest {
+
+    @After
+    public void tearDown() {
+        RunStatistics.setCurrent(null);
+    }
+
+    @Test
+    public void testCurrentIsDisabledByDefault() {
+        RunStatistics stats = RunStatistics.current();
+        assertFalse(stats.isEnabled());
+        stats.count(RunStatistics.INPUT_SIZE, 10);
+        stats.stopAndCount(RunStatistics.CONDITIONS, stats.start());
+        assertTrue(stats.getCounters().isEmpty());
+        assertTrue(stats.getTimes().isEmpty());
+    }
+
+    @Test
+    public void testSetCurrent() {
+        RunStatistics stats = new RunStatistics();
+        assertNull(RunStatistics.setCurrent(stats));
+        assertSame(stats, RunStatistics.current());
+        assertSame(stats, RunStatistics.setCurrent(null));
+        assertNotSame(stats, RunStatistics.current());
+    }
+
+    @Test
+    public void testCountersAndTimes() {
+        RunStatistics stats = new RunStatistics();
+        stats.count(RunStatistics.INPUT_SIZE, 10);
+        stats.count(RunStatistics.INPUT_SIZE, 5);
+        stats.stopAndCount(RunStatistics.CONDITIONS, stats.start());
+        stats.stopAndCount(RunStatistics.CONDITIONS, stats.start());
+        stats.stop(RunStatistics.MERGE, stats.start());
+        stats.stopTask("filter web.xml", stats.start());
+
+        assertEquals(Long.valueOf(15), stats.getCounters().get(RunStatistics.INPUT_SIZE));
+        assertEquals(Long.valueOf(2), stats.getCounters().get(RunStatistics.CONDITIONS));
+        assertNull(stats.getCounters().get(RunStatistics.MERGE));
+        assertTrue(stats.getTimes().containsKey(RunStatistics.MERGE));
+        assertTrue(stats.getTaskTimes().containsKey("filter web.xml"));
+    }
+
+    @Test
+    public void testToJson() {
+        RunStatistics stats = new RunStatistics();
+        stats.count(RunStatistics.ENTRIES_COPIED, 3);
+        stats.stopTask("filter \"a\\b\"", stats.start());
+
+        String json = stats.toJson();
+        assertTrue(json, json.contains("\"times\": {}"));
+        assertTrue(json, json.contains("\"entriesCopied\": 3"));
+        assertTrue(json, json.contains("\"filter \\\"a\\\\b\\\"\": "));
+    }
+
+    @Test
+    public void testToSummary() {
+        RunStatistics stats = new RunStatistics();
+        stats.count(RunStatistics.ENTRIES_FILTERED, 2);
+
+        String summary = stats.toSummary();
+        assertTrue(summary, summary.contains(RunStatistics.ENTRIES_FILTERED));
+        assertFalse(summary, summary.contains("Task apply times"));
+    }
+
+}
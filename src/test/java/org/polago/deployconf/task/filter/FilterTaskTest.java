@@ -30,15 +30,23 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.XMLOutputter;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.polago.deployconf.TestInteractiveConfigurer;
+import org.polago.deployconf.condition.Condition;
+import org.polago.deployconf.group.ConfigGroup;
 import org.polago.deployconf.group.ConfigGroupManager;
+import org.polago.deployconf.group.FileSystemConfigGroupManager;
 import org.polago.deployconf.group.InMemoryConfigGroupManager;
 
 /**
@@ -46,6 +54,9 @@ import org.polago.deployconf.group.InMemoryConfigGroupManager;
  */
 public class FilterTaskTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testDeserialize() throws Exception {
         InputStream is = getClass().getClassLoader().getResourceAsStream("simple-deployment-config.xml");
@@ -174,6 +185,17 @@ public class FilterTaskTest {
         assertFalse(task.isConfigured());
     }
 
+    @Test
+    public void testIsNotConfiguredUsingInvalidCondition() throws Exception {
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
+        FilterToken t = new FilterToken("test-name", "test-token", null, null, "test-value");
+        t.setCondition("'a'.length > 0");
+        HashSet<FilterToken> list = new HashSet<FilterToken>();
+        list.add(t);
+        task.setTokens(list);
+        assertFalse(task.isConfigured());
+    }
+
     @Test
     public void testMergeWithNewFilterToken() throws Exception {
         String path = "test-path";
@@ -238,6 +260,40 @@ public class FilterTaskTest {
         assertEquals("test1-condition", t.getCondition());
     }
 
+    @Test
+    public void testMergeKeepsOrder() throws Exception {
+        int count = 5000;
+        FilterTask template = new FilterTask(new InMemoryConfigGroupManager());
+        template.setPath("test-path");
+        for (int i = count - 1; i >= 0; i--) {
+            template.getTokens().add(new FilterToken("t" + i, "@t" + i + "@", "template-descr", null, null));
+        }
+
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
+        task.setPath("test-path");
+        for (int i = 0; i < count; i += 2) {
+            task.getTokens().add(new FilterToken("t" + i, "@old@", "descr", null, "value" + i));
+        }
+        task.getTokens().add(new FilterToken("unused", "@unused@", "descr", null, "value"));
+
+        task.merge(template);
+
+        assertEquals(count, task.getTokens().size());
+        Iterator<FilterToken> it = task.getTokens().iterator();
+        for (int i = 0; i < count; i += 2) {
+            FilterToken t = it.next();
+            assertEquals("t" + i, t.getName());
+            assertEquals("@t" + i + "@", t.getRegex().pattern());
+            assertEquals("value" + i, t.getValue());
+        }
+        for (int i = count - 1; i >= 0; i -= 2) {
+            FilterToken t = it.next();
+            assertEquals("t" + i, t.getName());
+            assertNull(t.getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
     @Test
     public void testMergeWithReplacingFilterToken() throws Exception {
         String path = "test-path";
@@ -337,6 +393,40 @@ public class FilterTaskTest {
             + "<default>test-default-value</default><condition /></token></filter>", outputter.outputString(node));
     }
 
+    @Test
+    public void testSerializeWithMatchingMode() throws Exception {
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
+        task.setPath("test-path");
+        task.setMatchingMode(FilterTask.MatchingMode.SINGLE_PASS);
+        Element node = new Element("filter");
+        task.serialize(node);
+        XMLOutputter outputter = new XMLOutputter();
+        assertEquals("<filter path=\"test-path\" encoding=\"UTF-8\" matching=\"single-pass\" />",
+            outputter.outputString(node));
+
+        FilterTask other = new FilterTask(new InMemoryConfigGroupManager());
+        other.deserialize(node);
+        assertEquals(FilterTask.MatchingMode.SINGLE_PASS, other.getMatchingMode());
+    }
+
+    @Test
+    public void testApplySinglePass() throws Exception {
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
+        task.setMatchingMode(FilterTask.MatchingMode.SINGLE_PASS);
+        Set<FilterToken> list = new LinkedHashSet<FilterToken>();
+        list.add(new FilterToken("first", "@a@", null, null, "@b@"));
+        list.add(new FilterToken("second", "@b@", null, null, "b"));
+        task.setTokens(list);
+
+        String data = "@a@-@b@";
+        ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        task.apply(in, out);
+
+        assertEquals("@b@-b\n", out.toString());
+    }
+
     @Test
     public void testApply() throws Exception {
         FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
@@ -395,6 +485,54 @@ public class FilterTaskTest {
         assertEquals(data + "\n", out.toString());
     }
 
+    @Test
+    public void testApplyStream() throws Exception {
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager());
+        task.setWindow(4);
+        Set<FilterToken> list = new LinkedHashSet<FilterToken>();
+        list.add(new FilterToken("first", "@a@", null, null, "@b@"));
+        list.add(new FilterToken("second", "@b@", null, null, "b"));
+        task.setTokens(list);
+
+        String data = "@a@\r\n@b@";
+        ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        task.apply(in, out);
+        assertEquals("b\r\nb", out.toString());
+
+        task.setMatchingMode(FilterTask.MatchingMode.SINGLE_PASS);
+        in = new ByteArrayInputStream(data.getBytes());
+        out = new ByteArrayOutputStream();
+        task.apply(in, out);
+        assertEquals("@b@\r\nb", out.toString());
+    }
+
+    @Test
+    public void testApplyResolvesTokensOnce() throws Exception {
+        final int[] evaluations = {0};
+        FilterTask task = new FilterTask(new InMemoryConfigGroupManager()) {
+            @Override
+            public boolean evaluateCondition(Condition condition, ConfigGroup group) {
+                evaluations[0]++;
+                return super.evaluateCondition(condition, group);
+            }
+        };
+        FilterToken t = new FilterToken("test-name", "d..a", null, null, "value");
+        HashSet<FilterToken> list = new HashSet<FilterToken>();
+        list.add(t);
+        task.setTokens(list);
+
+        String data = "test-data\ntest-data\ntest-data";
+        ByteArrayInputStream in = new ByteArrayInputStream(data.getBytes());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        task.apply(in, out);
+
+        assertEquals("test-value\ntest-value\ntest-value\n", out.toString());
+        assertEquals(1, evaluations[0]);
+    }
+
     @Test
     public void testIncompleteInteractiveConfigure() throws Exception {
         TestInteractiveConfigurer configurer = new TestInteractiveConfigurer();
@@ -475,4 +613,26 @@ public class FilterTaskTest {
         assertFalse(configurer.isCalled);
     }
 
+    @Test
+    public void testUngroupedValuesAreNotSharedBetweenArtifacts() throws Exception {
+        ConfigGroupManager groupManager = new FileSystemConfigGroupManager(folder.newFolder().toPath());
+        TestInteractiveConfigurer configurer = new TestInteractiveConfigurer();
+        configurer.value = "oracle";
+
+        FilterTask first = new FilterTask(groupManager);
+        Set<FilterToken> firstTokens = new HashSet<FilterToken>();
+        firstTokens.add(new FilterToken("db.type", "test-regex", "test-description", null, null));
+        first.setTokens(firstTokens);
+        assertTrue(first.configureInteractively(configurer, false));
+
+        FilterTask second = new FilterTask(groupManager);
+        FilterToken token = new FilterToken("db.url", "test-regex", "test-description", null, null);
+        token.setCondition("'${db.type}' == 'oracle'");
+        Set<FilterToken> secondTokens = new HashSet<FilterToken>();
+        secondTokens.add(token);
+        second.setTokens(secondTokens);
+        assertTrue(second.isConfigured());
+        assertTrue(second.resolveTokens().isEmpty());
+    }
+
 }
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link TokenFilterWriter} class.
+ */
+public class TokenFilterWriterTest {
+
+    private String filter(String text, int window, String regex, String value) throws Exception {
+        List<ResolvedFilterToken> plan = new ArrayList<ResolvedFilterToken>();
+        plan.add(new ResolvedFilterToken(new FilterToken("name", regex, null, null, value), value));
+
+        StringWriter out = new StringWriter();
+        TokenFilterWriter writer = new TokenFilterWriter(out, TokenMatcher.newSinglePassInstance(plan), window);
+        // Write one character at a time to exercise the buffer boundaries
+        for (char c : text.toCharArray()) {
+            writer.write(c);
+        }
+        writer.finish();
+
+        return out.toString();
+    }
+
+    @Test
+    public void testPreservesLineTerminators() throws Exception {
+        String text = "a @t@\r\nb @t@\rc\n@t@";
+        assertEquals("a v\r\nb v\rc\nv", filter(text, 3, "@t@", "v"));
+    }
+
+    @Test
+    public void testLargeSingleLine() throws Exception {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("{\"url\":\"@db.url@\"},");
+            expected.append("{\"url\":\"jdbc:x\"},");
+        }
+        assertEquals(expected.toString(), filter(text.toString(), 16, "@db\\.url@", "jdbc:x"));
+    }
+
+    @Test
+    public void testMatchesReplaceAll() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            text.append("ab").append(i % 7).append(' ');
+        }
+        String s = text.toString();
+        assertEquals(s.replaceAll("b(\\d)", "<$1>"), filter(s, 4, "b(\\d)", "<$1>"));
+        assertEquals(s.replaceAll("x*", "-"), filter(s, 4, "x*", "-"));
+        assertEquals(s.replaceAll("^ab", "X"), filter(s, 4, "^ab", "X"));
+        assertEquals(s.replaceAll("(?<=a)b", "B"), filter(s, 4, "(?<=a)b", "B"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new TokenFilterWriter(new StringWriter(), null, 0);
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.task.filter;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.polago.deployconf.task.filter.FilterTask.MatchingMode;
+
+/**
+ * Tests the {@link TokenMatcher} class and the {@link LineFilter} implementations.
+ */
+public class TokenMatcherTest {
+
+    private List<ResolvedFilterToken> plan(String... regexAndValues) {
+        List<ResolvedFilterToken> result = new ArrayList<ResolvedFilterToken>();
+        for (int i = 0; i < regexAndValues.length; i += 2) {
+            FilterToken t = new FilterToken("token" + i, regexAndValues[i], null, null, regexAndValues[i + 1]);
+            result.add(new ResolvedFilterToken(t, regexAndValues[i + 1]));
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testSequentialIsDefault() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("@a@", "1"), MatchingMode.SEQUENTIAL);
+        assertTrue(matcher instanceof SequentialLineFilter);
+        assertEquals("x1y1", matcher.filter("x@a@y@a@"));
+    }
+
+    @Test
+    public void testLiteralMatcher() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("@a@", "1", "@bb@", "22"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof LiteralTokenMatcher);
+        assertEquals("x1y22z1", matcher.filter("x@a@y@bb@z@a@"));
+        assertEquals("no tokens", matcher.filter("no tokens"));
+    }
+
+    @Test
+    public void testLiteralMatcherLeftmostMatchWins() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("bc", "2", "abcd", "1"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof LiteralTokenMatcher);
+        assertEquals("x1y", matcher.filter("xabcdy"));
+    }
+
+    @Test
+    public void testLiteralMatcherFirstTokenWinsAtSamePosition() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("ab", "1", "abc", "2"), MatchingMode.SINGLE_PASS);
+        assertEquals("1c", matcher.filter("abc"));
+    }
+
+    @Test
+    public void testLiteralMatcherWithQuotedRegex() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("\\Q@db.url@\\E", "jdbc:$0"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof LiteralTokenMatcher);
+        assertEquals("url=jdbc:@db.url@ x@dbXurl@", matcher.filter("url=@db.url@ x@dbXurl@"));
+    }
+
+    @Test
+    public void testRegexMatcher() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("@db.url@", "1", "d(.)a", "<$1>"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof RegexTokenMatcher);
+        assertEquals("1 1 <x>", matcher.filter("@db.url@ @dbXurl@ dxa"));
+    }
+
+    @Test
+    public void testRegexMatcherMatchesReplaceAll() {
+        String line = "test-data and more data";
+        LineFilter matcher = TokenMatcher.newInstance(plan("(d)(a)", "$2$1", "x*", "-"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof RegexTokenMatcher);
+        LineFilter single = TokenMatcher.newInstance(plan("x*", "-"), MatchingMode.SINGLE_PASS);
+        assertEquals(line.replaceAll("x*", "-"), single.filter(line));
+        assertEquals("-t-e-s-t--ad-t-a- -a-n-d- -m-o-r-e- ad-t-a-", matcher.filter(line));
+    }
+
+    @Test
+    public void testSinglePassDoesNotRescanReplacements() {
+        List<ResolvedFilterToken> tokens = plan("@a@", "@b@", "@b@", "2");
+        assertEquals("2", TokenMatcher.newInstance(tokens, MatchingMode.SEQUENTIAL).filter("@a@"));
+        assertEquals("@b@", TokenMatcher.newInstance(tokens, MatchingMode.SINGLE_PASS).filter("@a@"));
+    }
+
+    @Test
+    public void testFallbackToSequentialWithBackReference() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("(a)\\1", "x", "b", "y"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof SequentialLineFilter);
+        assertEquals("xy", matcher.filter("aab"));
+    }
+
+    @Test
+    public void testRegexMatcherWithNamedReference() {
+        LineFilter matcher = TokenMatcher.newInstance(plan("(?<n>a)", "${n}${n}"), MatchingMode.SINGLE_PASS);
+        assertTrue(matcher instanceof RegexTokenMatcher);
+        assertEquals("aab", matcher.filter("ab"));
+    }
+
+    @Test
+    public void testGetLiteral() {
+        assertEquals("@a@", LiteralTokenMatcher.getLiteral(Pattern.compile("@a@")));
+        assertEquals("a.b", LiteralTokenMatcher.getLiteral(Pattern.compile("\\Qa.b\\E")));
+        assertNull(LiteralTokenMatcher.getLiteral(Pattern.compile("a.b")));
+        assertNull(LiteralTokenMatcher.getLiteral(Pattern.compile("")));
+    }
+
+}
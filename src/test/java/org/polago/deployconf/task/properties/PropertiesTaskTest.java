@@ -29,6 +29,7 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 
 import org.jdom2.Document;
@@ -171,6 +172,17 @@ public class PropertiesTaskTest {
         assertFalse(task.isConfigured());
     }
 
+    @Test
+    public void testIsNotConfiguredUsingInvalidCondition() throws Exception {
+        PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
+        Property p = new Property("test-property", null, null, "test-value");
+        p.setCondition("'a'.length > 0");
+        HashSet<Property> list = new HashSet<Property>();
+        list.add(p);
+        task.setProperties(list);
+        assertFalse(task.isConfigured());
+    }
+
     @Test
     public void testMergeWithNewProperty() throws Exception {
         String path = "test-path";
@@ -265,6 +277,40 @@ public class PropertiesTaskTest {
         assertEquals("test1-condition", p.getCondition());
     }
 
+    @Test
+    public void testMergeKeepsOrder() throws Exception {
+        int count = 5000;
+        PropertiesTask template = new PropertiesTask(new InMemoryConfigGroupManager());
+        template.setPath("test-path");
+        for (int i = count - 1; i >= 0; i--) {
+            template.getProperties().add(new Property("p" + i, "template-descr", null, null));
+        }
+
+        PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
+        task.setPath("test-path");
+        for (int i = 0; i < count; i += 2) {
+            task.getProperties().add(new Property("p" + i, "descr", null, "value" + i));
+        }
+        task.getProperties().add(new Property("unused", "descr", null, "value"));
+
+        task.merge(template);
+
+        assertEquals(count, task.getProperties().size());
+        Iterator<Property> it = task.getProperties().iterator();
+        for (int i = 0; i < count; i += 2) {
+            Property p = it.next();
+            assertEquals("p" + i, p.getName());
+            assertEquals("template-descr", p.getDescription());
+            assertEquals("value" + i, p.getValue());
+        }
+        for (int i = count - 1; i >= 0; i -= 2) {
+            Property p = it.next();
+            assertEquals("p" + i, p.getName());
+            assertNull(p.getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
     @Test
     public void testSerialize() throws Exception {
         PropertiesTask task = new PropertiesTask(new InMemoryConfigGroupManager());
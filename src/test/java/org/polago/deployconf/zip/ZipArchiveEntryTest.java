@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ZipArchiveEntry} class.
+ */
+public class ZipArchiveEntryTest {
+
+    @Test
+    public void testGetExtraField() {
+        ZipArchiveEntry entry = new ZipArchiveEntry("test");
+        assertNull(entry.getExtraField(0x4443));
+
+        entry.setExtra(new byte[] {(byte) 0xfe, (byte) 0xca, 0, 0, 0x43, 0x44, 2, 0, 1, 2});
+        assertArrayEquals(new byte[0], entry.getExtraField(0xcafe));
+        assertArrayEquals(new byte[] {1, 2}, entry.getExtraField(0x4443));
+        assertNull(entry.getExtraField(0x1234));
+    }
+
+    @Test
+    public void testSetExtraFieldReplacesExistingField() {
+        ZipArchiveEntry entry = new ZipArchiveEntry("test");
+        entry.setExtra(new byte[] {(byte) 0xfe, (byte) 0xca, 0, 0, 0x43, 0x44, 1, 0, 1});
+
+        entry.setExtraField(0x4443, new byte[] {2, 3});
+        assertArrayEquals(new byte[] {(byte) 0xfe, (byte) 0xca, 0, 0, 0x43, 0x44, 2, 0, 2, 3}, entry.getExtra());
+        assertArrayEquals(new byte[] {2, 3}, entry.getExtraField(0x4443));
+    }
+
+    @Test
+    public void testSetExtraFieldRemovesExistingField() {
+        ZipArchiveEntry entry = new ZipArchiveEntry("test");
+        entry.setExtra(new byte[] {0x43, 0x44, 1, 0, 1, (byte) 0xfe, (byte) 0xca, 0, 0});
+
+        entry.setExtraField(0x4443, null);
+        assertArrayEquals(new byte[] {(byte) 0xfe, (byte) 0xca, 0, 0}, entry.getExtra());
+        assertNull(entry.getExtraField(0x4443));
+    }
+}
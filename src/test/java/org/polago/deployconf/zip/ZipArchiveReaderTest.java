@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link ZipArchiveReader} class.
+ */
+public class ZipArchiveReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] TEXT = "Some text that is repeated. Some text that is repeated. Some text."
+        .getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int i = is.read(buf);
+        while (i != -1) {
+            os.write(buf, 0, i);
+            i = is.read(buf);
+        }
+        is.close();
+        return os.toByteArray();
+    }
+
+    private Path createZip() throws IOException {
+        Path file = folder.newFile("test.zip").toPath();
+        OutputStream fos = Files.newOutputStream(file);
+        ZipOutputStream os = new ZipOutputStream(fos);
+        os.setComment("archive comment");
+        ZipEntry e = new ZipEntry("deflated.txt");
+        e.setComment("entry comment");
+        os.putNextEntry(e);
+        os.write(TEXT);
+        os.closeEntry();
+
+        e = new ZipEntry("stored.txt");
+        e.setMethod(ZipEntry.STORED);
+        e.setSize(TEXT.length);
+        CRC32 crc = new CRC32();
+        crc.update(TEXT);
+        e.setCrc(crc.getValue());
+        os.putNextEntry(e);
+        os.write(TEXT);
+        os.closeEntry();
+        os.close();
+
+        return file;
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        ZipArchiveReader reader = new ZipArchiveReader(createZip());
+        List<ZipArchiveEntry> entries = reader.getEntries();
+        assertEquals(2, entries.size());
+
+        ZipArchiveEntry e = entries.get(0);
+        assertEquals("deflated.txt", e.getName());
+        assertEquals("entry comment", e.getComment());
+        assertEquals(ZipEntry.DEFLATED, e.getMethod());
+        assertEquals(TEXT.length, e.getSize());
+        assertTrue(e.getCompressedSize() < e.getSize());
+        assertArrayEquals(TEXT, read(reader.getInputStream(e)));
+        assertEquals(e.getCompressedSize(), reader.getRawData(e).remaining());
+
+        e = reader.getEntry("stored.txt");
+        assertSame(entries.get(1), e);
+        assertEquals(ZipEntry.STORED, e.getMethod());
+        assertArrayEquals(TEXT, read(reader.getInputStream(e)));
+        assertNull(reader.getEntry("missing"));
+        reader.close();
+    }
+
+    @Test
+    public void testRawCopy() throws Exception {
+        ZipArchiveReader reader = new ZipArchiveReader(createZip());
+        Path copy = folder.newFile("copy.zip").toPath();
+        OutputStream os = Files.newOutputStream(copy);
+        ZipArchiveWriter writer = new ZipArchiveWriter(os);
+        for (ZipArchiveEntry e : reader.getEntries()) {
+            writer.writeEntry(e, reader.getRawData(e));
+        }
+        writer.finish();
+        os.close();
+        reader.close();
+
+        ZipArchiveReader copyReader = new ZipArchiveReader(copy);
+        for (ZipArchiveEntry e : copyReader.getEntries()) {
+            assertArrayEquals(TEXT, read(copyReader.getInputStream(e)));
+        }
+        assertEquals(ZipEntry.STORED, copyReader.getEntry("stored.txt").getMethod());
+        copyReader.close();
+    }
+
+    @Test
+    public void testRawDataIsReadOnlyView() throws Exception {
+        Path file = createZip();
+        ZipArchiveReader reader = new ZipArchiveReader(file);
+        assertEquals(file, reader.getPath());
+        ByteBuffer data = reader.getRawData(reader.getEntry("stored.txt"));
+        assertTrue(data.isReadOnly());
+        byte[] b = new byte[data.remaining()];
+        data.duplicate().get(b);
+        assertArrayEquals(TEXT, b);
+        assertEquals(TEXT.length, reader.getRawData(reader.getEntry("stored.txt")).remaining());
+        reader.close();
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNotAZipFile() throws Exception {
+        Path file = folder.newFile("test.txt").toPath();
+        Files.write(file, TEXT);
+        new ZipArchiveReader(file);
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2013-2017 Polago AB
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.polago.deployconf.zip;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ZipArchiveWriter} class.
+ */
+public class ZipArchiveWriterTest {
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int i = is.read(buf);
+        while (i != -1) {
+            os.write(buf, 0, i);
+            i = is.read(buf);
+        }
+        return os.toByteArray();
+    }
+
+    @Test
+    public void testWriteDeflatedEntries() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(os);
+        byte[] first = "first entry data, first entry data".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second åäö".getBytes(StandardCharsets.UTF_8);
+
+        ZipArchiveEntry e = new ZipArchiveEntry("first.txt");
+        e.setComment("comment");
+        writer.writeEntry(e, ZipCompressor.deflate(e, first, first.length, Deflater.BEST_COMPRESSION));
+        e = new ZipArchiveEntry("dir/säcond.txt");
+        writer.writeEntry(e, ZipCompressor.deflate(e, second, second.length, Deflater.DEFAULT_COMPRESSION));
+        writer.finish();
+        assertEquals(2, writer.getEntries());
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+        ZipEntry ze = zis.getNextEntry();
+        assertEquals("first.txt", ze.getName());
+        assertEquals(ZipEntry.DEFLATED, ze.getMethod());
+        assertArrayEquals(first, read(zis));
+        ze = zis.getNextEntry();
+        assertEquals("dir/säcond.txt", ze.getName());
+        assertArrayEquals(second, read(zis));
+        assertNull(zis.getNextEntry());
+        zis.close();
+    }
+
+    @Test
+    public void testWriteStoredEntry() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(os);
+        byte[] data = "stored data".getBytes(StandardCharsets.UTF_8);
+
+        ZipArchiveEntry e = new ZipArchiveEntry("stored.jar");
+        writer.writeEntry(e, ZipCompressor.store(e, data, data.length));
+        writer.finish();
+        assertEquals(ZipEntry.STORED, e.getMethod());
+        assertEquals(data.length, e.getCompressedSize());
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+        ZipEntry ze = zis.getNextEntry();
+        assertEquals(ZipEntry.STORED, ze.getMethod());
+        assertArrayEquals(data, read(zis));
+        zis.close();
+    }
+
+    @Test
+    public void testWriteStreamedEntry() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(os);
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 7);
+        }
+        byte[] stored = "stored data".getBytes(StandardCharsets.UTF_8);
+
+        ZipArchiveEntry e = new ZipArchiveEntry("streamed.txt");
+        OutputStream entryStream = writer.startEntry(e, Deflater.DEFAULT_COMPRESSION);
+        entryStream.write(data, 0, 1000);
+        entryStream.write(data, 1000, data.length - 1000);
+        entryStream.close();
+        assertTrue(e.isDataDescriptor());
+        assertEquals(data.length, e.getSize());
+        ZipArchiveEntry s = new ZipArchiveEntry("stored.jar");
+        writer.writeEntry(s, ZipCompressor.store(s, stored, stored.length));
+        writer.finish();
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(os.toByteArray()));
+        ZipEntry ze = zis.getNextEntry();
+        assertEquals("streamed.txt", ze.getName());
+        assertArrayEquals(data, read(zis));
+        ze = zis.getNextEntry();
+        assertEquals(ZipEntry.STORED, ze.getMethod());
+        assertArrayEquals(stored, read(zis));
+        assertNull(zis.getNextEntry());
+        zis.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteEntryWhileStreaming() throws Exception {
+        ZipArchiveWriter writer = new ZipArchiveWriter(new ByteArrayOutputStream());
+        writer.startEntry(new ZipArchiveEntry("a"), Deflater.DEFAULT_COMPRESSION);
+        writer.startEntry(new ZipArchiveEntry("b"), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Test
+    public void testEmptyArchive() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(os);
+        writer.finish();
+        assertEquals(22, os.size());
+    }
+
+    @Test(expected = ZipException.class)
+    public void testDuplicateEntry() throws Exception {
+        ZipArchiveWriter writer = new ZipArchiveWriter(new ByteArrayOutputStream());
+        ZipArchiveEntry e = new ZipArchiveEntry("a");
+        writer.writeEntry(e, ZipCompressor.deflate(e, new byte[0], 0, Deflater.DEFAULT_COMPRESSION));
+        e = new ZipArchiveEntry("a");
+        writer.writeEntry(e, ZipCompressor.deflate(e, new byte[0], 0, Deflater.DEFAULT_COMPRESSION));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testSizeMismatch() throws Exception {
+        ZipArchiveWriter writer = new ZipArchiveWriter(new ByteArrayOutputStream());
+        ZipArchiveEntry e = new ZipArchiveEntry("a");
+        e.setCompressedSize(10);
+        writer.writeEntry(e, ByteBuffer.allocate(5));
+    }
+
+}